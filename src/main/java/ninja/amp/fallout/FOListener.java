@@ -20,17 +20,18 @@ package ninja.amp.fallout;
 
 import ninja.amp.fallout.character.Character;
 import ninja.amp.fallout.character.CharacterManager;
-import ninja.amp.fallout.character.Information;
+import ninja.amp.fallout.character.CharacterSnapshot;
 import ninja.amp.fallout.character.Race;
+import ninja.amp.fallout.config.FOSettings;
 import ninja.amp.fallout.message.FOMessage;
 import ninja.amp.fallout.util.ArmorMaterial;
 import ninja.amp.fallout.util.ArmorType;
 import org.bukkit.Bukkit;
 import org.bukkit.Material;
-import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.entity.Creature;
 import org.bukkit.entity.EntityType;
 import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
@@ -40,17 +41,23 @@ import org.bukkit.event.entity.EntityCombustByEntityEvent;
 import org.bukkit.event.entity.EntityCombustEvent;
 import org.bukkit.event.entity.EntityDeathEvent;
 import org.bukkit.event.entity.EntityTargetLivingEntityEvent;
+import org.bukkit.event.inventory.ClickType;
 import org.bukkit.event.inventory.CraftItemEvent;
 import org.bukkit.event.inventory.InventoryClickEvent;
 import org.bukkit.event.inventory.InventoryDragEvent;
 import org.bukkit.event.inventory.InventoryType;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerInteractEntityEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.player.PlayerItemBreakEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
 import org.bukkit.inventory.ItemStack;
 
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -62,12 +69,10 @@ import java.util.concurrent.ConcurrentHashMap;
 public class FOListener implements Listener {
 
     private Fallout plugin;
-    private boolean preventCraftingDiamondArmor;
-    private boolean preventMobsDroppingExp;
-    private boolean preventSunlightCombust;
-    private boolean preventZombieTargetGhoul;
+    private volatile FOSettings settings;
 
     protected static Map<UUID, String> onlinePlayers = null;
+    private final Set<UUID> armorUpdates = new HashSet<>();
 
     /**
      * Creates a new FOListener.
@@ -78,11 +83,7 @@ public class FOListener implements Listener {
         this.plugin = plugin;
 
         plugin.getServer().getPluginManager().registerEvents(this, plugin);
-        FileConfiguration config = plugin.getConfig();
-        preventCraftingDiamondArmor = config.getBoolean("PreventCraftingDiamondArmor", false);
-        preventMobsDroppingExp = config.getBoolean("PreventMobsDroppingExp", false);
-        preventSunlightCombust = config.getBoolean("PreventSunlightCombust", false);
-        preventZombieTargetGhoul = config.getBoolean("PreventZombieTargetGhoul", false);
+        settings = plugin.getSettings();
 
         onlinePlayers = new ConcurrentHashMap<>();
         for (Player player : Bukkit.getOnlinePlayers()) {
@@ -90,6 +91,26 @@ public class FOListener implements Listener {
         }
     }
 
+    /**
+     * Swaps in new settings, changing which vanilla behaviours are prevented.
+     *
+     * @param settings The new settings
+     */
+    public void reload(FOSettings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Reads the player's character off the main thread so it is ready when the player joins.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onAsyncPlayerPreLogin(AsyncPlayerPreLoginEvent event) {
+        CharacterManager characterManager = plugin.getCharacterManager();
+        if (characterManager != null && event.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            characterManager.preloadCharacter(event.getUniqueId());
+        }
+    }
+
     /**
      * Loads the player's character into the character manager if the player has a character.
      */
@@ -111,130 +132,172 @@ public class FOListener implements Listener {
     }
 
     /**
-     * Lists the SPECIAL traits of the character of a player right clicked while crouching.
+     * Stops a player from putting on armor their character may not wear by clicking it into an armor slot.
      */
-    @EventHandler
-    public void onPlayerClickPlayer(PlayerInteractEntityEvent event) {
-        if (event.getPlayer().isSneaking() && event.getRightClicked() instanceof Player) {
-            UUID clickedId = event.getRightClicked().getUniqueId();
+    @EventHandler(ignoreCancelled = true)
+    public void onForbiddenArmorClick(InventoryClickEvent event) {
+        if (event.getWhoClicked() instanceof Player) {
+            Player player = (Player) event.getWhoClicked();
+            ItemStack equipping = null;
+            if (event.getSlotType() == InventoryType.SlotType.ARMOR && !event.isShiftClick()) {
+                equipping = event.getClick() == ClickType.NUMBER_KEY ? player.getInventory().getItem(event.getHotbarButton()) : event.getCursor();
+            } else if (event.isShiftClick() && event.getView().getTopInventory().getType() == InventoryType.CRAFTING) {
+                // Shift clicking a piece of armor in the player's own inventory equips it if its slot is empty
+                ItemStack current = event.getCurrentItem();
+                ArmorType armorType = current == null ? null : ArmorType.getArmorType(current.getType());
+                if (armorType != null && armorType.canEquip(player)) {
+                    equipping = current;
+                }
+            }
+            if (equipping != null && !canWear(player, equipping)) {
+                event.setCancelled(true);
+            }
+        }
+    }
 
-            CharacterManager characterManager = plugin.getCharacterManager();
-            if (characterManager.isOwner(clickedId)) {
-                Character character = characterManager.getCharacterByOwner(clickedId);
-                plugin.getMessenger().sendMessage(event.getPlayer(), FOMessage.SPECIAL_LIST, character.getCharacterName(), character.getSpecial());
+    /**
+     * Stops a player from putting on armor their character may not wear by dragging it over an armor slot.
+     */
+    @EventHandler(ignoreCancelled = true)
+    public void onForbiddenArmorDrag(InventoryDragEvent event) {
+        if (event.getWhoClicked() instanceof Player) {
+            for (Map.Entry<Integer, ItemStack> item : event.getNewItems().entrySet()) {
+                if (event.getView().getSlotType(item.getKey()) == InventoryType.SlotType.ARMOR && !canWear((Player) event.getWhoClicked(), item.getValue())) {
+                    event.setCancelled(true);
+                    return;
+                }
             }
         }
     }
 
     /**
-     * Stops players with characters who don't have the armor perk from right clicking to equip diamond armor.
+     * Stops a player from putting on armor their character may not wear by right clicking with it.
      */
-    /*
-    @SuppressWarnings("deprecation")
-    @EventHandler
-    public void onPlayerClickArmor(PlayerInteractEvent event) {
+    @EventHandler(ignoreCancelled = true)
+    public void onForbiddenArmorEquip(PlayerInteractEvent event) {
         if (event.getAction() == Action.RIGHT_CLICK_AIR || event.getAction() == Action.RIGHT_CLICK_BLOCK) {
-            Player player = event.getPlayer();
-            ItemStack itemStack = player.getItemInHand();
-            if (itemStack != null) {
-                Material material = itemStack.getType();
-                if (ArmorType.isArmor(material) && ArmorType.getArmorType(material).canEquip(player)) {
-                    UUID playerId = player.getUniqueId();
-                    CharacterManager characterManager = plugin.getCharacterManager();
-                    if (characterManager.isOwner(playerId)) {
-                        Character character = characterManager.getCharacterByOwner(playerId);
-                        ArmorMaterial armorMaterial = ArmorMaterial.getArmorMaterial(material);
-                        if (!ArmorMaterial.LEATHER.equals(armorMaterial) && character.getRace().equals(Race.SUPER_MUTANT)) { // Super Mutants can only wear leather armor
-                            event.setCancelled(true);
-                            player.updateInventory();
-                            plugin.getMessenger().sendErrorMessage(player, FOMessage.RACE_ONLYLEATHER);
-                        } else if (ArmorMaterial.DIAMOND.equals(armorMaterial) && !character.hasKnowledge(Information.POWER_ARMOR)) { // Wearing power armor requires permission
-                            event.setCancelled(true);
-                            player.updateInventory();
-                            plugin.getMessenger().sendErrorMessage(player, FOMessage.INFORMATION_MISSING, Information.POWER_ARMOR);
-                        }
-                    }
-                }
+            ItemStack item = event.getItem();
+            ArmorType armorType = item == null ? null : ArmorType.getArmorType(item.getType());
+            if (armorType != null && armorType.canEquip(event.getPlayer()) && !canWear(event.getPlayer(), item)) {
+                event.setUseItemInHand(Event.Result.DENY);
             }
         }
     }
-    */
 
     /**
-     * Stops players with characters who don't have the armor perk from manually equipping diamond armor.
+     * Checks if a player's character may wear a piece of armor, telling the player why not if it may not.
+     *
+     * @param player    The player
+     * @param itemStack The piece of armor
+     * @return {@code true} if the player has no character or the character may wear the armor
      */
-    /*
-    @EventHandler
-    public void onInventoryClick(InventoryClickEvent event) {
+    private boolean canWear(Player player, ItemStack itemStack) {
+        CharacterManager characterManager = plugin.getCharacterManager();
+        Character character = characterManager.getCharacterByOwner(player.getUniqueId());
+        return character == null || characterManager.checkArmor(player, character, itemStack.getType());
+    }
+
+    /**
+     * Updates the armor of a player's character once an inventory click that may have moved armor has been applied.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onArmorClick(InventoryClickEvent event) {
         if (event.getWhoClicked() instanceof Player) {
-            if (event.isLeftClick() || event.isRightClick()) {
-                ItemStack itemStack = null;
-                if (event.isShiftClick()) {
-                    itemStack = event.getCurrentItem(); // Shift clicking will move the item in the slot
-                } else if (event.getSlotType() == InventoryType.SlotType.ARMOR) {
-                    itemStack = event.getCursor(); // Normal clicking will move the item in the cursor
-                }
-                if (itemStack != null) {
-                    Material material = itemStack.getType();
-                    if (ArmorType.isArmor(material)) {
-                        Player player = (Player) event.getWhoClicked();
-                        if (event.isShiftClick() && !ArmorType.getArmorType(material).canEquip(player)) { // The armor won't actually go into the armor slot, don't cancel
-                            return;
-                        }
-                        UUID playerId = player.getUniqueId();
-                        CharacterManager characterManager = plugin.getCharacterManager();
-                        if (characterManager.isOwner(playerId)) {
-                            Character character = characterManager.getCharacterByOwner(playerId);
-                            ArmorMaterial armorMaterial = ArmorMaterial.getArmorMaterial(material);
-                            if (!ArmorMaterial.LEATHER.equals(armorMaterial) && character.getRace().equals(Race.SUPER_MUTANT)) { // Super Mutants can only wear leather armor
-                                event.setCancelled(true);
-                                plugin.getMessenger().sendErrorMessage(player, FOMessage.RACE_ONLYLEATHER);
-                            } else if (ArmorMaterial.DIAMOND.equals(armorMaterial) && !character.hasKnowledge(Information.POWER_ARMOR)) { // Wearing power armor requires permission
-                                event.setCancelled(true);
-                                plugin.getMessenger().sendErrorMessage(player, FOMessage.INFORMATION_MISSING, Information.POWER_ARMOR);
-                            }
-                        }
-                    }
+            ItemStack current = event.getCurrentItem();
+            if (event.getSlotType() == InventoryType.SlotType.ARMOR || (event.isShiftClick() && current != null && ArmorType.isArmor(current.getType()))) {
+                updateArmor((Player) event.getWhoClicked());
+            }
+        }
+    }
+
+    /**
+     * Updates the armor of a player's character once an inventory drag over an armor slot has been applied.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onArmorDrag(InventoryDragEvent event) {
+        if (event.getWhoClicked() instanceof Player) {
+            for (int slot : event.getRawSlots()) {
+                if (event.getView().getSlotType(slot) == InventoryType.SlotType.ARMOR) {
+                    updateArmor((Player) event.getWhoClicked());
+                    return;
                 }
             }
         }
     }
-    */
 
     /**
-     * Stops players with characters who don't have the armor perk from manually equipping diamond armor.
+     * Updates the armor of a player's character once armor equipped by right clicking has been put on.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onArmorEquip(PlayerInteractEvent event) {
+        if (event.getAction() == Action.RIGHT_CLICK_AIR || event.getAction() == Action.RIGHT_CLICK_BLOCK) {
+            ItemStack item = event.getItem();
+            if (item != null && ArmorType.isArmor(item.getType())) {
+                updateArmor(event.getPlayer());
+            }
+        }
+    }
+
+    /**
+     * Updates the armor of a player's character after respawning, in case the armor was dropped on death.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerRespawn(PlayerRespawnEvent event) {
+        updateArmor(event.getPlayer());
+    }
+
+    /**
+     * Updates the armor of a player's character once a worn piece of armor breaks.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onArmorBreak(PlayerItemBreakEvent event) {
+        if (ArmorType.isArmor(event.getBrokenItem().getType())) {
+            updateArmor(event.getPlayer());
+        }
+    }
+
+    /**
+     * Updates the armor of a player's character on the next tick, once the event that changed it has been applied.<br>
+     * Players without characters are ignored, and several changes within a tick cause a single update.
+     *
+     * @param player The player
+     */
+    private void updateArmor(Player player) {
+        UUID playerId = player.getUniqueId();
+        if (!plugin.getCharacterManager().isOwner(playerId) || !armorUpdates.add(playerId)) {
+            return;
+        }
+        plugin.getServer().getScheduler().runTask(plugin, () -> {
+            armorUpdates.remove(playerId);
+            Character character = plugin.getCharacterManager().getCharacterByOwner(playerId);
+            if (character != null && player.isOnline()) {
+                character.updateArmor(player);
+            }
+        });
+    }
+
+    /**
+     * Lists the SPECIAL traits of the character of a player right clicked while crouching.
      */
-    /*
     @EventHandler
-    public void onInventoryDrag(InventoryDragEvent event) {
-        if (event.getWhoClicked() instanceof Player && event.getOldCursor() != null) {
-            Material material = event.getOldCursor().getType();
-            if (ArmorType.isArmor(material)) {
-                Player player = (Player) event.getWhoClicked();
-                UUID playerId = player.getUniqueId();
-                CharacterManager characterManager = plugin.getCharacterManager();
-                if (characterManager.isOwner(playerId)) {
-                    Character character = characterManager.getCharacterByOwner(playerId);
-                    ArmorMaterial armorMaterial = ArmorMaterial.getArmorMaterial(material);
-                    if (!ArmorMaterial.LEATHER.equals(armorMaterial) && character.getRace().equals(Race.SUPER_MUTANT)) { // Super Mutants can only wear leather armor
-                        event.setCancelled(true);
-                        plugin.getMessenger().sendErrorMessage(player, FOMessage.RACE_ONLYLEATHER);
-                    } else if (ArmorMaterial.DIAMOND.equals(armorMaterial) && !character.hasKnowledge(Information.POWER_ARMOR)) { // Wearing power armor requires permission
-                        event.setCancelled(true);
-                        plugin.getMessenger().sendErrorMessage(player, FOMessage.INFORMATION_MISSING, Information.POWER_ARMOR);
-                    }
-                }
+    public void onPlayerClickPlayer(PlayerInteractEntityEvent event) {
+        if (event.getPlayer().isSneaking() && event.getRightClicked() instanceof Player) {
+            UUID clickedId = event.getRightClicked().getUniqueId();
+
+            CharacterManager characterManager = plugin.getCharacterManager();
+            if (characterManager.isOwner(clickedId)) {
+                CharacterSnapshot character = characterManager.getCharacterByOwner(clickedId).getSnapshot();
+                plugin.getMessenger().sendMessage(event.getPlayer(), FOMessage.SPECIAL_LIST, character.getCharacterName(), character.getSpecial());
             }
         }
     }
-    */
 
     /**
      * Stops mobs from dropping exp to prevent exp farming.
      */
     @EventHandler
     public void onEntityDeath(EntityDeathEvent event) {
-        if (event.getEntity() instanceof Creature && preventMobsDroppingExp) {
+        if (event.getEntity() instanceof Creature && settings.isPreventMobsDroppingExp()) {
             event.setDroppedExp(0);
         }
     }
@@ -247,7 +310,7 @@ public class FOListener implements Listener {
         if (event instanceof EntityCombustByBlockEvent || event instanceof EntityCombustByEntityEvent || event.getEntityType() == EntityType.ARROW) {
             return;
         }
-        if (preventSunlightCombust) {
+        if (settings.isPreventSunlightCombust()) {
             event.setCancelled(true);
         }
     }
@@ -257,7 +320,7 @@ public class FOListener implements Listener {
      */
     @EventHandler
     public void onDiamondArmorCraft(CraftItemEvent event) {
-        if (preventCraftingDiamondArmor) {
+        if (settings.isPreventCraftingDiamondArmor()) {
             Material material = event.getRecipe().getResult().getType();
             if (ArmorType.isArmor(material) && ArmorMaterial.DIAMOND.equals(ArmorMaterial.getArmorMaterial(material))) {
                 event.setCancelled(true);
@@ -270,7 +333,7 @@ public class FOListener implements Listener {
      */
     @EventHandler
     public void onEntityTargetLiving(EntityTargetLivingEntityEvent event) {
-        if (preventZombieTargetGhoul && event.getEntityType() == EntityType.ZOMBIE && event.getTarget() instanceof Player) {
+        if (settings.isPreventZombieTargetGhoul() && event.getEntityType() == EntityType.ZOMBIE && event.getTarget() instanceof Player) {
             UUID playerId = event.getTarget().getUniqueId();
             CharacterManager characterManager = plugin.getCharacterManager();
             if (characterManager.isOwner(playerId)) {
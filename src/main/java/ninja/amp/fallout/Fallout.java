@@ -18,12 +18,17 @@
  */
 package ninja.amp.fallout;
 
+import ninja.amp.fallout.backup.BackupManager;
+import ninja.amp.fallout.backup.TransferManager;
 import ninja.amp.fallout.character.CharacterManager;
 import ninja.amp.fallout.command.Command;
 import ninja.amp.fallout.command.CommandController;
 import ninja.amp.fallout.command.CommandGroup;
 import ninja.amp.fallout.command.commands.AboutCommand;
+import ninja.amp.fallout.command.commands.BackupCommand;
+import ninja.amp.fallout.command.commands.ExportCommand;
 import ninja.amp.fallout.command.commands.HelpCommand;
+import ninja.amp.fallout.command.commands.ImportCommand;
 import ninja.amp.fallout.command.commands.ReloadCommand;
 import ninja.amp.fallout.command.commands.Whois;
 import ninja.amp.fallout.command.commands.character.Abandon;
@@ -48,16 +53,27 @@ import ninja.amp.fallout.command.commands.roll.LocalRoll;
 import ninja.amp.fallout.command.commands.roll.PrivateRoll;
 import ninja.amp.fallout.command.commands.roll.RollManager;
 import ninja.amp.fallout.config.ConfigManager;
+import ninja.amp.fallout.config.FOConfig;
+import ninja.amp.fallout.config.FOSettings;
 import ninja.amp.fallout.faction.FactionManager;
 import ninja.amp.fallout.menu.MenuListener;
 import ninja.amp.fallout.message.Messenger;
+import ninja.amp.fallout.radiation.RadiationManager;
+import ninja.amp.fallout.util.FOUtils;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.permissions.Permission;
 import org.bukkit.permissions.PermissionDefault;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.File;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
@@ -70,17 +86,35 @@ import java.util.UUID;
 public class Fallout extends JavaPlugin implements FalloutCore {
 
     private ConfigManager configManager;
+    private volatile FileConfiguration config;
+    private volatile FOSettings settings;
+    private FOSettings startupSettings;
     private Messenger messenger;
     private CommandController commandController;
     private CharacterManager characterManager;
     private RollManager rollManager;
     private FactionManager factionManager;
+    private RadiationManager radiationManager;
+    private BackupManager backupManager;
+    private TransferManager transferManager;
     private FOListener foListener;
     private MenuListener menuListener;
     private Set<Plugin> disabledExtensions = new HashSet<>();
 
     @Override
     public void onEnable() {
+        // Settings are read first, an invalid setting stops the plugin from enabling
+        saveDefaultConfig();
+        try {
+            config = readConfig();
+            settings = new FOSettings(config);
+            startupSettings = settings;
+        } catch (Exception e) {
+            getLogger().severe("Invalid config.yml, disabling Fallout. " + e.getMessage());
+            getServer().getPluginManager().disablePlugin(this);
+            return;
+        }
+
         // The order managers are created in is important
         configManager = new ConfigManager(this);
         messenger = new Messenger(this);
@@ -88,6 +122,9 @@ public class Fallout extends JavaPlugin implements FalloutCore {
         characterManager = new CharacterManager(this);
         rollManager = new RollManager(this);
         factionManager = new FactionManager(this);
+        radiationManager = new RadiationManager(this);
+        backupManager = new BackupManager(this);
+        transferManager = new TransferManager(this);
         foListener = new FOListener(this);
         menuListener = new MenuListener(this);
 
@@ -129,6 +166,9 @@ public class Fallout extends JavaPlugin implements FalloutCore {
                 .addChildCommand(new AboutCommand(this))
                 .addChildCommand(new HelpCommand(this))
                 .addChildCommand(new ReloadCommand(this))
+                .addChildCommand(new BackupCommand(this))
+                .addChildCommand(new ExportCommand(this))
+                .addChildCommand(new ImportCommand(this))
                 .addChildCommand(new Radio(this))
                 .addChildCommand(new LocalRoll(this)
                         .addChildCommand(new ArmorRoll(this))
@@ -165,6 +205,11 @@ public class Fallout extends JavaPlugin implements FalloutCore {
 
     @Override
     public void onDisable() {
+        // Nothing was created if the settings were invalid
+        if (configManager == null) {
+            return;
+        }
+
         // Disable any plugins that happen to depend on fallout
         for (Plugin plugin : getServer().getPluginManager().getPlugins()) {
             if (plugin.getDescription().getDepend().contains("Fallout") && plugin.isEnabled()) {
@@ -173,19 +218,74 @@ public class Fallout extends JavaPlugin implements FalloutCore {
             }
         }
 
+        // Write any queued character saves before the managers are destroyed
+        backupManager.close();
+        characterManager.close();
+        configManager.close();
+
         // The order managers are destroyed in is not important
         MenuListener.closeOpenMenus();
         menuListener = null;
         foListener = null;
+        transferManager = null;
+        backupManager = null;
+        radiationManager = null;
         factionManager = null;
         rollManager = null;
         characterManager = null;
         commandController.unregisterCommands();
         commandController = null;
         messenger = null;
+        settings = null;
+        startupSettings = null;
+        config = null;
         configManager = null;
     }
 
+    @Override
+    public List<String> reload() throws Exception {
+        // Only the settings, messages and radiation zones are reloaded, characters and open menus are left untouched
+        // The config in use is only replaced once the new one is valid
+        FileConfiguration config = readConfig();
+        FOSettings settings = new FOSettings(config);
+        configManager.reloadConfig(FOConfig.MESSAGE);
+        configManager.reloadConfig(FOConfig.RADIATION);
+        this.config = config;
+        this.settings = settings;
+        List<String> restartRequired = settings.getRestartRequiredChanges(startupSettings);
+        if (!restartRequired.isEmpty()) {
+            getLogger().warning("Changes to " + String.join(", ", restartRequired) + " will only take effect after a restart");
+        }
+        FOUtils.setNamePattern(settings.getNameRequirement());
+        messenger.reload(settings);
+        rollManager.reload(settings);
+        foListener.reload(settings);
+        radiationManager.reload();
+        backupManager.reload(settings);
+        return restartRequired;
+    }
+
+    /**
+     * Reads the main config from disk into a new configuration, without replacing the one in use.
+     *
+     * @return The main config
+     * @throws Exception If the main config could not be read or is not valid yaml
+     */
+    private FileConfiguration readConfig() throws Exception {
+        YamlConfiguration config = new YamlConfiguration();
+        config.load(new File(getDataFolder(), "config.yml"));
+        InputStream defaults = getResource("config.yml");
+        if (defaults != null) {
+            config.setDefaults(YamlConfiguration.loadConfiguration(new InputStreamReader(defaults, StandardCharsets.UTF_8)));
+        }
+        return config;
+    }
+
+    @Override
+    public FileConfiguration getConfig() {
+        return config == null ? super.getConfig() : config;
+    }
+
     @Override
     public JavaPlugin getPlugin() {
         return this;
@@ -221,6 +321,26 @@ public class Fallout extends JavaPlugin implements FalloutCore {
         return factionManager;
     }
 
+    @Override
+    public RadiationManager getRadiationManager() {
+        return radiationManager;
+    }
+
+    @Override
+    public BackupManager getBackupManager() {
+        return backupManager;
+    }
+
+    @Override
+    public TransferManager getTransferManager() {
+        return transferManager;
+    }
+
+    @Override
+    public FOSettings getSettings() {
+        return settings;
+    }
+
     /**
      * Gets the fallout listener.
      *
@@ -18,14 +18,20 @@
  */
 package ninja.amp.fallout;
 
+import ninja.amp.fallout.backup.BackupManager;
+import ninja.amp.fallout.backup.TransferManager;
 import ninja.amp.fallout.character.CharacterManager;
 import ninja.amp.fallout.command.CommandController;
 import ninja.amp.fallout.command.commands.roll.RollManager;
 import ninja.amp.fallout.config.ConfigManager;
+import ninja.amp.fallout.config.FOSettings;
 import ninja.amp.fallout.faction.FactionManager;
 import ninja.amp.fallout.message.Messenger;
+import ninja.amp.fallout.radiation.RadiationManager;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.util.List;
+
 /**
  * An interface providing methods to get the core managers that make up the fallout plugin.
  *
@@ -33,6 +39,23 @@ import org.bukkit.plugin.java.JavaPlugin;
  */
 public interface FalloutCore {
 
+    /**
+     * Reloads the main, message and radiation configs in place.<br>
+     * Loaded characters and open menus are kept.
+     *
+     * @return The paths of the changed settings that only take effect after a restart
+     * @throws Exception If the main config contains an invalid setting, in which case the current settings are kept
+     */
+    List<String> reload() throws Exception;
+
+    /**
+     * Gets the fallout settings.<br>
+     * The settings are immutable, a reload replaces them with a new instance.
+     *
+     * @return The current settings
+     */
+    FOSettings getSettings();
+
     /**
      * Gets the plugin instance of this fallout core.<br>
      * Not necessarily required to be {@link ninja.amp.fallout.Fallout}.
@@ -83,4 +106,25 @@ public interface FalloutCore {
      */
     FactionManager getFactionManager();
 
+    /**
+     * Gets the fallout radiation manager.
+     *
+     * @return The radiation manager
+     */
+    RadiationManager getRadiationManager();
+
+    /**
+     * Gets the fallout backup manager.
+     *
+     * @return The backup manager
+     */
+    BackupManager getBackupManager();
+
+    /**
+     * Gets the fallout transfer manager.
+     *
+     * @return The transfer manager
+     */
+    TransferManager getTransferManager();
+
 }
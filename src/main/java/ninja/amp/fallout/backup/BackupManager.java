@@ -0,0 +1,504 @@
+/*
+ * This file is part of Fallout.
+ *
+ * Copyright (c) 2013-2017 <http://github.com/ampayne2/Fallout//>
+ *
+ * Fallout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fallout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Fallout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ninja.amp.fallout.backup;
+
+import ninja.amp.fallout.Fallout;
+import ninja.amp.fallout.character.Character;
+import ninja.amp.fallout.character.CharacterCodec;
+import ninja.amp.fallout.config.AtomicFileWriter;
+import ninja.amp.fallout.config.ConfigManager;
+import ninja.amp.fallout.config.FOConfig;
+import ninja.amp.fallout.config.FOSettings;
+import ninja.amp.fallout.menu.MenuListener;
+import ninja.amp.fallout.message.FOMessage;
+import ninja.amp.fallout.message.Messenger;
+import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Takes compressed backups of the characters and configs, and restores them.<br>
+ * A backup starts on the main thread by encoding every character that is loaded or waiting to be saved and copying
+ * the configs, so the backup holds their state at a single tick. The archive is then written off the main thread,
+ * adding the remaining characters from the character store a batch at a time.<br>
+ * An archive is fully read and validated off the main thread before anything is replaced by it.
+ *
+ * @author Austin Payne
+ */
+public class BackupManager {
+
+    /**
+     * The newest backup format version, written to the manifest of each backup.
+     */
+    public static final int VERSION = 1;
+
+    private static final String PREFIX = "backup-";
+    private static final String EXTENSION = ".zip";
+    private static final String MANIFEST = "backup.yml";
+    private static final String CHARACTERS = "characters/";
+    private static final String CONFIGS = "configs/";
+    private static final String MAIN_CONFIG = "config.yml";
+    private static final Set<FOConfig> BACKED_UP_CONFIGS = EnumSet.of(FOConfig.MESSAGE, FOConfig.FACTION, FOConfig.RADIATION);
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final Fallout plugin;
+    private final File folder;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private BukkitTask backupTask;
+
+    /**
+     * Creates a new backup manager and starts the backup timer.<br>
+     * Must be created after the {@link ninja.amp.fallout.character.CharacterManager}!
+     *
+     * @param plugin The fallout plugin instance
+     */
+    public BackupManager(Fallout plugin) {
+        this.plugin = plugin;
+        this.folder = new File(plugin.getDataFolder(), "backups");
+
+        schedule(plugin.getSettings());
+    }
+
+    /**
+     * Restarts the backup timer with the interval of new settings.
+     *
+     * @param settings The new settings
+     */
+    public void reload(FOSettings settings) {
+        close();
+        schedule(settings);
+    }
+
+    /**
+     * Starts the backup timer if backups are taken on an interval.
+     *
+     * @param settings The settings
+     */
+    private void schedule(FOSettings settings) {
+        if (settings.getBackupInterval() > 0) {
+            long interval = settings.getBackupInterval() * 1200L;
+            backupTask = plugin.getServer().getScheduler().runTaskTimer(plugin, () -> backup(null), interval, interval);
+        }
+    }
+
+    /**
+     * Stops the backup timer.
+     */
+    public void close() {
+        if (backupTask != null) {
+            backupTask.cancel();
+            backupTask = null;
+        }
+    }
+
+    /**
+     * Takes a backup of every character and config as they are when it is called. Must be called from the main thread.<br>
+     * The backup is written off the main thread, and the sender is told once it is done. Character store writes are held
+     * until then, changes made meanwhile are written after the backup.
+     *
+     * @param sender The sender who requested the backup, or {@code null} if it was taken on the backup timer
+     */
+    public void backup(CommandSender sender) {
+        Messenger messenger = plugin.getMessenger();
+        if (!running.compareAndSet(false, true)) {
+            if (sender != null) {
+                messenger.sendErrorMessage(sender, FOMessage.ERROR_BACKUPRUNNING);
+            }
+            return;
+        }
+        if (sender != null) {
+            messenger.sendMessage(sender, FOMessage.BACKUP_STARTED);
+        }
+
+        // Everything that may change on the main thread is copied now, and the stored characters are kept as they are until written
+        Map<String, byte[]> characters = plugin.getCharacterManager().snapshotCharacters();
+        Map<String, String> configs = new LinkedHashMap<>();
+        configs.put(MAIN_CONFIG, plugin.getConfig().saveToString());
+        for (FOConfig config : BACKED_UP_CONFIGS) {
+            configs.put(config.getFileName(), plugin.getConfigManager().getConfig(config).saveToString());
+        }
+        File file = new File(folder, PREFIX + LocalDateTime.now().format(NAME_FORMAT) + EXTENSION);
+
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            try {
+                long start = System.nanoTime();
+                int count = write(file, characters, configs);
+                prune(plugin.getSettings().getBackupRetention());
+                messenger.debug("Backed up " + count + " characters to " + file.getName() + " in " + (System.nanoTime() - start) / 1000000 + "ms");
+                report(sender, false, FOMessage.BACKUP_CREATED, count, file.getName());
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Could not write backup " + file, e);
+                report(sender, true, FOMessage.ERROR_BACKUP, e.getMessage());
+            } finally {
+                plugin.getCharacterManager().releaseStore();
+                running.set(false);
+            }
+        });
+    }
+
+    /**
+     * Writes a backup archive.<br>
+     * The archive is written to a temporary file and moved into place once complete, so a backup is never left partially written.
+     *
+     * @param file       The archive file
+     * @param characters The encoded characters snapshotted on the main thread, with {@code null} for deleted characters
+     * @param configs    The contents of each config, mapped by file name
+     * @return The amount of characters backed up
+     * @throws IOException If the archive could not be written
+     */
+    private int write(File file, Map<String, byte[]> characters, Map<String, String> configs) throws IOException {
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            throw new IOException("Could not create " + folder);
+        }
+        File temp = new File(folder, file.getName() + ".tmp");
+        int count = 0;
+        try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            for (Map.Entry<String, String> config : configs.entrySet()) {
+                writeEntry(zip, CONFIGS + config.getKey(), config.getValue().getBytes(StandardCharsets.UTF_8));
+            }
+            for (Map.Entry<String, byte[]> character : characters.entrySet()) {
+                if (character.getValue() != null) {
+                    writeEntry(zip, CHARACTERS + character.getKey(), character.getValue());
+                    count++;
+                }
+            }
+
+            // Characters that were not in memory are streamed from the store
+            try {
+                count += plugin.getCharacterManager().forEachStoredCharacter(characters.keySet(), character -> {
+                    try {
+                        writeEntry(zip, CHARACTERS + character.getCharacterName().toLowerCase(), CharacterCodec.encode(character));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            YamlConfiguration manifest = new YamlConfiguration();
+            manifest.set("Version", VERSION);
+            manifest.set("Created", System.currentTimeMillis());
+            manifest.set("Characters", count);
+            writeEntry(zip, MANIFEST, manifest.saveToString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Files.deleteIfExists(temp.toPath());
+            throw e;
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath());
+        }
+        return count;
+    }
+
+    /**
+     * Writes an entry to an archive.
+     *
+     * @param zip  The archive
+     * @param name The entry's name
+     * @param data The entry's contents
+     * @throws IOException If the archive could not be written to
+     */
+    private static void writeEntry(ZipOutputStream zip, String name, byte[] data) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        zip.write(data);
+        zip.closeEntry();
+    }
+
+    /**
+     * Deletes the oldest backups until no more than a certain amount remain.
+     *
+     * @param retention The amount of backups to keep
+     */
+    private void prune(int retention) {
+        List<String> backups = getBackups();
+        for (String backup : backups.subList(Math.min(retention, backups.size()), backups.size())) {
+            File file = new File(folder, backup);
+            if (!file.delete()) {
+                plugin.getLogger().warning("Could not delete old backup " + file);
+            }
+        }
+    }
+
+    /**
+     * Gets the names of every backup, newest first.
+     *
+     * @return The backup file names
+     */
+    public List<String> getBackups() {
+        String[] names = folder.list((dir, name) -> name.startsWith(PREFIX) && name.endsWith(EXTENSION));
+        if (names == null) {
+            return Collections.emptyList();
+        }
+        // Names hold their creation time, so they sort in the order the backups were taken
+        List<String> backups = new ArrayList<>(Arrays.asList(names));
+        backups.sort(Collections.reverseOrder());
+        return backups;
+    }
+
+    /**
+     * Restores a backup. Must be called from the main thread.<br>
+     * The archive is read and validated off the main thread, and only if every character and config in it is valid
+     * are the current characters and configs replaced on the main thread.
+     *
+     * @param sender The sender who requested the restore
+     * @param name   The backup's file name
+     */
+    public void restore(CommandSender sender, String name) {
+        Messenger messenger = plugin.getMessenger();
+        if (!getBackups().contains(name)) {
+            messenger.sendErrorMessage(sender, FOMessage.ERROR_BACKUPINVALID, name, "Backup does not exist");
+            return;
+        }
+        if (!running.compareAndSet(false, true)) {
+            messenger.sendErrorMessage(sender, FOMessage.ERROR_BACKUPRUNNING);
+            return;
+        }
+        messenger.sendMessage(sender, FOMessage.BACKUP_RESTORING, name);
+
+        File file = new File(folder, name);
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            Backup backup;
+            try {
+                backup = read(file);
+            } catch (Exception e) {
+                messenger.debug("Failed to read backup " + name + ". " + e.getMessage());
+                report(sender, true, FOMessage.ERROR_BACKUPINVALID, name, e.getMessage());
+                running.set(false);
+                return;
+            }
+            plugin.getServer().getScheduler().runTask(plugin, () -> {
+                try {
+                    apply(backup);
+                    messenger.sendMessage(sender, FOMessage.BACKUP_RESTORED, backup.characters.size(), name);
+                } catch (Exception e) {
+                    plugin.getLogger().log(Level.SEVERE, "Could not restore backup " + file, e);
+                    messenger.sendErrorMessage(sender, FOMessage.ERROR_BACKUPINVALID, name, e.getMessage());
+                } finally {
+                    running.set(false);
+                }
+            });
+        });
+    }
+
+    /**
+     * Reads and validates a backup archive.
+     *
+     * @param file The archive file
+     * @return The backup
+     * @throws Exception If the archive is unreadable, or any character or config in it is invalid
+     */
+    private Backup read(File file) throws Exception {
+        try (ZipFile zip = new ZipFile(file)) {
+            ZipEntry manifestEntry = zip.getEntry(MANIFEST);
+            if (manifestEntry == null) {
+                throw new Exception("Missing backup manifest");
+            }
+            YamlConfiguration manifest = loadConfig(MANIFEST, new String(readEntry(zip, manifestEntry), StandardCharsets.UTF_8));
+            int version = manifest.getInt("Version");
+            if (version < 1 || version > VERSION) {
+                throw new Exception("Unsupported backup version " + version);
+            }
+
+            Backup backup = new Backup();
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                String name = entry.getName();
+                if (name.startsWith(CHARACTERS)) {
+                    Character character;
+                    try (DataInputStream input = new DataInputStream(zip.getInputStream(entry))) {
+                        character = CharacterCodec.decode(input);
+                    } catch (Exception e) {
+                        throw new Exception("Invalid character " + name + ". " + e.getMessage());
+                    }
+                    if (!character.getCharacterName().equalsIgnoreCase(name.substring(CHARACTERS.length()))) {
+                        throw new Exception("Character " + name + " is named " + character.getCharacterName());
+                    }
+                    backup.characters.add(character);
+                } else if (name.startsWith(CONFIGS)) {
+                    String fileName = name.substring(CONFIGS.length());
+                    String contents = new String(readEntry(zip, entry), StandardCharsets.UTF_8);
+                    YamlConfiguration config = loadConfig(name, contents);
+                    if (fileName.equals(MAIN_CONFIG)) {
+                        // Settings are checked now so that a restore never installs a config that fails to reload
+                        try {
+                            new FOSettings(config);
+                        } catch (Exception e) {
+                            throw new Exception("Invalid " + name + ". " + e.getMessage());
+                        }
+                    } else if (getConfigType(fileName) == null) {
+                        throw new Exception("Unknown config " + name);
+                    }
+                    backup.configs.put(fileName, contents);
+                }
+            }
+
+            int expected = manifest.getInt("Characters");
+            if (backup.characters.size() != expected) {
+                throw new Exception("Expected " + expected + " characters, found " + backup.characters.size());
+            }
+            return backup;
+        }
+    }
+
+    /**
+     * Reads the contents of an archive entry.
+     *
+     * @param zip   The archive
+     * @param entry The entry
+     * @return The entry's contents
+     * @throws IOException If the entry could not be read
+     */
+    private static byte[] readEntry(ZipFile zip, ZipEntry entry) throws IOException {
+        try (InputStream input = zip.getInputStream(entry)) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return output.toByteArray();
+        }
+    }
+
+    /**
+     * Parses a config stored in a backup.
+     *
+     * @param name     The config's entry name
+     * @param contents The config's contents
+     * @return The config
+     * @throws Exception If the config is not valid YAML
+     */
+    private static YamlConfiguration loadConfig(String name, String contents) throws Exception {
+        YamlConfiguration config = new YamlConfiguration();
+        try {
+            config.loadFromString(contents);
+        } catch (InvalidConfigurationException e) {
+            throw new Exception("Invalid " + name + ". " + e.getMessage());
+        }
+        return config;
+    }
+
+    /**
+     * Gets the config type of a backed up config file.
+     *
+     * @param fileName The config's file name
+     * @return The config type, or {@code null} if the config is not backed up
+     */
+    private static FOConfig getConfigType(String fileName) {
+        for (FOConfig config : BACKED_UP_CONFIGS) {
+            if (config.getFileName().equals(fileName)) {
+                return config;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Replaces the current characters and configs with those of a validated backup.
+     *
+     * @param backup The backup
+     * @throws Exception If the restored main config could not be reloaded
+     */
+    private void apply(Backup backup) throws Exception {
+        // Open menus hold the characters that are about to be replaced
+        MenuListener.closeOpenMenus();
+        plugin.getCharacterManager().restoreCharacters(backup.characters);
+
+        // Queued config saves are written first so they cannot overwrite the restored configs
+        ConfigManager configManager = plugin.getConfigManager();
+        AtomicFileWriter fileWriter = configManager.getFileWriter();
+        fileWriter.flush();
+        Map<File, String> files = new HashMap<>();
+        for (Map.Entry<String, String> config : backup.configs.entrySet()) {
+            FOConfig configType = getConfigType(config.getKey());
+            File file = configType == null ? new File(plugin.getDataFolder(), MAIN_CONFIG) : configManager.getConfigAccessor(configType).getConfigFile();
+            files.put(file, config.getValue());
+        }
+        fileWriter.writeNow(files);
+        configManager.reloadConfig(FOConfig.FACTION);
+        plugin.reload();
+    }
+
+    /**
+     * Tells the sender of a backup command how it went, from the main thread.
+     *
+     * @param sender  The sender, or {@code null} if the backup was taken on the backup timer
+     * @param error   If the message is an error message
+     * @param message The message
+     * @param replace The message's arguments
+     */
+    private void report(CommandSender sender, boolean error, FOMessage message, Object... replace) {
+        if (sender == null || !plugin.isEnabled()) {
+            return;
+        }
+        plugin.getServer().getScheduler().runTask(plugin, () -> {
+            if (error) {
+                plugin.getMessenger().sendErrorMessage(sender, message, replace);
+            } else {
+                plugin.getMessenger().sendMessage(sender, message, replace);
+            }
+        });
+    }
+
+    /**
+     * The validated contents of a backup archive.
+     */
+    private static class Backup {
+
+        private final List<Character> characters = new ArrayList<>();
+        private final Map<String, String> configs = new LinkedHashMap<>();
+
+    }
+
+}
@@ -0,0 +1,404 @@
+/*
+ * This file is part of Fallout.
+ *
+ * Copyright (c) 2013-2017 <http://github.com/ampayne2/Fallout//>
+ *
+ * Fallout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fallout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Fallout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ninja.amp.fallout.backup;
+
+import ninja.amp.fallout.Fallout;
+import ninja.amp.fallout.character.Character;
+import ninja.amp.fallout.character.CharacterCodec;
+import ninja.amp.fallout.character.CharacterManager;
+import ninja.amp.fallout.message.FOMessage;
+import ninja.amp.fallout.message.Messenger;
+import org.bukkit.command.CommandSender;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports characters to and imports characters from files, for moving characters between servers and character stores.<br>
+ * An export file is a gzipped stream of {@link CharacterCodec} encoded characters, each prefixed with its length,
+ * ending with a length of 0. Characters are written and read one at a time, so memory use does not grow with the
+ * amount of characters. Exports and imports run off the main thread, reporting their progress as they go.
+ *
+ * @author Austin Payne
+ */
+public class TransferManager {
+
+    /**
+     * The newest export format version, written to the header of each export.
+     */
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0x464F4348;
+    private static final String EXTENSION = ".fochars";
+    private static final int MAX_RECORD_SIZE = 1 << 20;
+    private static final int IMPORT_BATCH_SIZE = 100;
+    private static final long PROGRESS_INTERVAL = 5000;
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final Fallout plugin;
+    private final File folder;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    /**
+     * Creates a new transfer manager.<br>
+     * Must be created after the {@link ninja.amp.fallout.character.CharacterManager}!
+     *
+     * @param plugin The fallout plugin instance
+     */
+    public TransferManager(Fallout plugin) {
+        this.plugin = plugin;
+        this.folder = new File(plugin.getDataFolder(), "exports");
+    }
+
+    /**
+     * Exports every character. Must be called from the main thread.<br>
+     * Characters that are loaded or waiting to be saved are encoded right away, the rest are streamed
+     * from the character store off the main thread.
+     *
+     * @param sender The sender who requested the export
+     * @param name   The export's file name, or {@code null} to name it after the current time
+     */
+    public void exportCharacters(CommandSender sender, String name) {
+        Messenger messenger = plugin.getMessenger();
+        String fileName = name == null ? "characters-" + LocalDateTime.now().format(NAME_FORMAT) + EXTENSION : getFileName(name);
+        if (fileName == null) {
+            messenger.sendErrorMessage(sender, FOMessage.ERROR_EXPORT, "Invalid file name " + name);
+            return;
+        }
+        if (!running.compareAndSet(false, true)) {
+            messenger.sendErrorMessage(sender, FOMessage.ERROR_TRANSFERRUNNING);
+            return;
+        }
+        messenger.sendMessage(sender, FOMessage.EXPORT_STARTED, fileName);
+
+        // The stored characters are kept as they are until written, so the export is taken at a single point in time
+        CharacterManager characterManager = plugin.getCharacterManager();
+        Map<String, byte[]> characters = characterManager.snapshotCharacters();
+        int total = characterManager.getCharacterCount();
+        File file = new File(folder, fileName);
+
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            try {
+                long start = System.nanoTime();
+                int count = write(sender, file, characters, total);
+                messenger.debug("Exported " + count + " characters to " + fileName + " in " + (System.nanoTime() - start) / 1000000 + "ms");
+                report(sender, false, FOMessage.EXPORT_DONE, count, fileName);
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Could not export characters to " + file, e);
+                report(sender, true, FOMessage.ERROR_EXPORT, e.getMessage());
+            } finally {
+                characterManager.releaseStore();
+                running.set(false);
+            }
+        });
+    }
+
+    /**
+     * Writes an export file.<br>
+     * The file is written to a temporary file and moved into place once complete.
+     *
+     * @param sender     The sender to report progress to
+     * @param file       The export file
+     * @param characters The encoded characters snapshotted on the main thread, with {@code null} for deleted characters
+     * @param total      The amount of characters expected to be exported
+     * @return The amount of characters exported
+     * @throws IOException If the file could not be written
+     */
+    private int write(CommandSender sender, File file, Map<String, byte[]> characters, int total) throws IOException {
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            throw new IOException("Could not create " + folder);
+        }
+        File temp = new File(folder, file.getName() + ".tmp");
+        Progress progress = new Progress(sender, FOMessage.EXPORT_PROGRESS, total);
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(temp))))) {
+            output.writeInt(MAGIC);
+            CharacterCodec.writeVarInt(output, VERSION);
+            for (byte[] character : characters.values()) {
+                if (character != null) {
+                    writeRecord(output, character);
+                    progress.increment();
+                }
+            }
+            try {
+                plugin.getCharacterManager().forEachStoredCharacter(characters.keySet(), character -> {
+                    try {
+                        writeRecord(output, CharacterCodec.encode(character));
+                        progress.increment();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            CharacterCodec.writeVarInt(output, 0);
+        } catch (IOException e) {
+            Files.deleteIfExists(temp.toPath());
+            throw e;
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return progress.count;
+    }
+
+    /**
+     * Writes an encoded character, prefixed with its length.
+     *
+     * @param output    The output to write to
+     * @param character The encoded character
+     * @throws IOException If the output could not be written to
+     */
+    private static void writeRecord(DataOutputStream output, byte[] character) throws IOException {
+        CharacterCodec.writeVarInt(output, character.length);
+        output.write(character);
+    }
+
+    /**
+     * Imports the characters in an export file. Must be called from the main thread.<br>
+     * The file is first read in full off the main thread to check that every character in it is valid.
+     * It is then read again, adding the characters on the main thread a batch at a time and writing
+     * each batch to the character store in a single save. Loaded characters are not replaced.
+     *
+     * @param sender The sender who requested the import
+     * @param name   The export's file name
+     */
+    public void importCharacters(CommandSender sender, String name) {
+        Messenger messenger = plugin.getMessenger();
+        String fileName = getFileName(name);
+        if (fileName == null || !getExports().contains(fileName)) {
+            messenger.sendErrorMessage(sender, FOMessage.ERROR_IMPORT, name, "Export does not exist");
+            return;
+        }
+        if (!running.compareAndSet(false, true)) {
+            messenger.sendErrorMessage(sender, FOMessage.ERROR_TRANSFERRUNNING);
+            return;
+        }
+        messenger.sendMessage(sender, FOMessage.IMPORT_STARTED, fileName);
+
+        File file = new File(folder, fileName);
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            try {
+                long start = System.nanoTime();
+                int total = read(file, null);
+                Progress progress = new Progress(sender, FOMessage.IMPORT_PROGRESS, total);
+                int imported = read(file, progress);
+                messenger.debug("Imported " + imported + " characters from " + fileName + " in " + (System.nanoTime() - start) / 1000000 + "ms");
+                report(sender, false, FOMessage.IMPORT_DONE, imported, fileName, total - imported);
+            } catch (Exception e) {
+                messenger.debug("Failed to import " + fileName + ". " + e.getMessage());
+                report(sender, true, FOMessage.ERROR_IMPORT, fileName, e.getMessage());
+            } finally {
+                running.set(false);
+            }
+        });
+    }
+
+    /**
+     * Reads an export file, either only validating it or importing its characters.
+     *
+     * @param file     The export file
+     * @param progress The progress of the import, or {@code null} to only validate the file
+     * @return The amount of characters in the file if validating, otherwise the amount of characters imported
+     * @throws Exception If the file is unreadable or contains an invalid character, or if the import was interrupted
+     */
+    private int read(File file, Progress progress) throws Exception {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            if (input.readInt() != MAGIC) {
+                throw new Exception("Not a character export");
+            }
+            int version = CharacterCodec.readVarInt(input);
+            if (version < 1 || version > VERSION) {
+                throw new Exception("Unsupported export version " + version);
+            }
+
+            int count = 0;
+            List<Character> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+            for (int length = CharacterCodec.readVarInt(input); length != 0; length = CharacterCodec.readVarInt(input)) {
+                if (length < 0 || length > MAX_RECORD_SIZE) {
+                    throw new Exception("Invalid character length " + length + " after " + count + " characters");
+                }
+                byte[] record = new byte[length];
+                input.readFully(record);
+                Character character;
+                try {
+                    character = CharacterCodec.decode(record);
+                } catch (Exception e) {
+                    throw new Exception("Invalid character after " + count + " characters. " + e.getMessage());
+                }
+                if (progress == null) {
+                    count++;
+                    continue;
+                }
+                batch.add(character);
+                if (batch.size() == IMPORT_BATCH_SIZE) {
+                    count += importBatch(batch, progress);
+                    batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+                }
+            }
+            if (!batch.isEmpty()) {
+                count += importBatch(batch, progress);
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Adds a batch of imported characters on the main thread, waiting for it to finish so that only one batch is held
+     * in memory, and then writes the batch to the character store in a single save.
+     *
+     * @param batch    The imported characters
+     * @param progress The progress of the import
+     * @return The amount of characters imported
+     * @throws Exception If the import was interrupted
+     */
+    private int importBatch(List<Character> batch, Progress progress) throws Exception {
+        CharacterManager characterManager = plugin.getCharacterManager();
+        int imported;
+        try {
+            imported = plugin.getServer().getScheduler().callSyncMethod(plugin, () -> characterManager.importCharacters(batch)).get();
+        } catch (ExecutionException e) {
+            throw new Exception("Import stopped. " + e.getCause().getMessage());
+        }
+        characterManager.flushSaves();
+        progress.add(batch.size());
+        return imported;
+    }
+
+    /**
+     * Gets the names of every export file.
+     *
+     * @return The export file names
+     */
+    public List<String> getExports() {
+        String[] names = folder.list((dir, name) -> name.endsWith(EXTENSION));
+        if (names == null) {
+            return Collections.emptyList();
+        }
+        List<String> exports = new ArrayList<>(Arrays.asList(names));
+        Collections.sort(exports);
+        return exports;
+    }
+
+    /**
+     * Gets the file name of an export, adding the export extension if missing.
+     *
+     * @param name The export's name
+     * @return The file name, or {@code null} if the name is not a plain file name
+     */
+    private static String getFileName(String name) {
+        if (!name.matches("[\\w.-]+") || name.startsWith(".")) {
+            return null;
+        }
+        return name.endsWith(EXTENSION) ? name : name + EXTENSION;
+    }
+
+    /**
+     * Tells the sender of a transfer command how it went, from the main thread.
+     *
+     * @param sender  The sender
+     * @param error   If the message is an error message
+     * @param message The message
+     * @param replace The message's arguments
+     */
+    private void report(CommandSender sender, boolean error, FOMessage message, Object... replace) {
+        if (!plugin.isEnabled()) {
+            return;
+        }
+        plugin.getServer().getScheduler().runTask(plugin, () -> {
+            if (error) {
+                plugin.getMessenger().sendErrorMessage(sender, message, replace);
+            } else {
+                plugin.getMessenger().sendMessage(sender, message, replace);
+            }
+        });
+    }
+
+    /**
+     * Counts the characters transferred so far, reporting the count to the sender every few seconds.
+     */
+    private class Progress {
+
+        private final CommandSender sender;
+        private final FOMessage message;
+        private final int total;
+        private int count = 0;
+        private long lastReport = System.currentTimeMillis();
+
+        /**
+         * Creates a new progress counter.
+         *
+         * @param sender  The sender to report to
+         * @param message The progress message, given the count and total
+         * @param total   The amount of characters expected to be transferred
+         */
+        private Progress(CommandSender sender, FOMessage message, int total) {
+            this.sender = sender;
+            this.message = message;
+            this.total = total;
+        }
+
+        /**
+         * Counts a transferred character.
+         */
+        private void increment() {
+            add(1);
+        }
+
+        /**
+         * Counts a number of transferred characters.
+         *
+         * @param amount The amount of characters
+         */
+        private void add(int amount) {
+            count += amount;
+            long now = System.currentTimeMillis();
+            if (now - lastReport >= PROGRESS_INTERVAL) {
+                lastReport = now;
+                report(sender, false, message, count, Math.max(count, total));
+            }
+        }
+
+    }
+
+}
@@ -21,50 +21,39 @@ package ninja.amp.fallout.character;
 import ninja.amp.fallout.Fallout;
 import ninja.amp.fallout.util.ArmorMaterial;
 import ninja.amp.fallout.util.FOUtils;
-import org.apache.commons.lang.StringUtils;
-import org.bukkit.Bukkit;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
 
+import java.io.DataInputStream;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
- * Stores the information about a fallout character.
+ * Stores the information about a fallout character.<br>
+ * The character's fields are kept in an immutable {@link CharacterSnapshot} that is replaced with a changed copy
+ * on every mutation, so reads never lock. Mutations are serialized by a write lock, which keeps journal records
+ * in the same order as the snapshots they describe.
  *
  * @author Austin Payne
  */
 public class Character {
 
-    private String ownerName;
-    private UUID ownerId;
-    private final Object ownerLock = new Object();
+    private volatile CharacterSnapshot snapshot;
+    private final Object writeLock = new Object();
+    private volatile ArmorMaterial armor;
 
-    private final String characterName;
-    private final Race race;
-    private final int age;
-    private final int height;
-    private final int weight;
-    private final Gender gender;
-    private final Alignment alignment;
-
-    private final Special special;
-    private AtomicInteger level;
-    private final Map<Skill, Integer> skills = new HashMap<>();
-    private final List<Perk> perks = new ArrayList<>();
-    private final List<String> knowledge = new ArrayList<>();
-
-    private String faction;
-    private final Object factionLock = new Object();
-
-    private int radiation;
-    private int resistance;
-    private long lastRadX;
-    private long remainingRadX;
+    private volatile CharacterJournal journal;
+    private boolean normalized = false;
+    private final AtomicInteger dirtyGroups = new AtomicInteger();
 
     /**
      * Creates a Character from a character builder.
@@ -72,28 +61,12 @@ public class Character {
      * @param builder The character builder
      */
     public Character(CharacterBuilder builder) {
-        this.ownerName = builder.ownerName;
-        this.ownerId = builder.ownerId;
-
-        this.characterName = builder.characterName;
-        this.race = builder.race;
-        this.age = builder.age;
-        this.height = builder.height;
-        this.weight = builder.weight;
-        this.gender = builder.gender;
-        this.alignment = builder.alignment;
-
-        this.special = new Special(race.getMinSpecial());
-        this.level = new AtomicInteger();
-        for (Skill skill : Skill.values()) {
-            skills.put(skill, 0);
-        }
-
-        this.faction = null;
+        this.snapshot = new CharacterSnapshot(builder.characterName, builder.race, builder.age, builder.height, builder.weight, builder.gender, builder.alignment)
+                .withOwner(builder.ownerName, builder.ownerId)
+                .withSpecial(builder.race.getMinSpecial().getPacked());
 
-        this.radiation = 0;
-        this.lastRadX = 0;
-        this.remainingRadX = 0;
+        // A new character has never been stored
+        markDirty();
     }
 
     /**
@@ -103,10 +76,19 @@ public class Character {
      * @throws Exception If section is formatted incorrectly or does not represent a complete character
      */
     public Character(ConfigurationSection section) throws Exception {
+        String ownerName;
+        UUID ownerId;
+        String characterName;
+        Race race;
+        int age;
+        int height;
+        int weight;
+        Gender gender;
+        Alignment alignment;
         if (section.isString("ownerName")) {
             String lastOwnerName = section.getString("ownerName");
             try {
-                this.ownerId = UUID.fromString(section.getString("ownerId"));
+                ownerId = UUID.fromString(section.getString("ownerId"));
             } catch (IllegalArgumentException e) {
                 throw new Exception("Missing or invalid owner ID");
             }
@@ -116,13 +98,13 @@ public class Character {
                     break;
                 }
             }
-            this.ownerName = lastOwnerName;
+            ownerName = lastOwnerName;
         } else {
-            this.ownerName = null;
-            this.ownerId = null;
+            ownerName = null;
+            ownerId = null;
         }
         if (section.isString("name")) {
-            this.characterName = section.getString("name");
+            characterName = section.getString("name");
             if (characterName.length() < 3 || characterName.length() > 20) {
                 throw new Exception("Character names must be comprised of between 3 and 20 letters");
             }
@@ -133,35 +115,36 @@ public class Character {
             throw new Exception("Missing or invalid character name");
         }
         try {
-            this.race = Race.valueOf(section.getString("race"));
+            race = Race.valueOf(section.getString("race"));
         } catch (IllegalArgumentException e) {
             throw new Exception("Missing or invalid race");
         }
         if (section.isInt("age")) {
-            this.age = Math.max(6, section.getInt("age"));
+            age = normalize(section.getInt("age"), 6, Integer.MAX_VALUE);
         } else {
             throw new Exception("Missing or invalid age");
         }
         if (section.isInt("height")) {
-            this.height = Math.max(36, section.getInt("height"));
+            height = normalize(section.getInt("height"), 36, Integer.MAX_VALUE);
         } else {
             throw new Exception("Missing or invalid height");
         }
         if (section.isInt("weight")) {
-            this.weight = Math.max(72, section.getInt("weight"));
+            weight = normalize(section.getInt("weight"), 72, Integer.MAX_VALUE);
         } else {
             throw new Exception("Missing or invalid weight");
         }
         try {
-            this.gender = Gender.valueOf(section.getString("gender"));
+            gender = Gender.valueOf(section.getString("gender"));
         } catch (IllegalArgumentException e) {
             throw new Exception("Missing or invalid gender");
         }
         try {
-            this.alignment = Alignment.valueOf(section.getString("alignment"));
+            alignment = Alignment.valueOf(section.getString("alignment"));
         } catch (IllegalArgumentException e) {
             throw new Exception("Missing or invalid alignment");
         }
+        long special;
         if (section.isConfigurationSection("special")) {
             ConfigurationSection specialSection = section.getConfigurationSection("special");
             Map<Trait, Integer> traits = new HashMap<>();
@@ -169,68 +152,379 @@ public class Character {
                 if (specialSection.isInt(trait.getName())) {
                     int level = specialSection.getInt(trait.getName());
                     if (race != Race.DEITY) {
-                        level = FOUtils.clamp(level, race.getMinSpecial().get(trait), race.getMaxSpecial().get(trait));
+                        level = normalize(level, race.getMinSpecial().get(trait), race.getMaxSpecial().get(trait));
                     }
                     traits.put(trait, level);
                 } else {
                     throw new Exception("Missing or invalid trait: " + trait.getName());
                 }
             }
-            special = new Special(traits);
+            special = new Special(traits).getPacked();
         } else {
             throw new Exception("Missing or invalid special");
         }
+        long skills;
         if (section.isConfigurationSection("skills")) {
             ConfigurationSection skillLevels = section.getConfigurationSection("skills");
+            long levels = 0;
             for (Skill skill : Skill.class.getEnumConstants()) {
-                skills.put(skill, FOUtils.clamp(skillLevels.getInt(skill.getName(), 0), 0, 5));
+                levels = skill.withLevel(levels, normalize(skillLevels.getInt(skill.getName(), 0), 0, 5));
             }
+            skills = levels;
         } else {
             throw new Exception("Missing or invalid skills");
         }
+        long perks;
         if (section.isList("perks")) {
             List<String> perkNames = section.getStringList("perks");
+            long perkBits = 0;
             for (String perkName : perkNames) {
                 try {
-                    perks.add(Perk.valueOf(perkName));
+                    perkBits |= Perk.valueOf(perkName).getMask();
                 } catch (IllegalArgumentException e) {
                     throw new Exception("Invalid perk: " + perkName);
                 }
             }
+            perks = perkBits;
         } else {
             throw new Exception("Missing or invalid perks");
         }
+        int level;
         if (section.isInt("level")) {
-            this.level = new AtomicInteger(FOUtils.clamp(section.getInt("level"), 0, 5));
+            level = normalize(section.getInt("level"), 0, 5);
         } else {
             throw new Exception("Missing or invalid level");
         }
+        long[] knowledge;
         if (section.isList("knowledge")) {
-            this.knowledge.addAll(section.getStringList("knowledge"));
+            knowledge = toKnowledge(section.getStringList("knowledge"));
         } else {
             throw new Exception("Missing or invalid knowledge");
         }
-        this.faction = section.getString("faction");
+        String faction = section.getString("faction");
+        int radiation;
         if (section.isInt("radiation")) {
-            this.radiation = FOUtils.clamp(section.getInt("radiation"), 0, 1000);
+            radiation = normalize(section.getInt("radiation"), 0, 1000);
         } else {
             throw new Exception("Missing or invalid radiation");
         }
+        long lastRadX = 0;
+        long remainingRadX = 0;
         if (section.isLong("lastRadX") && section.isLong("remainingRadX")) {
-            this.lastRadX = section.getLong("lastRadX");
-            this.remainingRadX = section.getLong("remainingRadX");
+            lastRadX = section.getLong("lastRadX");
+            remainingRadX = section.getLong("remainingRadX");
+        }
+        this.snapshot = new CharacterSnapshot(characterName, race, age, height, weight, gender, alignment)
+                .withOwner(ownerName, ownerId)
+                .withSpecial(special)
+                .withSkillLevels(skills)
+                .withPerks(perks)
+                .withLevel(level)
+                .withKnowledge(knowledge)
+                .withFaction(faction)
+                .withRadiation(radiation)
+                .withRadX(lastRadX, remainingRadX);
+        if (normalized) {
+            markDirty();
+        }
+    }
+
+    /**
+     * Creates a Character, loading it from the fields of a {@link CharacterCodec} encoded character.<br>
+     * Values are validated the same way as when loading from a configuration section.
+     *
+     * @param fields The encoded fields
+     * @throws Exception If a field is invalid or the fields do not represent a complete character
+     */
+    Character(CharacterCodec.FieldReader fields) throws Exception {
+        String ownerName = null;
+        UUID ownerId = null;
+        String characterName = null;
+        Race race = null;
+        int age = -1;
+        int height = -1;
+        int weight = -1;
+        Gender gender = null;
+        Alignment alignment = null;
+        Map<Trait, Integer> traits = null;
+        int level = -1;
+        boolean hasSkills = false;
+        long skillLevels = 0;
+        boolean hasPerks = false;
+        long perks = 0;
+        long[] knowledge = null;
+        String faction = null;
+        int radiation = -1;
+        long lastRadX = 0;
+        long remainingRadX = 0;
+
+        Race[] races = Race.values();
+        Gender[] genders = Gender.values();
+        Alignment[] alignments = Alignment.values();
+        Trait[] traitValues = Trait.values();
+        Skill[] skillValues = Skill.values();
+        Perk[] perkValues = Perk.values();
+        for (int tag = fields.next(); tag != CharacterCodec.END; tag = fields.next()) {
+            DataInputStream input = fields.input();
+            switch (tag) {
+                case CharacterCodec.OWNER:
+                    ownerId = new UUID(input.readLong(), input.readLong());
+                    ownerName = input.readUTF();
+                    break;
+                case CharacterCodec.NAME:
+                    characterName = input.readUTF();
+                    break;
+                case CharacterCodec.RACE:
+                    race = readEnum(races, CharacterCodec.readVarInt(input), "race");
+                    break;
+                case CharacterCodec.AGE:
+                    age = CharacterCodec.readVarInt(input);
+                    break;
+                case CharacterCodec.HEIGHT:
+                    height = CharacterCodec.readVarInt(input);
+                    break;
+                case CharacterCodec.WEIGHT:
+                    weight = CharacterCodec.readVarInt(input);
+                    break;
+                case CharacterCodec.GENDER:
+                    gender = readEnum(genders, CharacterCodec.readVarInt(input), "gender");
+                    break;
+                case CharacterCodec.ALIGNMENT:
+                    alignment = readEnum(alignments, CharacterCodec.readVarInt(input), "alignment");
+                    break;
+                case CharacterCodec.SPECIAL:
+                    traits = new HashMap<>();
+                    int traitCount = CharacterCodec.readVarInt(input);
+                    for (int i = 0; i < traitCount; i++) {
+                        int value = CharacterCodec.readVarInt(input);
+                        if (i < traitValues.length) {
+                            traits.put(traitValues[i], value);
+                        }
+                    }
+                    break;
+                case CharacterCodec.SKILLS:
+                    // Two skill levels are packed into each byte
+                    int skillCount = CharacterCodec.readVarInt(input);
+                    for (int i = 0; i < skillCount; i += 2) {
+                        int packed = input.readUnsignedByte();
+                        if (i < skillValues.length) {
+                            skillLevels = skillValues[i].withLevel(skillLevels, normalize(packed & 0xF, 0, 5));
+                        }
+                        if (i + 1 < skillValues.length) {
+                            skillLevels = skillValues[i + 1].withLevel(skillLevels, normalize(packed >>> 4, 0, 5));
+                        }
+                    }
+                    hasSkills = true;
+                    break;
+                case CharacterCodec.PERKS:
+                    // Bits of perks this version does not know are dropped
+                    perks = CharacterCodec.readVarLong(input) & (-1L >>> (64 - perkValues.length));
+                    hasPerks = true;
+                    break;
+                case CharacterCodec.LEVEL:
+                    level = CharacterCodec.readVarInt(input);
+                    break;
+                case CharacterCodec.KNOWLEDGE:
+                    List<String> information = new ArrayList<>();
+                    for (int i = CharacterCodec.readVarInt(input); i > 0; i--) {
+                        information.add(input.readUTF());
+                    }
+                    knowledge = toKnowledge(information);
+                    break;
+                case CharacterCodec.FACTION:
+                    faction = input.readUTF();
+                    break;
+                case CharacterCodec.RADIATION:
+                    radiation = CharacterCodec.readVarInt(input);
+                    break;
+                case CharacterCodec.RAD_X:
+                    lastRadX = CharacterCodec.readVarLong(input);
+                    remainingRadX = CharacterCodec.readVarLong(input);
+                    break;
+                default:
+                    // Field added by a newer version
+                    break;
+            }
+        }
+
+        if (ownerId != null) {
+            String onlineName = Fallout.getOnlinePlayers().get(ownerId);
+            if (onlineName != null) {
+                ownerName = onlineName;
+            }
+        } else {
+            ownerName = null;
+        }
+        if (characterName == null) {
+            throw new Exception("Missing or invalid character name");
+        }
+        if (characterName.length() < 3 || characterName.length() > 20) {
+            throw new Exception("Character names must be comprised of between 3 and 20 letters");
+        }
+        if (!FOUtils.checkName(characterName)) {
+            throw new Exception("Character name is not of the correct format");
+        }
+        if (race == null) {
+            throw new Exception("Missing or invalid race");
+        }
+        if (age < 0) {
+            throw new Exception("Missing or invalid age");
+        }
+        if (height < 0) {
+            throw new Exception("Missing or invalid height");
+        }
+        if (weight < 0) {
+            throw new Exception("Missing or invalid weight");
+        }
+        if (gender == null) {
+            throw new Exception("Missing or invalid gender");
+        }
+        if (alignment == null) {
+            throw new Exception("Missing or invalid alignment");
+        }
+        if (traits == null) {
+            throw new Exception("Missing or invalid special");
+        }
+        for (Trait trait : traitValues) {
+            if (!traits.containsKey(trait)) {
+                throw new Exception("Missing or invalid trait: " + trait.getName());
+            }
+            if (race != Race.DEITY) {
+                traits.put(trait, normalize(traits.get(trait), race.getMinSpecial().get(trait), race.getMaxSpecial().get(trait)));
+            }
+        }
+        if (!hasSkills) {
+            throw new Exception("Missing or invalid skills");
+        }
+        if (!hasPerks) {
+            throw new Exception("Missing or invalid perks");
+        }
+        if (level < 0) {
+            throw new Exception("Missing or invalid level");
+        }
+        if (knowledge == null) {
+            throw new Exception("Missing or invalid knowledge");
+        }
+        if (radiation < 0) {
+            throw new Exception("Missing or invalid radiation");
+        }
+        this.snapshot = new CharacterSnapshot(characterName, race, normalize(age, 6, Integer.MAX_VALUE),
+                normalize(height, 36, Integer.MAX_VALUE), normalize(weight, 72, Integer.MAX_VALUE), gender, alignment)
+                .withOwner(ownerName, ownerId)
+                .withSpecial(new Special(traits).getPacked())
+                .withSkillLevels(skillLevels)
+                .withPerks(perks)
+                .withLevel(normalize(level, 0, 5))
+                .withKnowledge(knowledge)
+                .withFaction(faction)
+                .withRadiation(normalize(radiation, 0, 1000))
+                .withRadX(lastRadX, remainingRadX);
+        if (normalized) {
+            markDirty();
+        }
+    }
+
+    /**
+     * Clamps a loaded value, remembering if it had to be changed.
+     *
+     * @param value The loaded value
+     * @param min   The minimum value
+     * @param max   The maximum value
+     * @return The clamped value
+     */
+    private int normalize(int value, int min, int max) {
+        int clamped = FOUtils.clamp(value, min, max);
+        if (clamped != value) {
+            normalized = true;
+        }
+        return clamped;
+    }
+
+    /**
+     * Checks if any loaded values were out of range and changed when the character was loaded.<br>
+     * A normalized character differs from its saved copy and needs to be saved again.
+     *
+     * @return {@code true} if the character was normalized
+     */
+    boolean isNormalized() {
+        return normalized;
+    }
+
+    /**
+     * Gets the constant of an enum from its ordinal.
+     *
+     * @param values  The constants of the enum
+     * @param ordinal The ordinal
+     * @param name    The name of the value, used in the error message
+     * @param <T>     The enum type
+     * @return The constant
+     * @throws Exception If the ordinal is not a constant of the enum
+     */
+    private static <T extends Enum<T>> T readEnum(T[] values, int ordinal, String name) throws Exception {
+        if (ordinal < 0 || ordinal >= values.length) {
+            throw new Exception("Missing or invalid " + name);
+        }
+        return values[ordinal];
+    }
+
+    /**
+     * Gets the character's current snapshot.<br>
+     * Read several fields from one snapshot rather than from the character to get values that are consistent with each other.
+     *
+     * @return The snapshot
+     */
+    public CharacterSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Gets the character's version.<br>
+     * The version increases with every change to the character, so a version read earlier tells if the character has changed since.
+     *
+     * @return The version
+     */
+    public long getVersion() {
+        return snapshot.getVersion();
+    }
+
+    /**
+     * Changes the character, if it has not changed since a certain version was read.<br>
+     * No other change can be made to the character while the update runs, so its changes are applied together.
+     *
+     * @param version The version that was read, from {@link Character#getVersion()} or {@link CharacterSnapshot#getVersion()}
+     * @param update  Makes the changes, given the character
+     * @return {@code true} if the character was changed, {@code false} if it had changed since the version was read
+     */
+    public boolean compareAndUpdate(long version, Consumer<Character> update) {
+        synchronized (writeLock) {
+            if (snapshot.getVersion() != version) {
+                return false;
+            }
+            update.accept(this);
+            return true;
         }
     }
 
+    /**
+     * Publishes the next snapshot of the character. Must be called while holding the write lock.
+     *
+     * @param next  The next snapshot
+     * @param group The changed field group
+     * @return The next snapshot
+     */
+    private CharacterSnapshot publish(CharacterSnapshot next, FieldGroup group) {
+        snapshot = next;
+        markDirty(group);
+        return next;
+    }
+
     /**
      * Gets the owner's name.
      *
      * @return The owner's name
      */
     public String getOwnerName() {
-        synchronized (this.ownerLock) {
-            return ownerName;
-        }
+        return snapshot.getOwnerName();
     }
 
     /**
@@ -239,9 +533,7 @@ public class Character {
      * @return The owner's uuid
      */
     public UUID getOwnerId() {
-        synchronized (this.ownerLock) {
-            return ownerId;
-        }
+        return snapshot.getOwnerId();
     }
 
     /**
@@ -250,7 +542,7 @@ public class Character {
      * @return The character's name
      */
     public String getCharacterName() {
-        return characterName;
+        return snapshot.getCharacterName();
     }
 
     /**
@@ -259,7 +551,7 @@ public class Character {
      * @return The character's race
      */
     public Race getRace() {
-        return race;
+        return snapshot.getRace();
     }
 
     /**
@@ -268,7 +560,7 @@ public class Character {
      * @return The character's age
      */
     public int getAge() {
-        return age;
+        return snapshot.getAge();
     }
 
     /**
@@ -277,7 +569,7 @@ public class Character {
      * @return The character's height
      */
     public int getHeight() {
-        return height;
+        return snapshot.getHeight();
     }
 
     /**
@@ -286,7 +578,7 @@ public class Character {
      * @return The character's weight
      */
     public int getWeight() {
-        return weight;
+        return snapshot.getWeight();
     }
 
     /**
@@ -295,7 +587,7 @@ public class Character {
      * @return The character's gender
      */
     public Gender getGender() {
-        return gender;
+        return snapshot.getGender();
     }
 
     /**
@@ -304,7 +596,7 @@ public class Character {
      * @return The character's alignment
      */
     public Alignment getAlignment() {
-        return alignment;
+        return snapshot.getAlignment();
     }
 
     /**
@@ -313,9 +605,46 @@ public class Character {
      * @return The character's SPECIAL
      */
     public Special getSpecial() {
-        synchronized (this.special) {
-            return new Special(special);
-        }
+        return snapshot.getSpecial();
+    }
+
+    /**
+     * Gets the value of one of the character's traits without copying the SPECIAL.
+     *
+     * @param trait The trait
+     * @return The trait's value
+     */
+    public int getTrait(Trait trait) {
+        return snapshot.getTrait(trait);
+    }
+
+    /**
+     * Gets every value of the character's SPECIAL at once, packed into a long.
+     *
+     * @return The packed SPECIAL, read with {@link Special#get(long, Trait)}
+     */
+    public long getPackedSpecial() {
+        return snapshot.getPackedSpecial();
+    }
+
+    /**
+     * Gets the roll modifier of one of the character's traits, including perk bonuses.
+     *
+     * @param trait The trait
+     * @return The trait's roll modifier
+     */
+    public int getRollModifier(Trait trait) {
+        return snapshot.getRollModifier(trait);
+    }
+
+    /**
+     * Gets the roll modifier of one of the character's skills, including perk bonuses.
+     *
+     * @param skill The skill
+     * @return The skill's roll modifier
+     */
+    public int getRollModifier(Skill skill) {
+        return snapshot.getRollModifier(skill);
     }
 
     /**
@@ -324,8 +653,8 @@ public class Character {
      * @param special The SPECIAL
      */
     public void setSpecial(Special special) {
-        synchronized (this.special) {
-            this.special.set(special);
+        synchronized (writeLock) {
+            publish(snapshot.withSpecial(special.getPacked()), FieldGroup.SPECIAL);
         }
     }
 
@@ -336,9 +665,7 @@ public class Character {
      * @return {@code true} if the character has the perk
      */
     public boolean hasPerk(Perk perk) {
-        synchronized (perks) {
-            return perks.contains(perk);
-        }
+        return snapshot.hasPerk(perk);
     }
 
     /**
@@ -347,8 +674,8 @@ public class Character {
      * @param perk The perk to add
      */
     public void addPerk(Perk perk) {
-        synchronized (perks) {
-            perks.add(perk);
+        synchronized (writeLock) {
+            setPerks(snapshot.getPerkMask() | perk.getMask());
         }
     }
 
@@ -358,20 +685,50 @@ public class Character {
      * @param perk The perk to remove
      */
     public void removePerk(Perk perk) {
-        synchronized (perks) {
-            perks.remove(perk);
+        synchronized (writeLock) {
+            setPerks(snapshot.getPerkMask() & ~perk.getMask());
+        }
+    }
+
+    /**
+     * Sets the character's perks and journals them. Must be called while holding the write lock.
+     *
+     * @param perks The perk bitmask
+     */
+    private void setPerks(long perks) {
+        CharacterSnapshot next = publish(snapshot.withPerks(perks), FieldGroup.PERKS);
+        CharacterJournal journal = this.journal;
+        if (journal != null) {
+            journal.recordPerks(this, next.getPerks());
         }
     }
 
     /**
      * Gets the character's perks.
      *
-     * @return An unmodifiable view of the character's perks
+     * @return A copy of the character's perks
      */
     public List<Perk> getPerks() {
-        synchronized (perks) {
-            return new ArrayList<>(perks);
-        }
+        return snapshot.getPerks();
+    }
+
+    /**
+     * Gets the character's perks as a bitmask.
+     *
+     * @return The perk bitmask, with the bits of {@link Perk#getMask()}
+     */
+    public long getPerkMask() {
+        return snapshot.getPerkMask();
+    }
+
+    /**
+     * Gets the character's perk of a certain tier.
+     *
+     * @param tier The tier
+     * @return The perk, or {@code null} if the character has no perk of the tier
+     */
+    public Perk getPerk(int tier) {
+        return snapshot.getPerk(tier);
     }
 
     /**
@@ -380,13 +737,7 @@ public class Character {
      * @return The perks, in regular expression format "perk[, perk]*"
      */
     public String getPerkList() {
-        List<String> perkNames = new ArrayList<>();
-        synchronized (perks) {
-            for (Perk perk : perks) {
-                perkNames.add(perk.getName());
-            }
-        }
-        return StringUtils.join(perkNames, ", ");
+        return snapshot.getPerkList();
     }
 
     /**
@@ -396,9 +747,7 @@ public class Character {
      * @return The level
      */
     public int skillLevel(Skill skill) {
-        synchronized (skills) {
-            return skills.containsKey(skill) ? skills.get(skill) : 0;
-        }
+        return snapshot.skillLevel(skill);
     }
 
     /**
@@ -408,19 +757,41 @@ public class Character {
      * @param level The level
      */
     public void setSkillLevel(Skill skill, int level) {
-        synchronized (skills) {
-            skills.put(skill, level);
+        synchronized (writeLock) {
+            setSkillLevels(skill.withLevel(snapshot.getPackedSkillLevels(), level));
         }
     }
 
     /**
      * Gets the character's skills and their levels.
      *
-     * @return An unmodifiable view of the character's skill levels
+     * @return A copy of the character's skill levels
      */
     public Map<Skill, Integer> getSkillLevels() {
-        synchronized (skills) {
-            return new HashMap<>(skills);
+        return snapshot.getSkillLevels();
+    }
+
+    /**
+     * Gets every skill level of the character at once, packed into a long.
+     *
+     * @return The packed skill levels, read with {@link Skill#getLevel(long)}
+     */
+    public long getPackedSkillLevels() {
+        return snapshot.getPackedSkillLevels();
+    }
+
+    /**
+     * Sets every skill level of the character at once.
+     *
+     * @param levels The packed skill levels
+     */
+    public void setSkillLevels(long levels) {
+        synchronized (writeLock) {
+            publish(snapshot.withSkillLevels(levels), FieldGroup.SKILLS);
+            CharacterJournal journal = this.journal;
+            if (journal != null) {
+                journal.recordSkillLevels(this, levels);
+            }
         }
     }
 
@@ -430,13 +801,7 @@ public class Character {
      * @return The skill levels, in regular expression format "skill - level[, skill - level]*"
      */
     public String getSkillList() {
-        List<String> skillLevels = new ArrayList<>();
-        synchronized (skills) {
-            for (Map.Entry<Skill, Integer> skill : skills.entrySet()) {
-                skillLevels.add(skill.getKey().getName() + " - " + skill.getValue());
-            }
-        }
-        return StringUtils.join(skillLevels, ", ");
+        return snapshot.getSkillList();
     }
 
     /**
@@ -445,7 +810,7 @@ public class Character {
      * @return The character's level
      */
     public int getLevel() {
-        return level.intValue();
+        return snapshot.getLevel();
     }
 
     /**
@@ -454,7 +819,14 @@ public class Character {
      * @return The character's new level
      */
     public int increaseLevel() {
-        return level.incrementAndGet();
+        synchronized (writeLock) {
+            int newLevel = publish(snapshot.withLevel(snapshot.getLevel() + 1), FieldGroup.LEVEL).getLevel();
+            CharacterJournal journal = this.journal;
+            if (journal != null) {
+                journal.recordLevel(this, newLevel);
+            }
+            return newLevel;
+        }
     }
 
     /**
@@ -464,9 +836,17 @@ public class Character {
      * @return {@code true} if the character knows the piece of information
      */
     public boolean hasKnowledge(String information) {
-        synchronized (knowledge) {
-            return knowledge.contains(information.toLowerCase());
-        }
+        return snapshot.hasKnowledge(information);
+    }
+
+    /**
+     * Checks if the character knows a certain piece of information.
+     *
+     * @param id The id of the piece of information, from {@link Information#getId}
+     * @return {@code true} if the character knows the piece of information
+     */
+    public boolean hasKnowledge(int id) {
+        return snapshot.hasKnowledge(id);
     }
 
     /**
@@ -475,9 +855,7 @@ public class Character {
      * @param information The piece of information
      */
     public void addKnowledge(String information) {
-        synchronized (knowledge) {
-            knowledge.add(information.toLowerCase());
-        }
+        setKnowledge(Information.getId(information), true);
     }
 
     /**
@@ -486,20 +864,62 @@ public class Character {
      * @param information The piece of information
      */
     public void removeKnowledge(String information) {
-        synchronized (knowledge) {
-            knowledge.remove(information.toLowerCase());
+        int id = Information.findId(information);
+        if (id >= 0) {
+            setKnowledge(id, false);
+        }
+    }
+
+    /**
+     * Learns or forgets a piece of information and journals the character's knowledge.
+     *
+     * @param id    The id of the piece of information
+     * @param known If the character knows the piece of information
+     */
+    private void setKnowledge(int id, boolean known) {
+        synchronized (writeLock) {
+            CharacterSnapshot next = publish(snapshot.withKnowledge(id, known), FieldGroup.KNOWLEDGE);
+            CharacterJournal journal = this.journal;
+            if (journal != null) {
+                journal.recordKnowledge(this, next.getKnowledge());
+            }
         }
     }
 
+    /**
+     * Gets the lowercase names of the pieces of information the character knows.
+     *
+     * @return The pieces of information
+     */
+    public List<String> getKnowledge() {
+        return snapshot.getKnowledge();
+    }
+
+    /**
+     * Interns pieces of information into a knowledge bitset.
+     *
+     * @param information The pieces of information
+     * @return The bitset, one bit per information id
+     */
+    private static long[] toKnowledge(List<String> information) {
+        long[] words = new long[0];
+        for (String piece : information) {
+            int id = Information.getId(piece);
+            if ((id >>> 6) >= words.length) {
+                words = Arrays.copyOf(words, (id >>> 6) + 1);
+            }
+            words[id >>> 6] |= 1L << id;
+        }
+        return words;
+    }
+
     /**
      * Gets the character's faction.
      *
      * @return The character's faction
      */
     public String getFaction() {
-        synchronized (factionLock) {
-            return faction;
-        }
+        return snapshot.getFaction();
     }
 
     /**
@@ -508,8 +928,8 @@ public class Character {
      * @param faction The faction
      */
     public void setFaction(String faction) {
-        synchronized (factionLock) {
-            this.faction = faction;
+        synchronized (writeLock) {
+            publish(snapshot.withFaction(faction), FieldGroup.FACTION);
         }
     }
 
@@ -519,7 +939,7 @@ public class Character {
      * @return The character's radiation level
      */
     public int getRadiation() {
-        return radiation;
+        return snapshot.getRadiation();
     }
 
     /**
@@ -528,67 +948,90 @@ public class Character {
      * @param radiation The radiation to add
      */
     public void addRadiation(int radiation) {
-        this.radiation = FOUtils.clamp(this.radiation + radiation, 0, 1000);
+        synchronized (writeLock) {
+            setRadiation(FOUtils.clamp(snapshot.getRadiation() + radiation, 0, 1000));
+        }
     }
 
     /**
      * Resets the character's radiation level.
      */
     public void resetRadiation() {
-        this.radiation = 0;
+        synchronized (writeLock) {
+            setRadiation(0);
+        }
+    }
+
+    /**
+     * Sets the character's radiation level and journals it. Must be called while holding the write lock.
+     *
+     * @param radiation The radiation level
+     */
+    private void setRadiation(int radiation) {
+        publish(snapshot.withRadiation(radiation), FieldGroup.RADIATION);
+        CharacterJournal journal = this.journal;
+        if (journal != null) {
+            journal.recordRadiation(this, radiation);
+        }
     }
 
     /**
-     * Gets the character's radiation resistance.
+     * Gets the character's radiation resistance.<br>
+     * Resistance from endurance and perks is kept up to date by the snapshot and resistance from armor by
+     * {@link Character#updateArmor}. Rad-x wears off when it is read after expiring, so nothing is recomputed.
      *
      * @return The character's radiation resistance
      */
     public int getRadiationResistance() {
-        int finalResistance = resistance;
-        if (System.currentTimeMillis() - lastRadX <= 240000) {
-            finalResistance += 25 + (skillLevel(Skill.FIRST_AID) * 10);
+        CharacterSnapshot snapshot = this.snapshot;
+        int finalResistance = snapshot.getBaseResistance();
+        if (armor == ArmorMaterial.DIAMOND) {
+            finalResistance += 10;
+        } else if (armor == ArmorMaterial.GOLD) {
+            finalResistance += 30;
+        }
+        if (System.currentTimeMillis() - snapshot.getLastRadX() <= 240000) {
+            finalResistance += 25 + (snapshot.skillLevel(Skill.FIRST_AID) * 10);
         }
         return Math.min(finalResistance, 85);
     }
 
     /**
-     * Updates the character's radiation resistance.
+     * Gets the material of the full set of armor the character's owner was wearing when it last changed.
+     *
+     * @return The armor material, or {@code null} if the owner is not wearing a full set of the same material
      */
-    public void updateRadiationResistance() {
-        // Initial resistance based on endurance
-        resistance = 2 * special.get(Trait.ENDURANCE);
-        // Resistance from perks
-        if (perks.contains(Perk.ANTI_RADIATION)) {
-            resistance += 25;
-        }
-        // Resistance from armor
-        if (ownerId != null) {
-            Player player = Bukkit.getPlayer(ownerId);
-            if (player != null) {
-                if (ArmorMaterial.isWearingFullSet(player)) {
-                    ArmorMaterial material = ArmorMaterial.getArmorMaterial(player.getInventory().getHelmet().getType());
-                    if (ArmorMaterial.DIAMOND.equals(material)) {
-                        resistance += 10;
-                    } else if (ArmorMaterial.GOLD.equals(material)) {
-                        resistance += 30;
-                    }
-                }
-            }
-        }
+    public ArmorMaterial getArmor() {
+        return armor;
+    }
+
+    /**
+     * Updates the full set of armor the character's owner is wearing.<br>
+     * Must be called whenever the owner's armor may have changed.
+     *
+     * @param owner The character's owner
+     */
+    public void updateArmor(Player owner) {
+        this.armor = ArmorMaterial.getFullSet(owner);
     }
 
     /**
      * Updates the character's rad-x duration and last time used.
      */
     public void useRadX() {
-        long timeElapsed = System.currentTimeMillis() - lastRadX;
-        if (remainingRadX > timeElapsed) {
-            remainingRadX -= timeElapsed;
-        } else {
-            remainingRadX = 0;
+        synchronized (writeLock) {
+            long lastRadX = snapshot.getLastRadX();
+            long remainingRadX = snapshot.getRemainingRadX();
+            long timeElapsed = System.currentTimeMillis() - lastRadX;
+            if (remainingRadX > timeElapsed) {
+                remainingRadX -= timeElapsed;
+            } else {
+                remainingRadX = 0;
+            }
+            remainingRadX += 240000L;
+            lastRadX += timeElapsed;
+            publish(snapshot.withRadX(lastRadX, remainingRadX), FieldGroup.RADIATION);
         }
-        remainingRadX += 240000L;
-        lastRadX += timeElapsed;
     }
 
     /**
@@ -597,9 +1040,8 @@ public class Character {
      * @param owner The character's new owner
      */
     public void possess(Player owner) {
-        synchronized (ownerLock) {
-            this.ownerName = owner.getName();
-            this.ownerId = owner.getUniqueId();
+        synchronized (writeLock) {
+            publish(snapshot.withOwner(owner.getName(), owner.getUniqueId()), FieldGroup.OWNER);
         }
     }
 
@@ -607,58 +1049,165 @@ public class Character {
      * Abandons the character's owner.
      */
     public void abandon() {
-        synchronized (ownerLock) {
-            ownerName = null;
-            ownerId = null;
+        synchronized (writeLock) {
+            publish(snapshot.withOwner(null, null), FieldGroup.OWNER);
         }
+        armor = null;
     }
 
     /**
-     * Saves the character to a configuration section.
+     * Sets the journal the character's mutations are recorded to.
      *
-     * @param section The configuration section
+     * @param journal The journal, or {@code null} to stop recording mutations
      */
-    public void save(ConfigurationSection section) {
-        synchronized (ownerLock) {
-            section.set("ownerName", ownerName);
-            section.set("ownerId", ownerId == null ? null : ownerId.toString());
-        }
-        section.set("name", characterName);
-        section.set("race", race.name());
-        section.set("age", age);
-        section.set("height", height);
-        section.set("weight", weight);
-        section.set("gender", gender.name());
-        section.set("alignment", alignment.name());
-        ConfigurationSection specialSection = section.createSection("special");
-        synchronized (special) {
-            for (Map.Entry<Trait, Integer> entry : special.getTraits().entrySet()) {
-                specialSection.set(entry.getKey().getName(), entry.getValue());
-            }
+    void setJournal(CharacterJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Restores the character's level from a journal record.
+     *
+     * @param level The level
+     */
+    void restoreLevel(int level) {
+        synchronized (writeLock) {
+            publish(snapshot.withLevel(level), FieldGroup.LEVEL);
         }
-        ConfigurationSection skillLevels = section.createSection("skills");
-        synchronized (skills) {
-            for (Map.Entry<Skill, Integer> skill : skills.entrySet()) {
-                skillLevels.set(skill.getKey().getName(), skill.getValue());
-            }
+    }
+
+    /**
+     * Restores the character's perks from a journal record.
+     *
+     * @param perks The perks
+     */
+    void restorePerks(List<Perk> perks) {
+        long perkBits = 0;
+        for (Perk perk : perks) {
+            perkBits |= perk.getMask();
         }
-        List<String> perkNames = new ArrayList<>();
-        synchronized (perks) {
-            for (Perk perk : perks) {
-                perkNames.add(perk.name());
-            }
+        synchronized (writeLock) {
+            publish(snapshot.withPerks(perkBits), FieldGroup.PERKS);
+        }
+    }
+
+    /**
+     * Restores the character's knowledge from a journal record.
+     *
+     * @param knowledge The pieces of information
+     */
+    void restoreKnowledge(List<String> knowledge) {
+        long[] words = toKnowledge(knowledge);
+        synchronized (writeLock) {
+            publish(snapshot.withKnowledge(words), FieldGroup.KNOWLEDGE);
+        }
+    }
+
+    /**
+     * Restores the character's radiation level from a journal record.
+     *
+     * @param radiation The radiation level
+     */
+    void restoreRadiation(int radiation) {
+        synchronized (writeLock) {
+            publish(snapshot.withRadiation(radiation), FieldGroup.RADIATION);
         }
-        section.set("perks", perkNames);
-        section.set("level", level.intValue());
-        synchronized (knowledge) {
-            section.set("knowledge", knowledge);
+    }
+
+    /**
+     * Marks a group of fields as changed since the character was last written to the character store.
+     *
+     * @param group The changed field group
+     */
+    private void markDirty(FieldGroup group) {
+        dirtyGroups.getAndUpdate(groups -> groups | (1 << group.ordinal()));
+    }
+
+    /**
+     * Marks every field as changed, so that the whole character is written the next time it is saved.
+     */
+    public void markDirty() {
+        dirtyGroups.set((1 << FieldGroup.values().length) - 1);
+    }
+
+    /**
+     * Takes the groups of fields changed since the character was last written, clearing them.<br>
+     * A character store must write the taken groups, or hand them back with {@link Character#restoreDirtyGroups} if it fails to.
+     *
+     * @return The changed field groups
+     */
+    public Set<FieldGroup> takeDirtyGroups() {
+        int groups = dirtyGroups.getAndSet(0);
+        Set<FieldGroup> dirty = EnumSet.noneOf(FieldGroup.class);
+        for (FieldGroup group : FieldGroup.values()) {
+            if ((groups & (1 << group.ordinal())) != 0) {
+                dirty.add(group);
+            }
         }
-        synchronized (factionLock) {
-            section.set("faction", faction);
+        return dirty;
+    }
+
+    /**
+     * Marks field groups as changed again after they could not be written.
+     *
+     * @param groups The field groups that were not written
+     */
+    public void restoreDirtyGroups(Set<FieldGroup> groups) {
+        for (FieldGroup group : groups) {
+            markDirty(group);
         }
-        section.set("radiation", radiation);
-        section.set("lastRadX", lastRadX);
-        section.set("remainingRadX", remainingRadX);
+    }
+
+    /**
+     * Saves the character to a configuration section.
+     *
+     * @param section The configuration section
+     */
+    public void save(ConfigurationSection section) {
+        save(section, EnumSet.allOf(FieldGroup.class));
+    }
+
+    /**
+     * Saves certain groups of the character's fields to a configuration section, leaving the other fields as they are.<br>
+     * The fields are taken from a single snapshot, so no locks are held while saving.
+     *
+     * @param section The configuration section
+     * @param groups  The field groups to save
+     */
+    public void save(ConfigurationSection section, Set<FieldGroup> groups) {
+        snapshot.save(section, groups);
+    }
+
+    /**
+     * Saves certain groups of the character's fields as {@link CharacterCodec} encoded fields.<br>
+     * The fields are taken from a single snapshot, so no locks are held while saving.
+     *
+     * @param fields The field writer
+     * @param groups The field groups to save
+     * @throws IOException If the fields could not be written
+     */
+    void save(CharacterCodec.FieldWriter fields, Set<FieldGroup> groups) throws IOException {
+        snapshot.save(fields, groups);
+    }
+
+    /**
+     * Groups of a character's fields that are tracked and saved together.
+     */
+    public enum FieldGroup {
+        /**
+         * The name, race, age, height, weight, gender and alignment, which never change once created.
+         */
+        PROFILE,
+        OWNER,
+        SPECIAL,
+        SKILLS,
+        PERKS,
+        LEVEL,
+        KNOWLEDGE,
+        FACTION,
+        /**
+         * The radiation level and rad-x usage.
+         */
+        RADIATION
     }
 
     /**
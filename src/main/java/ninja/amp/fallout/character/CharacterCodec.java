@@ -0,0 +1,380 @@
+/*
+ * This file is part of Fallout.
+ *
+ * Copyright (c) 2013-2017 <http://github.com/ampayne2/Fallout//>
+ *
+ * Fallout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fallout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Fallout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ninja.amp.fallout.character;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Encodes characters in a compact, versioned binary format.<br>
+ * An encoded character is a format version followed by tagged fields, each prefixed with its length, and an end tag.
+ * Readers skip fields with tags they do not know, so fields can be added without breaking older readers.
+ * Enums are encoded by ordinal, so new constants must only ever be added to the end of an enum.<br>
+ * Stores that keep fields separately can encode and decode only the fields of certain {@link Character.FieldGroup}s.
+ *
+ * @author Austin Payne
+ */
+public final class CharacterCodec {
+
+    /**
+     * The newest format version, written by {@link CharacterCodec#encode}.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The largest field value that is decoded, so corrupt lengths are rejected before anything is allocated.
+     */
+    static final int MAX_FIELD_SIZE = 1024 * 1024;
+
+    static final int END = 0;
+    static final int OWNER = 1;
+    static final int NAME = 2;
+    static final int RACE = 3;
+    static final int AGE = 4;
+    static final int HEIGHT = 5;
+    static final int WEIGHT = 6;
+    static final int GENDER = 7;
+    static final int ALIGNMENT = 8;
+    static final int SPECIAL = 9;
+    static final int SKILLS = 10;
+    static final int PERKS = 11;
+    static final int LEVEL = 12;
+    static final int KNOWLEDGE = 13;
+    static final int FACTION = 14;
+    static final int RADIATION = 15;
+    static final int RAD_X = 16;
+
+    private CharacterCodec() {
+    }
+
+    /**
+     * Encodes a character.
+     *
+     * @param character The character
+     * @return The encoded character
+     */
+    public static byte[] encode(Character character) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try {
+            encode(character, new DataOutputStream(bytes));
+        } catch (IOException e) {
+            // Byte array streams do not throw
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Encodes a character to an output.
+     *
+     * @param character The character
+     * @param output    The output to write to
+     * @throws IOException If the output could not be written to
+     */
+    public static void encode(Character character, DataOutput output) throws IOException {
+        writeVarInt(output, VERSION);
+        character.save(new FieldWriter(output), EnumSet.allOf(Character.FieldGroup.class));
+        writeVarInt(output, END);
+    }
+
+    /**
+     * Encodes certain groups of a character's fields separately.<br>
+     * A group's fields that have no value, such as the faction of a character without one, are left out.
+     *
+     * @param character The character
+     * @param groups    The field groups to encode
+     * @return The encoded value of each field, mapped by the field's tag
+     */
+    public static Map<Integer, byte[]> encodeFields(Character character, Set<Character.FieldGroup> groups) {
+        FieldWriter writer = new FieldWriter(null);
+        try {
+            character.save(writer, groups);
+        } catch (IOException e) {
+            // Byte array streams do not throw
+            throw new IllegalStateException(e);
+        }
+        return writer.fields;
+    }
+
+    /**
+     * Decodes a character from separately encoded fields.
+     *
+     * @param fields The encoded value of each field, mapped by the field's tag
+     * @return The character
+     * @throws Exception If the fields do not represent a valid character
+     */
+    public static Character decodeFields(Map<Integer, byte[]> fields) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream output = new DataOutputStream(bytes);
+        writeVarInt(output, VERSION);
+        for (Map.Entry<Integer, byte[]> field : fields.entrySet()) {
+            writeVarInt(output, field.getKey());
+            writeVarInt(output, field.getValue().length);
+            output.write(field.getValue());
+        }
+        writeVarInt(output, END);
+        return decode(bytes.toByteArray());
+    }
+
+    /**
+     * Gets the tags of the fields in a field group.
+     *
+     * @param group The field group
+     * @return The tags of the group's fields
+     */
+    public static int[] getFieldTags(Character.FieldGroup group) {
+        switch (group) {
+            case PROFILE:
+                return new int[]{NAME, RACE, AGE, HEIGHT, WEIGHT, GENDER, ALIGNMENT};
+            case OWNER:
+                return new int[]{OWNER};
+            case SPECIAL:
+                return new int[]{SPECIAL};
+            case SKILLS:
+                return new int[]{SKILLS};
+            case PERKS:
+                return new int[]{PERKS};
+            case LEVEL:
+                return new int[]{LEVEL};
+            case KNOWLEDGE:
+                return new int[]{KNOWLEDGE};
+            case FACTION:
+                return new int[]{FACTION};
+            default:
+                return new int[]{RADIATION, RAD_X};
+        }
+    }
+
+    /**
+     * Decodes a character.
+     *
+     * @param data The encoded character
+     * @return The character
+     * @throws Exception If the data is not a valid encoded character
+     */
+    public static Character decode(byte[] data) throws Exception {
+        ByteArrayInputStream bytes = new ByteArrayInputStream(data);
+        return decode(new DataInputStream(bytes), bytes);
+    }
+
+    /**
+     * Decodes a character from an input.
+     *
+     * @param input The input to read from
+     * @return The character
+     * @throws Exception If the input does not contain a valid encoded character
+     */
+    public static Character decode(DataInput input) throws Exception {
+        return decode(input, null);
+    }
+
+    /**
+     * Decodes a character from an input.
+     *
+     * @param input  The input to read from
+     * @param source The bytes the input reads, used to reject fields longer than the rest of the input, may be {@code null}
+     * @return The character
+     * @throws Exception If the input does not contain a valid encoded character
+     */
+    private static Character decode(DataInput input, ByteArrayInputStream source) throws Exception {
+        int version = readVarInt(input);
+        if (version < 1) {
+            throw new Exception("Invalid character format version " + version);
+        }
+        return new Character(new FieldReader(input, source));
+    }
+
+    /**
+     * Writes an int using 1 to 5 bytes, with smaller non-negative values using fewer bytes.
+     *
+     * @param output The output to write to
+     * @param value  The value
+     * @throws IOException If the output could not be written to
+     */
+    public static void writeVarInt(DataOutput output, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            output.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    /**
+     * Reads an int written by {@link CharacterCodec#writeVarInt}.
+     *
+     * @param input The input to read from
+     * @return The value
+     * @throws IOException If the input could not be read or the value is too long
+     */
+    public static int readVarInt(DataInput input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = input.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Variable length int is too long");
+    }
+
+    /**
+     * Writes a long using 1 to 10 bytes, with smaller non-negative values using fewer bytes.
+     *
+     * @param output The output to write to
+     * @param value  The value
+     * @throws IOException If the output could not be written to
+     */
+    public static void writeVarLong(DataOutput output, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            output.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+
+    /**
+     * Reads a long written by {@link CharacterCodec#writeVarLong}.
+     *
+     * @param input The input to read from
+     * @return The value
+     * @throws IOException If the input could not be read or the value is too long
+     */
+    public static long readVarLong(DataInput input) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            byte b = input.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Variable length long is too long");
+    }
+
+    /**
+     * Writes the tagged fields of a character.<br>
+     * Each field is buffered so that its length can be written before it.
+     */
+    static class FieldWriter {
+
+        private final DataOutput output;
+        private final Map<Integer, byte[]> fields = new LinkedHashMap<>();
+        private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(32);
+        private final DataOutputStream field = new DataOutputStream(buffer);
+
+        /**
+         * Creates a new field writer.
+         *
+         * @param output The output to write the fields to, or {@code null} to collect the fields separately
+         */
+        private FieldWriter(DataOutput output) {
+            this.output = output;
+        }
+
+        /**
+         * Starts a new field.
+         *
+         * @return The output to write the field's value to
+         */
+        DataOutputStream begin() {
+            buffer.reset();
+            return field;
+        }
+
+        /**
+         * Writes the field started with {@link FieldWriter#begin}.
+         *
+         * @param tag The field's tag
+         * @throws IOException If the output could not be written to
+         */
+        void end(int tag) throws IOException {
+            if (output == null) {
+                fields.put(tag, buffer.toByteArray());
+                return;
+            }
+            writeVarInt(output, tag);
+            writeVarInt(output, buffer.size());
+            output.write(buffer.toByteArray());
+        }
+
+    }
+
+    /**
+     * Reads the tagged fields of a character.<br>
+     * Each field is read in full, so fields with unknown tags and values extended by newer versions are skipped.
+     */
+    static class FieldReader {
+
+        private final DataInput input;
+        private final ByteArrayInputStream source;
+        private DataInputStream field;
+
+        /**
+         * Creates a new field reader.
+         *
+         * @param input  The input to read the fields from
+         * @param source The bytes the input reads, may be {@code null}
+         */
+        private FieldReader(DataInput input, ByteArrayInputStream source) {
+            this.input = input;
+            this.source = source;
+        }
+
+        /**
+         * Reads the next field.
+         *
+         * @return The field's tag, or {@link CharacterCodec#END} if there are no more fields
+         * @throws IOException If the input could not be read or the field's length is invalid
+         */
+        int next() throws IOException {
+            int tag = readVarInt(input);
+            if (tag != END) {
+                int length = readVarInt(input);
+                if (length < 0 || length > MAX_FIELD_SIZE || (source != null && length > source.available())) {
+                    throw new IOException("Invalid length " + length + " of field " + tag);
+                }
+                byte[] value = new byte[length];
+                input.readFully(value);
+                field = new DataInputStream(new ByteArrayInputStream(value));
+            }
+            return tag;
+        }
+
+        /**
+         * Gets the input to read the current field's value from.
+         *
+         * @return The input
+         */
+        DataInputStream input() {
+            return field;
+        }
+
+    }
+
+}
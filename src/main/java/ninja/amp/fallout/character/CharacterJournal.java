@@ -0,0 +1,696 @@
+/*
+ * This file is part of Fallout.
+ *
+ * Copyright (c) 2013-2017 <http://github.com/ampayne2/Fallout//>
+ *
+ * Fallout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fallout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Fallout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ninja.amp.fallout.character;
+
+import ninja.amp.fallout.Fallout;
+import ninja.amp.fallout.character.storage.CharacterStore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+
+/**
+ * An append-only binary journal of character mutations, written between saves of the character store.<br>
+ * Each record holds the new value of the mutated field rather than the change, so replaying a record over
+ * a character store that already contains it has no effect. Records are appended as they happen and synced to disk
+ * together off the main thread, at most once per sync window, so the mutated characters are only written to the store
+ * once the journal grows past a size threshold and is compacted, or when the journal is closed.
+ * On startup any journal left over from a crash is replayed over the store.
+ *
+ * @author Austin Payne
+ */
+public class CharacterJournal {
+
+    private static final String EXTENSION = ".journal";
+    private static final byte SKILL_LEVELS = 1;
+    private static final byte PERKS = 2;
+    private static final byte KNOWLEDGE = 3;
+    private static final byte LEVEL = 4;
+    private static final byte RADIATION = 5;
+    private static final byte DELETE = 6;
+
+    private final Fallout plugin;
+    private final CharacterStore store;
+    private final File folder;
+    private final long compactSize;
+    private final long syncWindow;
+    private final Object compactLock = new Object();
+    private int segment = 0;
+    private FileOutputStream file;
+    private DataOutputStream output;
+    private Map<String, Character> journaled = new HashMap<>();
+    private Map<String, Character> compacting = new HashMap<>();
+    private boolean compactScheduled = false;
+    private boolean syncScheduled = false;
+    private int holds = 0;
+
+    /**
+     * Creates a new character journal.<br>
+     * Nothing is recorded until {@link CharacterJournal#replay()} has applied the journal left over from the last run.
+     *
+     * @param plugin The fallout plugin instance
+     * @param store  The character store the journal is replayed over and compacted into
+     */
+    public CharacterJournal(Fallout plugin, CharacterStore store) {
+        this.plugin = plugin;
+        this.store = store;
+        this.folder = new File(plugin.getDataFolder(), "journal");
+        this.compactSize = plugin.getSettings().getJournalCompactSize() * 1024L;
+        this.syncWindow = plugin.getSettings().getSaveSyncWindow();
+
+        if (!folder.exists() && !folder.mkdirs()) {
+            plugin.getLogger().severe("Could not create the journal folder " + folder);
+        }
+    }
+
+    /**
+     * Applies every journal segment to the characters in the store, writes the characters, deletes the segments
+     * and starts a new segment for recording.<br>
+     * If any character could not be written the segments are kept, and the character is held by the journal
+     * until a later compaction writes it.
+     */
+    public synchronized void replay() {
+        File[] segments = getSegments();
+        Map<String, Character> characters = new HashMap<>();
+        int records = 0;
+        for (File file : segments) {
+            records += replaySegment(file, characters);
+            segment = Math.max(segment, getSegmentNumber(file));
+        }
+
+        Set<Character> failed = Collections.emptySet();
+        if (!characters.isEmpty()) {
+            failed = write(characters.values());
+            plugin.getLogger().info("Replayed " + records + " journaled changes to " + characters.size() + " characters");
+        }
+        if (failed.isEmpty()) {
+            deleteSegments(segments);
+        } else {
+            for (Character character : failed) {
+                character.setJournal(this);
+                journaled.put(character.getCharacterName().toLowerCase(), character);
+            }
+            plugin.getLogger().warning("Could not write " + failed.size() + " replayed characters, the journal was kept");
+        }
+        openSegment();
+    }
+
+    /**
+     * Applies the records of a journal segment.<br>
+     * A record cut off by a crash ends the segment.
+     *
+     * @param file       The segment file
+     * @param characters The characters read so far, mapped by their lowercase names
+     * @return The amount of records applied
+     */
+    private int replaySegment(File file, Map<String, Character> characters) {
+        int records = 0;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                byte type;
+                try {
+                    type = input.readByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                String key = input.readUTF().toLowerCase();
+                if (type == DELETE) {
+                    characters.remove(key);
+                    readPayload(type, input, null);
+                    continue;
+                }
+
+                Character character = characters.get(key);
+                if (character == null && store.exists(key)) {
+                    try {
+                        character = store.load(key);
+                        characters.put(key, character);
+                    } catch (Exception e) {
+                        plugin.getMessenger().debug("Skipped journaled changes to character " + key + ". " + e.getMessage());
+                    }
+                }
+                readPayload(type, input, character);
+                records++;
+            }
+        } catch (EOFException e) {
+            plugin.getLogger().warning("Journal " + file.getName() + " ends with an incomplete change, it was ignored");
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not read journal " + file.getName() + ", the rest of it was ignored", e);
+        }
+        return records;
+    }
+
+    /**
+     * Reads the payload of a record and applies it to a character.
+     *
+     * @param type      The record type
+     * @param input     The input to read from
+     * @param character The character to apply the record to, or {@code null} to only read the record
+     * @throws IOException If the record could not be read
+     */
+    private void readPayload(byte type, DataInputStream input, Character character) throws IOException {
+        switch (type) {
+            case SKILL_LEVELS:
+                long skillLevels = input.readLong();
+                if (character != null) {
+                    character.setSkillLevels(skillLevels);
+                }
+                break;
+            case PERKS:
+                List<Perk> perks = new ArrayList<>();
+                for (int i = input.readShort(); i > 0; i--) {
+                    try {
+                        perks.add(Perk.valueOf(input.readUTF()));
+                    } catch (IllegalArgumentException ignored) {
+                        // Perk no longer exists
+                    }
+                }
+                if (character != null) {
+                    character.restorePerks(perks);
+                }
+                break;
+            case KNOWLEDGE:
+                List<String> knowledge = new ArrayList<>();
+                for (int i = input.readShort(); i > 0; i--) {
+                    knowledge.add(input.readUTF());
+                }
+                if (character != null) {
+                    character.restoreKnowledge(knowledge);
+                }
+                break;
+            case LEVEL:
+                int level = input.readInt();
+                if (character != null) {
+                    character.restoreLevel(level);
+                }
+                break;
+            case RADIATION:
+                int radiation = input.readInt();
+                if (character != null) {
+                    character.restoreRadiation(radiation);
+                }
+                break;
+            case DELETE:
+                break;
+            default:
+                throw new IOException("Unknown journal record type " + type);
+        }
+    }
+
+    /**
+     * Records a character's new skill levels.
+     *
+     * @param character The character
+     * @param levels    The character's packed skill levels
+     */
+    public synchronized void recordSkillLevels(Character character, long levels) {
+        if (begin(character, SKILL_LEVELS)) {
+            try {
+                output.writeLong(levels);
+                end();
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * Records a character's new perks.
+     *
+     * @param character The character
+     * @param perks     The character's perks
+     */
+    public synchronized void recordPerks(Character character, Collection<Perk> perks) {
+        if (begin(character, PERKS)) {
+            try {
+                output.writeShort(perks.size());
+                for (Perk perk : perks) {
+                    output.writeUTF(perk.name());
+                }
+                end();
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * Records a character's new knowledge.
+     *
+     * @param character The character
+     * @param knowledge The pieces of information the character knows
+     */
+    public synchronized void recordKnowledge(Character character, Collection<String> knowledge) {
+        if (begin(character, KNOWLEDGE)) {
+            try {
+                output.writeShort(knowledge.size());
+                for (String information : knowledge) {
+                    output.writeUTF(information);
+                }
+                end();
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * Records a character's new level.
+     *
+     * @param character The character
+     * @param level     The character's new level
+     */
+    public synchronized void recordLevel(Character character, int level) {
+        if (begin(character, LEVEL)) {
+            try {
+                output.writeInt(level);
+                end();
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * Records a character's new radiation level.
+     *
+     * @param character The character
+     * @param radiation The character's new radiation level
+     */
+    public synchronized void recordRadiation(Character character, int radiation) {
+        if (begin(character, RADIATION)) {
+            try {
+                output.writeInt(radiation);
+                end();
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * Records that a character was deleted or replaced, so that earlier records are not applied to a new character of the same name.
+     *
+     * @param characterName The character's name
+     */
+    public synchronized void recordDelete(String characterName) {
+        journaled.remove(characterName.toLowerCase());
+        compacting.remove(characterName.toLowerCase());
+        if (output != null) {
+            try {
+                output.writeByte(DELETE);
+                output.writeUTF(characterName);
+                end();
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * Starts a record, holding the character until compaction writes the change to the store.<br>
+     * The character is held even if journaling is disabled, so the change is still written when the journal is closed.
+     *
+     * @param character The mutated character
+     * @param type      The record type
+     * @return {@code true} if the record was started
+     */
+    private boolean begin(Character character, byte type) {
+        journaled.put(character.getCharacterName().toLowerCase(), character);
+        if (output == null) {
+            return false;
+        }
+        try {
+            output.writeByte(type);
+            output.writeUTF(character.getCharacterName());
+            return true;
+        } catch (IOException e) {
+            fail(e);
+            return false;
+        }
+    }
+
+    /**
+     * Finishes a record, appending it to the segment and scheduling a sync, and starts a compaction if the segment is too large.
+     *
+     * @throws IOException If the record could not be written
+     */
+    private void end() throws IOException {
+        output.flush();
+        if (!syncScheduled && plugin.isEnabled()) {
+            syncScheduled = true;
+            plugin.getServer().getScheduler().runTaskLaterAsynchronously(plugin, this::sync, syncWindow);
+        }
+        scheduleCompaction();
+    }
+
+    /**
+     * Starts a compaction off the main thread if the current segment is too large and compactions are not held.
+     */
+    private void scheduleCompaction() {
+        if (output != null && output.size() >= compactSize && !compactScheduled && holds == 0 && plugin.isEnabled()) {
+            compactScheduled = true;
+            plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> compact(false));
+        }
+    }
+
+    /**
+     * Holds journaled characters instead of compacting them into the store until {@link CharacterJournal#release()}
+     * is called, so the character store stays unchanged. A compaction that has already started still finishes,
+     * its characters are returned by {@link CharacterJournal#getJournaledCharacters()} until it does.
+     */
+    public synchronized void hold() {
+        holds++;
+    }
+
+    /**
+     * Allows compactions held by {@link CharacterJournal#hold()} to run again.
+     */
+    public synchronized void release() {
+        holds--;
+        scheduleCompaction();
+    }
+
+    /**
+     * Syncs every record appended to the current segment since the last sync to disk.<br>
+     * Runs off the main thread, so recording a mutation never waits for the disk.
+     */
+    private void sync() {
+        FileChannel channel;
+        synchronized (this) {
+            syncScheduled = false;
+            if (file == null) {
+                return;
+            }
+            channel = file.getChannel();
+        }
+        try {
+            channel.force(true);
+        } catch (ClosedChannelException e) {
+            // The segment was replaced by a compaction, which syncs it itself
+        } catch (IOException e) {
+            synchronized (this) {
+                if (file != null && file.getChannel() == channel) {
+                    fail(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Stops recording after a write failure. Mutated characters are still held and written when the journal is closed.
+     *
+     * @param e The cause of the failure
+     */
+    private void fail(IOException e) {
+        plugin.getLogger().log(Level.SEVERE, "Could not write to the character journal, journaling is disabled until restart", e);
+        closeOutput();
+    }
+
+    /**
+     * Folds the journal into the character store.<br>
+     * A new segment is started, every journaled character is written to the store, and the old segments are deleted.
+     * If any character could not be written the old segments are kept and the character is written by the next compaction.
+     * Runs on the calling thread, compactions started by a full segment run off the main thread.
+     *
+     * @param force If the journal should be compacted even while compactions are held
+     */
+    private void compact(boolean force) {
+        synchronized (compactLock) {
+            File[] segments;
+            FileOutputStream previous = null;
+            synchronized (this) {
+                if (holds > 0 && !force) {
+                    compactScheduled = false;
+                    return;
+                }
+                segments = getSegments();
+                compacting = journaled;
+                journaled = new HashMap<>();
+                if (output != null) {
+                    previous = detachOutput();
+                    openSegment();
+                }
+            }
+
+            // The old segments are kept if the write fails, so they must have reached the disk
+            if (previous != null) {
+                syncAndClose(previous);
+            }
+
+            // Holding the store orders the write with the save queue, so a character deleted before it is written is skipped
+            Set<Character> failed;
+            synchronized (store) {
+                List<Character> characters;
+                synchronized (this) {
+                    characters = new ArrayList<>(compacting.values());
+                }
+                failed = write(characters);
+            }
+
+            synchronized (this) {
+                compactScheduled = false;
+                if (failed.isEmpty()) {
+                    deleteSegments(segments);
+                    plugin.getMessenger().debug("Compacted " + segments.length + " journal segments into the character store");
+                } else {
+                    // Characters deleted since are dropped, and characters journaled again since are already held
+                    for (Character character : failed) {
+                        String key = character.getCharacterName().toLowerCase();
+                        if (compacting.get(key) == character) {
+                            journaled.putIfAbsent(key, character);
+                        }
+                    }
+                    plugin.getLogger().warning("Could not write " + failed.size() + " journaled characters, the journal was kept");
+                }
+                compacting = new HashMap<>();
+            }
+        }
+    }
+
+    /**
+     * Writes characters to the store and waits for the written files to reach the disk.
+     *
+     * @param characters The characters to write
+     * @return The characters that could not be written, every character if the store's files could not be written
+     */
+    private Set<Character> write(Collection<Character> characters) {
+        Set<Character> failed = new HashSet<>(store.save(characters));
+        if (!plugin.getConfigManager().getFileWriter().flush()) {
+            failed.addAll(characters);
+        }
+        return failed;
+    }
+
+    /**
+     * Gets a character whose journaled changes have not been written to the store yet.
+     *
+     * @param characterName The character's name
+     * @return The journaled character, or {@code null} if the character has no unwritten journaled changes
+     */
+    public synchronized Character getJournaled(String characterName) {
+        String key = characterName.toLowerCase();
+        Character character = journaled.get(key);
+        return character == null ? compacting.get(key) : character;
+    }
+
+    /**
+     * Gets every character whose journaled changes have not been written to the store yet.
+     *
+     * @return The journaled characters, mapped by their lowercase names
+     */
+    public synchronized Map<String, Character> getJournaledCharacters() {
+        Map<String, Character> characters = new HashMap<>(compacting);
+        characters.putAll(journaled);
+        return characters;
+    }
+
+    /**
+     * Discards the journal before every character in the store is replaced.<br>
+     * A new segment is started and the old segments are deleted without writing the journaled characters.
+     */
+    public void discard() {
+        // A running compaction would write the old characters over the replaced ones
+        synchronized (compactLock) {
+            synchronized (this) {
+                File[] segments = getSegments();
+                journaled.clear();
+                if (output != null) {
+                    closeOutput();
+                    openSegment();
+                }
+                deleteSegments(segments);
+            }
+        }
+    }
+
+    /**
+     * Writes every journaled character to the store and stops recording.<br>
+     * Any segment that could not be compacted is kept so it can be replayed on the next startup.
+     */
+    public void close() {
+        compact(true);
+        FileOutputStream last;
+        synchronized (this) {
+            last = detachOutput();
+        }
+        if (last != null) {
+            syncAndClose(last);
+        }
+    }
+
+    /**
+     * Opens the next segment for recording.
+     */
+    private void openSegment() {
+        segment++;
+        File segmentFile = new File(folder, segment + EXTENSION);
+        try {
+            file = new FileOutputStream(segmentFile, true);
+            output = new DataOutputStream(new BufferedOutputStream(file));
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not open journal " + segmentFile + ", journaling is disabled until restart", e);
+            file = null;
+            output = null;
+        }
+    }
+
+    /**
+     * Stops recording to the current segment without closing it, so it can be synced and closed without holding the journal.
+     *
+     * @return The segment's file stream, or {@code null} if no segment was open
+     */
+    private FileOutputStream detachOutput() {
+        FileOutputStream detached = file;
+        if (output != null) {
+            try {
+                output.flush();
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Could not write to the character journal", e);
+            }
+        }
+        file = null;
+        output = null;
+        return detached;
+    }
+
+    /**
+     * Syncs a detached segment to disk and closes it.
+     *
+     * @param segmentFile The segment's file stream
+     */
+    private void syncAndClose(FileOutputStream segmentFile) {
+        try {
+            segmentFile.getChannel().force(true);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not sync the character journal", e);
+        }
+        try {
+            segmentFile.close();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not close the character journal", e);
+        }
+    }
+
+    /**
+     * Closes the current segment without syncing it.
+     */
+    private void closeOutput() {
+        if (output != null) {
+            try {
+                output.close();
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "Could not close the character journal", e);
+            }
+            file = null;
+            output = null;
+        }
+    }
+
+    /**
+     * Gets the journal segments in the order they were written.
+     *
+     * @return The segment files
+     */
+    private File[] getSegments() {
+        File[] files = folder.listFiles((dir, name) -> name.endsWith(EXTENSION) && getSegmentNumber(name) > 0);
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files, Comparator.comparingInt(this::getSegmentNumber));
+        return files;
+    }
+
+    /**
+     * Deletes journal segments.
+     *
+     * @param segments The segment files
+     */
+    private void deleteSegments(File[] segments) {
+        for (File file : segments) {
+            if (!file.delete()) {
+                plugin.getLogger().warning("Could not delete journal " + file);
+            }
+        }
+    }
+
+    /**
+     * Gets the number of a segment file.
+     *
+     * @param file The segment file
+     * @return The segment number
+     */
+    private int getSegmentNumber(File file) {
+        return getSegmentNumber(file.getName());
+    }
+
+    /**
+     * Gets the number of a segment from its file name.
+     *
+     * @param name The segment file name
+     * @return The segment number, or 0 if the name is not a segment
+     */
+    private int getSegmentNumber(String name) {
+        try {
+            return Integer.parseInt(name.substring(0, name.length() - EXTENSION.length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+}
@@ -19,34 +19,69 @@
 package ninja.amp.fallout.character;
 
 import ninja.amp.fallout.Fallout;
-import ninja.amp.fallout.config.ConfigAccessor;
-import ninja.amp.fallout.config.ConfigManager;
-import ninja.amp.fallout.config.FOConfig;
+import ninja.amp.fallout.character.storage.CharacterStore;
+import ninja.amp.fallout.character.storage.ShardedCharacterStore;
+import ninja.amp.fallout.character.storage.SqlCharacterStore;
+import ninja.amp.fallout.character.storage.YamlCharacterStore;
+import ninja.amp.fallout.config.FOSettings;
 import ninja.amp.fallout.message.FOMessage;
 import ninja.amp.fallout.message.Messenger;
+import ninja.amp.fallout.util.ArmorMaterial;
+import ninja.amp.fallout.util.ArmorType;
 import ninja.amp.fallout.util.FOUtils;
-import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.Material;
 import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
 
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
 import java.util.UUID;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
 
 /**
- * Manages all of the fallout characters.
+ * Manages all of the fallout characters.<br>
+ * Lookups read concurrent maps without locking. Creating, deleting, possessing and abandoning a character is
+ * serialized per character name with striped locks, and operations on every character at once exclude them all.
  *
  * @author Austin Payne
  */
 public class CharacterManager {
 
+    private static final int READ_BATCH_SIZE = 100;
+    private static final int LOCK_STRIPES = 64;
+
     private Fallout plugin;
-    private Map<UUID, Character> charactersByOwner = new HashMap<>();
-    private Map<String, Character> charactersByName = new HashMap<>();
-    private Map<UUID, Character.CharacterBuilder> characterBuilders = new HashMap<>();
+    private final Map<UUID, Character> charactersByOwner = new ConcurrentHashMap<>();
+    private final Map<String, Character> charactersByName = new ConcurrentHashMap<>();
+    private final Map<UUID, Character.CharacterBuilder> characterBuilders = new ConcurrentHashMap<>();
+    private final Object[] characterLocks = new Object[LOCK_STRIPES];
+    private final ReadWriteLock bulkLock = new ReentrantReadWriteLock();
+    private CharacterStore store;
+    private CharacterSaveQueue saveQueue;
+    private CharacterJournal journal;
+    private OfflineCharacterCache offlineCache;
+    private final Map<UUID, PreloadedCharacter> preloadedCharacters = new ConcurrentHashMap<>();
+    private final Map<UUID, String> characterNamesByOwner = new ConcurrentHashMap<>();
+    private final Map<String, UUID> ownersByCharacterName = new ConcurrentHashMap<>();
+    private final NavigableSet<String> characterNames = new ConcurrentSkipListSet<>(String.CASE_INSENSITIVE_ORDER);
 
     /**
      * Creates a new character manager.<br>
@@ -56,53 +91,263 @@ public class CharacterManager {
      */
     public CharacterManager(Fallout plugin) {
         this.plugin = plugin;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            characterLocks[i] = new Object();
+        }
 
-        FileConfiguration config = plugin.getConfig();
+        FOSettings settings = plugin.getSettings();
 
         // Load character name requirement REGEX
-        FOUtils.setNamePattern(config.isString("NameRequirement") ? Pattern.compile(config.getString("NameRequirement")) : null);
+        FOUtils.setNamePattern(settings.getNameRequirement());
+
+        // Open the configured character store, moving over any characters left in the character config
+        store = createStore(settings.getCharacterStorage());
+        if (!(store instanceof YamlCharacterStore)) {
+            YamlCharacterStore.migrate(plugin, store);
+        }
+
+        // Index every character name and owner so lookups never read the store
+        for (Map.Entry<UUID, String> owner : store.getOwners().entrySet()) {
+            indexOwner(owner.getKey(), owner.getValue());
+            characterNames.add(owner.getValue());
+        }
+        characterNames.addAll(store.getCharacterNames());
+        plugin.getMessenger().debug("Indexed " + characterNames.size() + " characters and " + characterNamesByOwner.size() + " owners");
+
+        // Character saves are written in batches off the main thread
+        saveQueue = new CharacterSaveQueue(plugin, store);
+
+        // Mutations between saves are journaled, apply any left over from the last run
+        journal = new CharacterJournal(plugin, store);
+        journal.replay();
+
+        // Recently read offline characters are kept to avoid reading them again
+        offlineCache = new OfflineCharacterCache(settings.getOfflineCacheSize(), settings.getOfflineCacheExpiry() * 1000L);
 
         // Players may already be online in case of reload
-        for (Player player : plugin.getServer().getOnlinePlayers()) {
-            loadCharacter(player);
+        loadCharacters(plugin.getServer().getOnlinePlayers());
+    }
+
+    /**
+     * Creates the character store of a certain type.
+     *
+     * @param type The type of store, either single, sharded or sqlite
+     * @return The character store
+     */
+    private CharacterStore createStore(String type) {
+        switch (type.toLowerCase()) {
+            case "sharded":
+                return new ShardedCharacterStore(plugin);
+            case "sqlite":
+                try {
+                    return new SqlCharacterStore(plugin);
+                } catch (SQLException e) {
+                    plugin.getLogger().log(Level.SEVERE, "Could not open the character database, falling back to characters.yml", e);
+                    return new YamlCharacterStore(plugin);
+                }
+            default:
+                return new YamlCharacterStore(plugin);
+        }
+    }
+
+    /**
+     * Runs an action on a single character, serialized with every other such action on a character of the same name.<br>
+     * Actions on characters whose names fall in different lock stripes run in parallel.
+     *
+     * @param characterName The character's name
+     * @param action        The action
+     * @param <T>           The type of the action's result
+     * @return The action's result
+     */
+    private <T> T withCharacterLock(String characterName, Supplier<T> action) {
+        Lock shared = bulkLock.readLock();
+        shared.lock();
+        try {
+            synchronized (characterLocks[(characterName.toLowerCase().hashCode() & 0x7FFFFFFF) % LOCK_STRIPES]) {
+                return action.get();
+            }
+        } finally {
+            shared.unlock();
+        }
+    }
+
+    /**
+     * Runs an action on every character, excluding all actions run with {@link CharacterManager#withCharacterLock}.
+     *
+     * @param action The action
+     * @param <T>    The type of the action's result
+     * @return The action's result
+     */
+    private <T> T withBulkLock(Supplier<T> action) {
+        Lock exclusive = bulkLock.writeLock();
+        exclusive.lock();
+        try {
+            return action.get();
+        } finally {
+            exclusive.unlock();
+        }
+    }
+
+    /**
+     * Reads a player's character before the player joins.<br>
+     * The result is held until the player joins, when {@link CharacterManager#loadCharacter} attaches it
+     * without touching the character store. Safe to call from outside the main thread.
+     *
+     * @param ownerId The UUID of the joining player
+     */
+    public void preloadCharacter(UUID ownerId) {
+        // Forget characters of players who never finished joining
+        preloadedCharacters.values().removeIf(PreloadedCharacter::isExpired);
+
+        preloadedCharacters.put(ownerId, readOwnedCharacter(ownerId));
+    }
+
+    /**
+     * Reads the character owned by a player, capturing any failure so it can be reported later.
+     *
+     * @param ownerId The owner's UUID
+     * @return The result of reading the character
+     */
+    private PreloadedCharacter readOwnedCharacter(UUID ownerId) {
+        // Find name of player's character
+        String characterName = getOwnedCharacterName(ownerId);
+        if (characterName == null) {
+            return new PreloadedCharacter(null, null, null);
+        }
+        try {
+            return new PreloadedCharacter(characterName, readCharacter(characterName), null);
+        } catch (Exception e) {
+            return new PreloadedCharacter(characterName, null, e.getMessage());
         }
     }
 
     /**
-     * Loads a player's character if currently owning one.
+     * Forgets the character preloaded for a player, after the player's character changed.
+     *
+     * @param ownerId The player's UUID, may be {@code null}
+     */
+    private void forgetPreload(UUID ownerId) {
+        if (ownerId != null) {
+            preloadedCharacters.remove(ownerId);
+        }
+    }
+
+    /**
+     * Loads a player's character if currently owning one.<br>
+     * If the character was preloaded with {@link CharacterManager#preloadCharacter} it is attached without being read again.
      *
      * @param owner The player whose character to load
      * @return The player's character
      */
-    public synchronized Character loadCharacter(Player owner) {
-        Messenger messenger = plugin.getMessenger();
-        ConfigManager configManager = plugin.getConfigManager();
+    public Character loadCharacter(Player owner) {
+        PreloadedCharacter preloaded = preloadedCharacters.remove(owner.getUniqueId());
+        if (preloaded == null || preloaded.isExpired()) {
+            preloaded = readOwnedCharacter(owner.getUniqueId());
+        }
+        return attachCharacter(owner, preloaded);
+    }
 
-        UUID ownerId = owner.getUniqueId();
-        FileConfiguration playerConfig = configManager.getConfig(FOConfig.PLAYER);
-        if (playerConfig.contains(ownerId.toString())) {
-            // Find name of player's character
-            String characterName = playerConfig.getString(ownerId.toString());
+    /**
+     * Loads the characters of a group of players at once.<br>
+     * The character store is read in one pass and the characters are decoded in parallel,
+     * then every character is attached to its owner on the calling thread.
+     *
+     * @param owners The players whose characters to load
+     */
+    public void loadCharacters(Collection<? extends Player> owners) {
+        long start = System.nanoTime();
 
-            // Load character from character config
-            FileConfiguration characterConfig = configManager.getConfig(FOConfig.CHARACTER);
+        // Characters with pending or journaled changes or in the offline cache do not need to be read
+        Map<UUID, PreloadedCharacter> loaded = new HashMap<>();
+        Map<String, UUID> unread = new HashMap<>();
+        for (Player owner : owners) {
+            String characterName = getOwnedCharacterName(owner.getUniqueId());
+            if (characterName == null) {
+                continue;
+            }
+            Character character = getUnwritten(characterName);
+            if (character == null) {
+                character = offlineCache.get(characterName);
+            }
+            if (character != null) {
+                loaded.put(owner.getUniqueId(), new PreloadedCharacter(characterName, character, null));
+            } else {
+                unread.put(characterName.toLowerCase(), owner.getUniqueId());
+            }
+        }
 
-            Character character;
+        Map<String, Callable<Character>> decoders = store.read(unread.keySet());
+        Map<String, PreloadedCharacter> decoded = new ConcurrentHashMap<>();
+        ForkJoinPool.commonPool().invoke(ForkJoinTask.adapt(() -> decoders.entrySet().parallelStream().forEach(decoder -> {
             try {
-                character = new Character(characterConfig.getConfigurationSection(characterName.toLowerCase()));
-                character.updateRadiationResistance();
+                Character character = decoder.getValue().call();
+                character.setJournal(journal);
+                decoded.put(decoder.getKey(), new PreloadedCharacter(character.getCharacterName(), character, null));
             } catch (Exception e) {
-                messenger.sendErrorMessage(owner, FOMessage.ERROR_CHARACTERLOAD, characterName, e.getMessage());
-                messenger.debug("Failed to load character " + characterName + ". " + e.getMessage());
+                decoded.put(decoder.getKey(), new PreloadedCharacter(decoder.getKey(), null, e.getMessage()));
+            }
+        })));
+        for (Map.Entry<String, UUID> character : unread.entrySet()) {
+            PreloadedCharacter result = decoded.get(character.getKey());
+            loaded.put(character.getValue(), result == null ? new PreloadedCharacter(character.getKey(), null, "Character does not exist") : result);
+        }
+
+        for (Player owner : owners) {
+            PreloadedCharacter preloaded = loaded.get(owner.getUniqueId());
+            attachCharacter(owner, preloaded == null ? new PreloadedCharacter(null, null, null) : preloaded);
+        }
+        plugin.getMessenger().debug("Loaded " + loaded.size() + " characters in " + (System.nanoTime() - start) / 1000000 + "ms");
+    }
+
+    /**
+     * Attaches a read character to its owner, reporting any failure to read it.
+     *
+     * @param owner     The player who owns the character
+     * @param preloaded The result of reading the character
+     * @return The player's character, or {@code null} if the player does not own a character or it could not be read
+     */
+    private Character attachCharacter(Player owner, PreloadedCharacter preloaded) {
+        Messenger messenger = plugin.getMessenger();
+
+        String characterName = preloaded.characterName;
+        if (characterName != null) {
+            if (preloaded.error != null) {
+                messenger.sendErrorMessage(owner, FOMessage.ERROR_CHARACTERLOAD, characterName, preloaded.error);
+                messenger.debug("Failed to load character " + characterName + ". " + preloaded.error);
                 return null;
             }
-            messenger.debug("Loaded character " + characterName);
 
-            // Save loaded character to update any information
-            saveCharacter(character);
+            return withCharacterLock(characterName, () -> {
+                // The character may have been deleted, abandoned or possessed by another player since it was preloaded
+                if (!characterName.equalsIgnoreCase(getOwnedCharacterName(owner.getUniqueId()))) {
+                    messenger.debug("Dropped preloaded character " + characterName + " of player " + owner.getName() + ", it is no longer theirs");
+                    return null;
+                }
 
-            // Add character to manager
-            return addToManager(character);
+                // The character may have been changed and saved again since it was preloaded
+                Character character = getUnwritten(characterName);
+                if (character == null) {
+                    character = preloaded.character;
+                }
+
+                // The owner may have changed their name since the character was saved
+                boolean changed = character.isNormalized();
+                if (!owner.getName().equals(character.getOwnerName())) {
+                    character.possess(owner);
+                    changed = true;
+                }
+                removeForbiddenArmor(owner, character);
+                character.updateArmor(owner);
+                messenger.debug("Loaded character " + characterName);
+
+                // Only save the loaded character if it differs from its saved copy
+                if (changed) {
+                    saveCharacter(character);
+                }
+
+                // Add character to manager
+                return addToManager(character);
+            });
         }
 
         return null;
@@ -114,13 +359,12 @@ public class CharacterManager {
      * @param characterName The character's name
      * @return The offline character, or {@code} null if character doesn't exist
      */
-    public synchronized Character loadOfflineCharacter(String characterName) {
+    public Character loadOfflineCharacter(String characterName) {
         Messenger messenger = plugin.getMessenger();
 
-        FileConfiguration characterConfig = plugin.getConfigManager().getConfig(FOConfig.CHARACTER);
-        if (characterConfig.contains(characterName.toLowerCase())) {
+        if (isCharacter(characterName)) {
             try {
-                Character character = new Character(characterConfig.getConfigurationSection(characterName.toLowerCase()));
+                Character character = readCharacter(characterName);
                 messenger.debug("Loaded offline character " + characterName);
                 return character;
             } catch (Exception e) {
@@ -135,28 +379,118 @@ public class CharacterManager {
      *
      * @param owner The player whose character to unload
      */
-    public synchronized void unloadCharacter(Player owner) {
+    public void unloadCharacter(Player owner) {
         UUID ownerId = owner.getUniqueId();
-        if (isOwner(ownerId)) {
-            removeFromManager(charactersByOwner.get(ownerId));
+        Character character = charactersByOwner.get(ownerId);
+        if (character != null) {
+            withCharacterLock(character.getCharacterName(), () -> {
+                // The character may have been abandoned or deleted while waiting for the lock
+                if (charactersByOwner.get(ownerId) == character) {
+                    removeFromManager(character);
+                }
+                return null;
+            });
         }
-        if (characterBuilders.containsKey(ownerId)) {
-            characterBuilders.remove(ownerId);
+        if (characterBuilders.remove(ownerId) != null) {
             plugin.getMessenger().debug("Removed character builder for player " + owner.getName());
         }
     }
 
     /**
-     * Saves a character to the character config.<br>
-     * The character is saved to the path of the character's name in lowercase.
+     * Reads a character from the save queue or journal if it has changes not yet written to the character store,
+     * otherwise from the offline cache or character store.
+     *
+     * @param characterName The character's name
+     * @return The character
+     * @throws Exception If the character is missing or formatted incorrectly
+     */
+    private Character readCharacter(String characterName) throws Exception {
+        Character unwritten = getUnwritten(characterName);
+        if (unwritten != null) {
+            return unwritten;
+        }
+        if (saveQueue.isPendingDeletion(characterName)) {
+            throw new Exception("Character was deleted");
+        }
+        Character cached = offlineCache.get(characterName);
+        if (cached != null) {
+            return cached;
+        }
+        Character character = store.load(characterName);
+        character.setJournal(journal);
+        offlineCache.put(character);
+        return character;
+    }
+
+    /**
+     * Gets a character whose latest changes have not been written to the character store yet.
+     *
+     * @param characterName The character's name
+     * @return The character with a pending save or journaled changes, or {@code null} if the store is up to date
+     */
+    private Character getUnwritten(String characterName) {
+        Character pending = saveQueue.getPending(characterName);
+        return pending == null ? journal.getJournaled(characterName) : pending;
+    }
+
+    /**
+     * Finds the name of the character owned by a player.
+     *
+     * @param ownerId The owner's UUID
+     * @return The character's name, or {@code null} if the player does not own a character
+     */
+    private String getOwnedCharacterName(UUID ownerId) {
+        return characterNamesByOwner.get(ownerId);
+    }
+
+    /**
+     * Adds a character's owner to the owner index.
+     *
+     * @param ownerId       The owner's UUID
+     * @param characterName The character's name
+     */
+    private void indexOwner(UUID ownerId, String characterName) {
+        characterNamesByOwner.put(ownerId, characterName);
+        ownersByCharacterName.put(characterName.toLowerCase(), ownerId);
+    }
+
+    /**
+     * Removes a character's owner from the owner index.
+     *
+     * @param characterName The character's name
+     */
+    private void unindexOwner(String characterName) {
+        UUID ownerId = ownersByCharacterName.remove(characterName.toLowerCase());
+        if (ownerId != null) {
+            characterNamesByOwner.remove(ownerId);
+        }
+    }
+
+    /**
+     * Saves a character to the character store.<br>
+     * The character is saved to the path of the character's name in lowercase.<br>
+     * The save is queued and written in a batch off the main thread.
      *
      * @param character The character to save
      */
-    public synchronized void saveCharacter(Character character) {
-        ConfigAccessor characterConfig = plugin.getConfigManager().getConfigAccessor(FOConfig.CHARACTER);
-        character.save(characterConfig.getConfig().getConfigurationSection(character.getCharacterName().toLowerCase()));
-        characterConfig.saveConfig();
-        plugin.getMessenger().debug("Saved character " + character.getCharacterName());
+    public void saveCharacter(Character character) {
+        saveQueue.markDirty(character);
+        plugin.getMessenger().debug("Queued save of character " + character.getCharacterName());
+    }
+
+    /**
+     * Writes all queued character saves and stops the save queue.<br>
+     * Must be called when the plugin is disabled.
+     */
+    public void close() {
+        withBulkLock(() -> {
+            saveQueue.drain();
+            journal.close();
+            store.close();
+            return null;
+        });
+        plugin.getMessenger().debug("Wrote all queued character saves");
+        plugin.getMessenger().debug("Offline character cache: " + offlineCache);
     }
 
     /**
@@ -164,7 +498,9 @@ public class CharacterManager {
      *
      * @param character The character to add to the manager
      */
-    private synchronized Character addToManager(Character character) {
+    private Character addToManager(Character character) {
+        // Characters with online owners are never served from the offline cache
+        offlineCache.invalidate(character.getCharacterName());
         charactersByOwner.put(character.getOwnerId(), character);
         charactersByName.put(character.getCharacterName().toLowerCase(), character);
         plugin.getMessenger().debug("Added character " + character.getCharacterName() + " to character manager");
@@ -176,9 +512,9 @@ public class CharacterManager {
      *
      * @param character The character to remove from the manager
      */
-    private synchronized void removeFromManager(Character character) {
-        charactersByOwner.remove(character.getOwnerId());
-        charactersByName.remove(character.getCharacterName().toLowerCase());
+    private void removeFromManager(Character character) {
+        charactersByOwner.remove(character.getOwnerId(), character);
+        charactersByName.remove(character.getCharacterName().toLowerCase(), character);
         plugin.getMessenger().debug("Removed character " + character.getCharacterName() + " from character manager");
     }
 
@@ -190,32 +526,28 @@ public class CharacterManager {
      * @param owner The character's owner
      * @return The character created
      */
-    public synchronized Character createCharacter(Player owner) {
-        ConfigManager configManager = plugin.getConfigManager();
-
+    public Character createCharacter(Player owner) {
         // Create character from character builder and add to manager
         UUID ownerId = owner.getUniqueId();
-        Character character = characterBuilders.get(ownerId).build();
-        character.updateRadiationResistance();
-        characterBuilders.remove(ownerId);
-        plugin.getMessenger().debug("Created character " + character.getCharacterName());
-
-        // Add owning player to players config
-        ConfigAccessor playerConfig = configManager.getConfigAccessor(FOConfig.PLAYER);
-        playerConfig.getConfig().set(ownerId.toString(), character.getCharacterName());
-        playerConfig.saveConfig();
+        Character character = characterBuilders.remove(ownerId).build();
+        character.setJournal(journal);
+        removeForbiddenArmor(owner, character);
+        character.updateArmor(owner);
+        withCharacterLock(character.getCharacterName(), () -> {
+            plugin.getMessenger().debug("Created character " + character.getCharacterName());
 
-        // Add character to character config
-        ConfigAccessor characterConfig = configManager.getConfigAccessor(FOConfig.CHARACTER);
-        characterConfig.getConfig().createSection(character.getCharacterName().toLowerCase());
-        characterConfig.saveConfig();
-        saveCharacter(character);
+            // Add character and owning player to character store
+            forgetPreload(ownerId);
+            characterNames.add(character.getCharacterName());
+            indexOwner(ownerId, character.getCharacterName());
+            saveCharacter(character);
 
-        // Add character to manager
-        addToManager(character);
+            // Add character to manager
+            return addToManager(character);
+        });
 
         // Nickname player
-        if (plugin.getConfig().getBoolean("NicknamePlayers", true)) {
+        if (plugin.getSettings().isNicknamePlayers()) {
             plugin.getServer().dispatchCommand(plugin.getServer().getConsoleSender(), "nick " + owner.getName() + " " + character.getCharacterName());
         }
 
@@ -227,25 +559,33 @@ public class CharacterManager {
      *
      * @param character The character to delete
      */
-    public synchronized void deleteCharacter(Character character) {
-        // Remove character from manager
-        removeFromManager(character);
-
-        ConfigManager configManager = plugin.getConfigManager();
+    public void deleteCharacter(Character character) {
+        boolean deleted = withCharacterLock(character.getCharacterName(), () -> {
+            // The character may already have been deleted while waiting for the lock
+            if (!characterNames.contains(character.getCharacterName())) {
+                return false;
+            }
 
-        // Remove character from character config
-        ConfigAccessor characterConfig = configManager.getConfigAccessor(FOConfig.CHARACTER);
-        characterConfig.getConfig().set(character.getCharacterName().toLowerCase(), null);
-        characterConfig.saveConfig();
-        plugin.getMessenger().debug("Deleted character " + character.getCharacterName());
+            // Remove character from manager
+            removeFromManager(character);
+            forgetPreload(character.getOwnerId());
 
-        // Remove owning player from players config
-        ConfigAccessor playerConfig = configManager.getConfigAccessor(FOConfig.PLAYER);
-        playerConfig.getConfig().set(character.getOwnerId().toString(), null);
-        playerConfig.saveConfig();
+            // Remove character and owning player from character store
+            offlineCache.invalidate(character.getCharacterName());
+            characterNames.remove(character.getCharacterName());
+            unindexOwner(character.getCharacterName());
+            character.setJournal(null);
+            journal.recordDelete(character.getCharacterName());
+            saveQueue.markDeleted(character.getCharacterName());
+            plugin.getMessenger().debug("Deleted character " + character.getCharacterName());
+            return true;
+        });
+        if (!deleted) {
+            return;
+        }
 
         // Remove nickname from player if set
-        if (plugin.getConfig().getBoolean("NicknamePlayers", true)) {
+        if (plugin.getSettings().isNicknamePlayers()) {
             plugin.getServer().dispatchCommand(plugin.getServer().getConsoleSender(), "nick " + character.getOwnerName() + " off");
         }
     }
@@ -258,44 +598,44 @@ public class CharacterManager {
      * @param characterName The character's name
      * @return The character possessed
      */
-    public synchronized Character possessCharacter(Player owner, String characterName) {
+    public Character possessCharacter(Player owner, String characterName) {
         Messenger messenger = plugin.getMessenger();
-        ConfigManager configManager = plugin.getConfigManager();
-
-        // Load character from character config
-        FileConfiguration characterConfig = configManager.getConfig(FOConfig.CHARACTER);
-        Character character;
-        try {
-            character = new Character(characterConfig.getConfigurationSection(characterName.toLowerCase()));
-            character.updateRadiationResistance();
-        } catch (Exception e) {
-            messenger.sendErrorMessage(owner, FOMessage.ERROR_CHARACTERLOAD, characterName, e.getMessage());
-            messenger.debug("Failed to load character " + characterName + ". " + e.getMessage());
-            return null;
-        }
-        if (character.getOwnerName() == null) {
-            // Possess character
-            character.possess(owner);
-            messenger.debug("Possessed character " + character.getCharacterName());
 
-            // Add owning player to players config
-            ConfigAccessor playerConfig = configManager.getConfigAccessor(FOConfig.PLAYER);
-            playerConfig.getConfig().set(owner.getUniqueId().toString(), character.getCharacterName());
-            playerConfig.saveConfig();
+        Character possessed = withCharacterLock(characterName, () -> {
+            // Load character from character store
+            Character character;
+            try {
+                character = readCharacter(characterName);
+            } catch (Exception e) {
+                messenger.sendErrorMessage(owner, FOMessage.ERROR_CHARACTERLOAD, characterName, e.getMessage());
+                messenger.debug("Failed to load character " + characterName + ". " + e.getMessage());
+                return null;
+            }
+            if (character.getOwnerName() == null) {
+                // Possess character
+                character.possess(owner);
+                forgetPreload(owner.getUniqueId());
+                removeForbiddenArmor(owner, character);
+                character.updateArmor(owner);
+                indexOwner(owner.getUniqueId(), character.getCharacterName());
+                messenger.debug("Possessed character " + character.getCharacterName());
 
-            // Save loaded character to update owner information
-            saveCharacter(character);
+                // Save loaded character to update owner information
+                saveCharacter(character);
 
-            // Nickname player
-            if (plugin.getConfig().getBoolean("NicknamePlayers", true)) {
-                plugin.getServer().dispatchCommand(plugin.getServer().getConsoleSender(), "nick " + owner.getName() + " " + character.getCharacterName());
+                // Add character to manager
+                return addToManager(character);
             }
 
-            // Add character to manager
-            return addToManager(character);
+            return null;
+        });
+
+        // Nickname player
+        if (possessed != null && plugin.getSettings().isNicknamePlayers()) {
+            plugin.getServer().dispatchCommand(plugin.getServer().getConsoleSender(), "nick " + owner.getName() + " " + possessed.getCharacterName());
         }
 
-        return null;
+        return possessed;
     }
 
     /**
@@ -304,42 +644,308 @@ public class CharacterManager {
      *
      * @param owner The character's owner
      */
-    public synchronized Character abandonCharacter(Player owner) {
-        ConfigManager configManager = plugin.getConfigManager();
-
+    public Character abandonCharacter(Player owner) {
         UUID ownerId = owner.getUniqueId();
         Character character = charactersByOwner.get(ownerId);
+        if (character == null) {
+            return null;
+        }
 
-        // Remove character from manager (must be done before abandoning)
-        removeFromManager(character);
+        boolean abandoned = withCharacterLock(character.getCharacterName(), () -> {
+            // The character may have been abandoned or deleted while waiting for the lock
+            if (charactersByOwner.get(ownerId) != character) {
+                return false;
+            }
 
-        // Abandon character
-        character.abandon();
-        plugin.getMessenger().debug("Abandoned character " + character.getCharacterName());
+            // Remove character from manager (must be done before abandoning)
+            removeFromManager(character);
+            forgetPreload(ownerId);
 
-        // Save character to update owner information
-        saveCharacter(character);
+            // Abandon character
+            offlineCache.invalidate(character.getCharacterName());
+            unindexOwner(character.getCharacterName());
+            character.abandon();
+            plugin.getMessenger().debug("Abandoned character " + character.getCharacterName());
 
-        // Remove owning player from players config
-        ConfigAccessor playerConfig = configManager.getConfigAccessor(FOConfig.PLAYER);
-        playerConfig.getConfig().set(owner.getUniqueId().toString(), null);
-        playerConfig.saveConfig();
+            // Save character to update owner information
+            saveCharacter(character);
+            return true;
+        });
+        if (!abandoned) {
+            return null;
+        }
 
         // Remove nickname from player if set
-        if (plugin.getConfig().getBoolean("NicknamePlayers", true)) {
-            plugin.getServer().dispatchCommand(plugin.getServer().getConsoleSender(), "nick " + character.getOwnerName() + " off");
+        if (plugin.getSettings().isNicknamePlayers()) {
+            plugin.getServer().dispatchCommand(plugin.getServer().getConsoleSender(), "nick " + owner.getName() + " off");
         }
 
         return character;
     }
 
+    /**
+     * Checks if a character may wear a piece of armor, telling the owner why not if it may not.
+     *
+     * @param owner     The character's owner
+     * @param character The character
+     * @param material  The material of the piece of armor
+     * @return {@code true} if the character may wear the armor
+     */
+    public boolean checkArmor(Player owner, Character character, Material material) {
+        ArmorMaterial armorMaterial = ArmorMaterial.getArmorMaterial(material);
+        CharacterSnapshot snapshot = character.getSnapshot();
+        if (canWear(snapshot, armorMaterial)) {
+            return true;
+        }
+        if (snapshot.getRace() == Race.SUPER_MUTANT) {
+            plugin.getMessenger().sendErrorMessage(owner, FOMessage.RACE_ONLYLEATHER);
+        } else {
+            plugin.getMessenger().sendErrorMessage(owner, FOMessage.INFORMATION_MISSING, Information.POWER_ARMOR);
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a character may wear armor of a certain material.<br>
+     * Super mutants can only wear leather armor, and wearing power armor requires the power armor information.
+     *
+     * @param snapshot      The character
+     * @param armorMaterial The armor material, or {@code null} if the item is not armor
+     * @return {@code true} if the character may wear the armor
+     */
+    private static boolean canWear(CharacterSnapshot snapshot, ArmorMaterial armorMaterial) {
+        if (armorMaterial == null) {
+            return true;
+        } else if (snapshot.getRace() == Race.SUPER_MUTANT) {
+            return armorMaterial == ArmorMaterial.LEATHER;
+        } else {
+            return armorMaterial != ArmorMaterial.DIAMOND || snapshot.hasKnowledge(Information.POWER_ARMOR);
+        }
+    }
+
+    /**
+     * Takes off any armor a character being attached to its owner may not wear, returning it to the owner's inventory.<br>
+     * The owner is told why once, however many pieces are taken off.
+     *
+     * @param owner     The character's owner
+     * @param character The character
+     */
+    private void removeForbiddenArmor(Player owner, Character character) {
+        CharacterSnapshot snapshot = character.getSnapshot();
+        Material forbidden = null;
+        for (ArmorType armorType : ArmorType.values()) {
+            ItemStack itemStack = armorType.getEquipped(owner);
+            if (itemStack == null || canWear(snapshot, ArmorMaterial.getArmorMaterial(itemStack.getType()))) {
+                continue;
+            }
+            forbidden = itemStack.getType();
+            armorType.setEquipped(owner, null);
+            for (ItemStack leftover : owner.getInventory().addItem(itemStack).values()) {
+                owner.getWorld().dropItemNaturally(owner.getLocation(), leftover);
+            }
+        }
+        if (forbidden != null) {
+            checkArmor(owner, character, forbidden);
+        }
+    }
+
+    /**
+     * Encodes every character whose latest state is only held in memory, and holds writes to the character store
+     * so the characters read afterwards with {@link CharacterManager#forEachStoredCharacter} are as they were at the snapshot.<br>
+     * Queued saves are written first. Loaded characters and characters with pending saves or journaled changes are encoded
+     * with {@link CharacterCodec}, and characters with pending deletions are included without data. Changes made while
+     * writes are held stay queued or journaled. Must be called from the main thread, where characters are changed,
+     * and must be followed by {@link CharacterManager#releaseStore()}.
+     *
+     * @return The encoded characters, or {@code null} for deleted characters, mapped by lowercase character name
+     */
+    public Map<String, byte[]> snapshotCharacters() {
+        return withBulkLock(() -> {
+            saveQueue.flush();
+            saveQueue.hold();
+            journal.hold();
+            Map<String, byte[]> snapshot = new HashMap<>();
+            for (Map.Entry<String, Character> pending : saveQueue.getPendingChanges().entrySet()) {
+                snapshot.put(pending.getKey(), pending.getValue() == null ? null : CharacterCodec.encode(pending.getValue()));
+            }
+            for (Map.Entry<String, Character> journaled : journal.getJournaledCharacters().entrySet()) {
+                if (!snapshot.containsKey(journaled.getKey())) {
+                    snapshot.put(journaled.getKey(), CharacterCodec.encode(journaled.getValue()));
+                }
+            }
+            for (Map.Entry<String, Character> loaded : charactersByName.entrySet()) {
+                if (!snapshot.containsKey(loaded.getKey())) {
+                    snapshot.put(loaded.getKey(), CharacterCodec.encode(loaded.getValue()));
+                }
+            }
+            return snapshot;
+        });
+    }
+
+    /**
+     * Allows the writes to the character store held by {@link CharacterManager#snapshotCharacters()} again,
+     * once the stored characters have been read. Safe to call from outside the main thread.
+     */
+    public void releaseStore() {
+        saveQueue.release();
+        journal.release();
+    }
+
+    /**
+     * Reads every character in the character store, a batch at a time so that only one batch is held in memory.<br>
+     * Characters that cannot be decoded are logged and skipped. Safe to call from outside the main thread.
+     *
+     * @param skip   The lowercase names of characters not to read
+     * @param action Called with each character read
+     * @return The amount of characters read
+     */
+    public int forEachStoredCharacter(Set<String> skip, Consumer<Character> action) {
+        List<String> names = new ArrayList<>(store.getCharacterNames());
+        names.removeAll(skip);
+        int read = 0;
+        for (int i = 0; i < names.size(); i += READ_BATCH_SIZE) {
+            Map<String, Callable<Character>> decoders = store.read(names.subList(i, Math.min(i + READ_BATCH_SIZE, names.size())));
+            for (Map.Entry<String, Callable<Character>> decoder : decoders.entrySet()) {
+                Character character;
+                try {
+                    character = decoder.getValue().call();
+                } catch (Exception e) {
+                    plugin.getLogger().warning("Skipped unreadable character " + decoder.getKey() + ". " + e.getMessage());
+                    continue;
+                }
+                action.accept(character);
+                read++;
+            }
+        }
+        return read;
+    }
+
+    /**
+     * Adds imported characters, queueing them to be saved over any stored characters of the same names.<br>
+     * Loaded characters are skipped so that no player's character is replaced while they are playing, and a character
+     * whose owner already owns a different character is imported without an owner. Must be called from the main thread.
+     *
+     * @param characters The imported characters
+     * @return The amount of characters imported
+     */
+    public int importCharacters(Collection<Character> characters) {
+        return withBulkLock(() -> {
+            int imported = 0;
+            for (Character character : characters) {
+                String characterName = character.getCharacterName();
+                if (charactersByName.containsKey(characterName.toLowerCase())) {
+                    continue;
+                }
+                offlineCache.invalidate(characterName);
+                forgetPreload(ownersByCharacterName.get(characterName.toLowerCase()));
+                unindexOwner(characterName);
+                characterNames.remove(characterName);
+                characterNames.add(characterName);
+                UUID ownerId = character.getOwnerId();
+                forgetPreload(ownerId);
+                if (ownerId != null) {
+                    if (getOwnedCharacterName(ownerId) == null) {
+                        indexOwner(ownerId, characterName);
+                    } else {
+                        character.abandon();
+                    }
+                }
+                // Journaled changes to a stored character of the same name no longer apply
+                if (journal.getJournaled(characterName) != null) {
+                    journal.recordDelete(characterName);
+                }
+                character.setJournal(journal);
+                character.markDirty();
+                saveQueue.markDirty(character);
+                imported++;
+            }
+            plugin.getMessenger().debug("Imported " + imported + " of " + characters.size() + " characters");
+            return imported;
+        });
+    }
+
+    /**
+     * Writes every queued character save now, in a single batch, unless writes are held for a snapshot.<br>
+     * Safe to call from outside the main thread.
+     */
+    public void flushSaves() {
+        saveQueue.flush();
+    }
+
+    /**
+     * Gets the amount of characters that exist.
+     *
+     * @return The amount of characters
+     */
+    public int getCharacterCount() {
+        return characterNames.size();
+    }
+
+    /**
+     * Replaces every stored character with a set of restored characters.<br>
+     * Loaded characters are detached, pending changes are written out, the journal is discarded, characters
+     * missing from the restored set are deleted, and the characters of online players are loaded again from the result.
+     * Must be called from the main thread.
+     *
+     * @param characters The restored characters
+     */
+    public void restoreCharacters(Collection<Character> characters) {
+        withBulkLock(() -> {
+            // Detach the old copies so nothing journals or saves them over the restored characters
+            for (Character character : new ArrayList<>(charactersByName.values())) {
+                character.setJournal(null);
+                removeFromManager(character);
+            }
+            preloadedCharacters.clear();
+            offlineCache.clear();
+            saveQueue.flushNow();
+
+            // Records in the journal describe the old characters, discard them before the store is replaced
+            journal.discard();
+
+            Set<String> restored = new HashSet<>();
+            for (Character character : characters) {
+                restored.add(character.getCharacterName().toLowerCase());
+                character.markDirty();
+            }
+            Set<String> deleted = new HashSet<>(store.getCharacterNames());
+            deleted.removeAll(restored);
+            synchronized (store) {
+                store.delete(deleted).forEach(saveQueue::markDeleted);
+                store.save(characters).forEach(saveQueue::markDirty);
+            }
+
+            characterNamesByOwner.clear();
+            ownersByCharacterName.clear();
+            characterNames.clear();
+            for (Map.Entry<UUID, String> owner : store.getOwners().entrySet()) {
+                indexOwner(owner.getKey(), owner.getValue());
+                characterNames.add(owner.getValue());
+            }
+            characterNames.addAll(store.getCharacterNames());
+            plugin.getMessenger().debug("Restored " + characters.size() + " characters and deleted " + deleted.size());
+
+            loadCharacters(plugin.getServer().getOnlinePlayers());
+            return null;
+        });
+    }
+
+    /**
+     * Gets the cache of recently read offline characters.
+     *
+     * @return The offline character cache
+     */
+    public OfflineCharacterCache getOfflineCache() {
+        return offlineCache;
+    }
+
     /**
      * Adds a character builder to the manager for creation.
      *
      * @param player  The character's owner
      * @param builder The character builder
      */
-    public synchronized void addCharacterBuilder(Player player, Character.CharacterBuilder builder) {
+    public void addCharacterBuilder(Player player, Character.CharacterBuilder builder) {
         characterBuilders.put(player.getUniqueId(), builder);
         plugin.getMessenger().debug("Added character builder for player " + player.getName());
     }
@@ -350,7 +956,7 @@ public class CharacterManager {
      * @param player The character's owner
      * @return The character builder, or {@code null} if the player has not begun to create a character
      */
-    public synchronized Character.CharacterBuilder getCharacterBuilder(Player player) {
+    public Character.CharacterBuilder getCharacterBuilder(Player player) {
         return characterBuilders.get(player.getUniqueId());
     }
 
@@ -360,18 +966,18 @@ public class CharacterManager {
      * @param playerId The player's uuid
      * @return {@code true} if the player is an owner
      */
-    public synchronized boolean isOwner(UUID playerId) {
+    public boolean isOwner(UUID playerId) {
         return charactersByOwner.containsKey(playerId);
     }
 
     /**
-     * Checks if the character of a certain name exists in the character config.
+     * Checks if the character of a certain name exists.
      *
      * @param characterName The character's name
      * @return {@code true} if the character exists
      */
-    public synchronized boolean isCharacter(String characterName) {
-        return plugin.getConfigManager().getConfig(FOConfig.CHARACTER).contains(characterName.toLowerCase());
+    public boolean isCharacter(String characterName) {
+        return characterNames.contains(characterName);
     }
 
     /**
@@ -380,7 +986,7 @@ public class CharacterManager {
      * @param characterName The character's name
      * @return {@code true} if the character is loaded
      */
-    public synchronized boolean isLoaded(String characterName) {
+    public boolean isLoaded(String characterName) {
         return charactersByName.containsKey(characterName.toLowerCase());
     }
 
@@ -390,9 +996,8 @@ public class CharacterManager {
      * @param characterName The character's name
      * @return {@code true} if the character exists and has no current owner
      */
-    public synchronized boolean canPossess(String characterName) {
-        FileConfiguration characterConfig = plugin.getConfigManager().getConfig(FOConfig.CHARACTER);
-        return characterConfig.contains(characterName.toLowerCase()) && !characterConfig.contains(characterName.toLowerCase() + ".ownerId");
+    public boolean canPossess(String characterName) {
+        return characterNames.contains(characterName) && !ownersByCharacterName.containsKey(characterName.toLowerCase());
     }
 
     /**
@@ -401,8 +1006,8 @@ public class CharacterManager {
      * @param ownerId The owner's UUID
      * @return The character owned by the player
      */
-    public synchronized Character getCharacterByOwner(UUID ownerId) {
-        return charactersByOwner.containsKey(ownerId) ? charactersByOwner.get(ownerId) : null;
+    public Character getCharacterByOwner(UUID ownerId) {
+        return charactersByOwner.get(ownerId);
     }
 
     /**
@@ -411,35 +1016,35 @@ public class CharacterManager {
      * @param characterName The character's name
      * @return The character with the given name
      */
-    public synchronized Character getCharacterByName(String characterName) {
-        return charactersByName.containsKey(characterName.toLowerCase()) ? charactersByName.get(characterName.toLowerCase()) : null;
+    public Character getCharacterByName(String characterName) {
+        return charactersByName.get(characterName.toLowerCase());
     }
 
     /**
      * Gets the characters loaded in the manager.
      *
-     * @return The characters in the manager
+     * @return A read-only view of the characters in the manager
      */
     public Collection<Character> getCharacters() {
-        return charactersByOwner.values();
+        return Collections.unmodifiableCollection(charactersByOwner.values());
     }
 
     /**
      * Gets the characters loaded in the manager and their owners.
      *
-     * @return The map of owners and characters
+     * @return A read-only view of the map of owners and characters
      */
     public Map<UUID, Character> getCharactersByOwner() {
-        return charactersByOwner;
+        return Collections.unmodifiableMap(charactersByOwner);
     }
 
     /**
      * Gets the characters loaded in the manager and their names.
      *
-     * @return The map of character names and characters
+     * @return A read-only view of the map of character names and characters
      */
     public Map<String, Character> getCharactersByName() {
-        return charactersByName;
+        return Collections.unmodifiableMap(charactersByName);
     }
 
     /**
@@ -447,17 +1052,53 @@ public class CharacterManager {
      *
      * @return A list of the names of the manager's characters
      */
-    public synchronized List<String> getCharacterList() {
+    public List<String> getCharacterList() {
         return new ArrayList<>(charactersByName.keySet());
     }
 
     /**
-     * Gets a list of the characters that exist in the character config.
+     * Gets a list of the characters that exist.
      *
-     * @return A list of the names of the existing characters
+     * @return A sorted list of the names of the existing characters
+     */
+    public List<String> getExistingCharacters() {
+        return new ArrayList<>(characterNames);
+    }
+
+    /**
+     * A character read before its owner joined, or the reason it could not be read.
      */
-    public synchronized List<String> getExistingCharacters() {
-        return new ArrayList<>(this.plugin.getConfigManager().getConfig(FOConfig.CHARACTER).getKeys(false));
+    private static class PreloadedCharacter {
+
+        private static final long EXPIRY = 60000;
+
+        private final String characterName;
+        private final Character character;
+        private final String error;
+        private final long created = System.currentTimeMillis();
+
+        /**
+         * Creates a new preloaded character.
+         *
+         * @param characterName The character's name, or {@code null} if the player does not own a character
+         * @param character     The character, or {@code null} if it could not be read
+         * @param error         The reason the character could not be read, or {@code null} if it was read
+         */
+        private PreloadedCharacter(String characterName, Character character, String error) {
+            this.characterName = characterName;
+            this.character = character;
+            this.error = error;
+        }
+
+        /**
+         * Checks if the preloaded character is too old to be used.
+         *
+         * @return {@code true} if the character was preloaded more than a minute ago
+         */
+        private boolean isExpired() {
+            return System.currentTimeMillis() - created > EXPIRY;
+        }
+
     }
 
 }
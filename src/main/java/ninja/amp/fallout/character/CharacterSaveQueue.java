@@ -0,0 +1,255 @@
+/*
+ * This file is part of Fallout.
+ *
+ * Copyright (c) 2013-2017 <http://github.com/ampayne2/Fallout//>
+ *
+ * Fallout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fallout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Fallout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ninja.amp.fallout.character;
+
+import ninja.amp.fallout.Fallout;
+import ninja.amp.fallout.character.storage.CharacterStore;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects character saves and writes them to the character store in batches off the main thread.<br>
+ * Repeated saves of the same character before a flush are coalesced into a single write.
+ *
+ * @author Austin Payne
+ */
+public class CharacterSaveQueue {
+
+    private final Fallout plugin;
+    private final CharacterStore store;
+    private final int batchSize;
+    private final BukkitTask flushTask;
+    private final Object flushLock = new Object();
+    private final Map<String, Character> pending = new LinkedHashMap<>();
+    private boolean flushScheduled = false;
+    private int holds = 0;
+
+    /**
+     * Creates a new character save queue and starts its flush timer.
+     *
+     * @param plugin The fallout plugin instance
+     * @param store  The character store to write to
+     */
+    public CharacterSaveQueue(Fallout plugin, CharacterStore store) {
+        this.plugin = plugin;
+        this.store = store;
+
+        long interval = plugin.getSettings().getSaveInterval();
+        batchSize = plugin.getSettings().getSaveBatchSize();
+
+        flushTask = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, this::flush, interval, interval);
+    }
+
+    /**
+     * Marks a character as needing to be saved.<br>
+     * The character will be written on the next flush.
+     *
+     * @param character The character to save
+     */
+    public void markDirty(Character character) {
+        enqueue(character.getCharacterName().toLowerCase(), character);
+    }
+
+    /**
+     * Marks a character as needing to be removed from the character store.
+     *
+     * @param characterName The character's name
+     */
+    public void markDeleted(String characterName) {
+        enqueue(characterName.toLowerCase(), null);
+    }
+
+    /**
+     * Adds a pending change, scheduling an early flush if the batch size has been reached.
+     *
+     * @param key       The character's name in lowercase
+     * @param character The character to save, or {@code null} to delete the character
+     */
+    private void enqueue(String key, Character character) {
+        synchronized (pending) {
+            // Re-inserting keeps the latest change and moves it to the end of the batch
+            pending.remove(key);
+            pending.put(key, character);
+            if (pending.size() >= batchSize && !flushScheduled && holds == 0) {
+                flushScheduled = true;
+                plugin.getServer().getScheduler().runTaskAsynchronously(plugin, this::flush);
+            }
+        }
+    }
+
+    /**
+     * Gets a character that is waiting to be saved.
+     *
+     * @param characterName The character's name
+     * @return The pending character, or {@code null} if the character has no pending save
+     */
+    public Character getPending(String characterName) {
+        synchronized (pending) {
+            return pending.get(characterName.toLowerCase());
+        }
+    }
+
+    /**
+     * Checks if a character is waiting to be deleted.
+     *
+     * @param characterName The character's name
+     * @return {@code true} if the character has a pending deletion
+     */
+    public boolean isPendingDeletion(String characterName) {
+        String key = characterName.toLowerCase();
+        synchronized (pending) {
+            return pending.containsKey(key) && pending.get(key) == null;
+        }
+    }
+
+    /**
+     * Gets the names of all characters with pending changes.
+     *
+     * @return The pending changes, mapping lowercase character names to the character or {@code null} if deleted
+     */
+    public Map<String, Character> getPendingChanges() {
+        synchronized (pending) {
+            return new LinkedHashMap<>(pending);
+        }
+    }
+
+    /**
+     * Removes and returns all pending changes.
+     *
+     * @return The pending changes in the order they were made
+     */
+    private Map<String, Character> takePending() {
+        synchronized (pending) {
+            Map<String, Character> batch = new LinkedHashMap<>(pending);
+            pending.clear();
+            return batch;
+        }
+    }
+
+    /**
+     * Holds every change in the queue instead of writing it until {@link CharacterSaveQueue#release()} is called,
+     * so the character store stays unchanged. Waits for a flush that is already writing to finish.
+     */
+    public void hold() {
+        synchronized (flushLock) {
+            synchronized (pending) {
+                holds++;
+            }
+        }
+    }
+
+    /**
+     * Allows changes held by {@link CharacterSaveQueue#hold()} to be written again.
+     */
+    public void release() {
+        synchronized (pending) {
+            holds--;
+            if (holds == 0 && pending.size() >= batchSize && !flushScheduled && plugin.isEnabled()) {
+                flushScheduled = true;
+                plugin.getServer().getScheduler().runTaskAsynchronously(plugin, this::flush);
+            }
+        }
+    }
+
+    /**
+     * Writes all pending changes to the character store, unless writes are held.<br>
+     * Safe to call from any thread, only one flush runs at a time.
+     */
+    public void flush() {
+        flush(false);
+    }
+
+    /**
+     * Writes all pending changes to the character store, even while writes are held.<br>
+     * Safe to call from any thread, only one flush runs at a time.
+     */
+    public void flushNow() {
+        flush(true);
+    }
+
+    /**
+     * Writes all pending changes to the character store.
+     *
+     * @param force If changes should be written even while writes are held
+     */
+    private void flush(boolean force) {
+        synchronized (flushLock) {
+            synchronized (pending) {
+                flushScheduled = false;
+                if (pending.isEmpty() || (holds > 0 && !force)) {
+                    return;
+                }
+            }
+
+            synchronized (store) {
+                // Changes are drained while holding the store so readers see either the pending or the written state
+                Map<String, Character> batch = takePending();
+                List<Character> saved = new ArrayList<>();
+                List<String> deleted = new ArrayList<>();
+                for (Map.Entry<String, Character> entry : batch.entrySet()) {
+                    if (entry.getValue() == null) {
+                        deleted.add(entry.getKey());
+                    } else {
+                        saved.add(entry.getValue());
+                    }
+                }
+                Set<String> notDeleted = store.delete(deleted);
+                Set<Character> notSaved = store.save(saved);
+                plugin.getMessenger().debug("Flushed " + batch.size() + " pending character changes");
+
+                if (!notDeleted.isEmpty() || !notSaved.isEmpty()) {
+                    requeue(notDeleted, notSaved);
+                }
+            }
+        }
+    }
+
+    /**
+     * Queues changes that could not be written again, so they are retried on the next flush.<br>
+     * A character changed or deleted again since the failed batch was taken keeps its newer change.
+     *
+     * @param deleted The names of the characters that could not be deleted
+     * @param saved   The characters that could not be saved
+     */
+    private void requeue(Set<String> deleted, Set<Character> saved) {
+        synchronized (pending) {
+            for (String characterName : deleted) {
+                pending.putIfAbsent(characterName.toLowerCase(), null);
+            }
+            for (Character character : saved) {
+                pending.putIfAbsent(character.getCharacterName().toLowerCase(), character);
+            }
+        }
+        plugin.getLogger().warning("Could not write " + (deleted.size() + saved.size()) + " character changes, they will be retried on the next save");
+    }
+
+    /**
+     * Stops the flush timer and synchronously writes all pending changes.
+     */
+    public void drain() {
+        flushTask.cancel();
+        flushNow();
+    }
+
+}
@@ -0,0 +1,793 @@
+/*
+ * This file is part of Fallout.
+ *
+ * Copyright (c) 2013-2017 <http://github.com/ampayne2/Fallout//>
+ *
+ * Fallout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fallout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Fallout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ninja.amp.fallout.character;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * An immutable view of every field of a fallout character at one point in time.<br>
+ * A character publishes a new snapshot each time it is changed, so a snapshot is read with a single volatile read
+ * and its fields are always consistent with each other. The version increases by at least 1 with every change.<br>
+ * The final roll modifiers of every trait and skill and the base radiation resistance are computed when the
+ * SPECIAL, skills or perks change, so reading them never recomputes anything.
+ *
+ * @author Austin Payne
+ */
+public final class CharacterSnapshot {
+
+    private static final int TRAIT_COUNT = Trait.values().length;
+    private static final int SKILL_COUNT = Skill.values().length;
+
+    private long version;
+
+    private String ownerName;
+    private UUID ownerId;
+
+    private final String characterName;
+    private final Race race;
+    private final int age;
+    private final int height;
+    private final int weight;
+    private final Character.Gender gender;
+    private final Character.Alignment alignment;
+
+    private long special;
+    private long skills;
+    private long perks;
+    private int[] rollModifiers;
+    private int baseResistance;
+    private int level;
+    private long[] knowledge;
+    private String faction;
+    private int radiation;
+    private long lastRadX;
+    private long remainingRadX;
+
+    /**
+     * Creates the first snapshot of a character, without an owner and with every other changeable field empty.
+     *
+     * @param characterName The character's name
+     * @param race          The character's race
+     * @param age           The character's age
+     * @param height        The character's height
+     * @param weight        The character's weight
+     * @param gender        The character's gender
+     * @param alignment     The character's alignment
+     */
+    CharacterSnapshot(String characterName, Race race, int age, int height, int weight, Character.Gender gender, Character.Alignment alignment) {
+        this.characterName = characterName;
+        this.race = race;
+        this.age = age;
+        this.height = height;
+        this.weight = weight;
+        this.gender = gender;
+        this.alignment = alignment;
+        this.knowledge = new long[0];
+        this.rollModifiers = computeRollModifiers(0, 0, 0);
+    }
+
+    /**
+     * Creates the next version of a snapshot, to be changed before it is published.
+     *
+     * @param previous The previous snapshot
+     */
+    private CharacterSnapshot(CharacterSnapshot previous) {
+        this.version = previous.version + 1;
+        this.ownerName = previous.ownerName;
+        this.ownerId = previous.ownerId;
+        this.characterName = previous.characterName;
+        this.race = previous.race;
+        this.age = previous.age;
+        this.height = previous.height;
+        this.weight = previous.weight;
+        this.gender = previous.gender;
+        this.alignment = previous.alignment;
+        this.special = previous.special;
+        this.skills = previous.skills;
+        this.perks = previous.perks;
+        this.rollModifiers = previous.rollModifiers;
+        this.baseResistance = previous.baseResistance;
+        this.level = previous.level;
+        this.knowledge = previous.knowledge;
+        this.faction = previous.faction;
+        this.radiation = previous.radiation;
+        this.lastRadX = previous.lastRadX;
+        this.remainingRadX = previous.remainingRadX;
+    }
+
+    /**
+     * Copies the snapshot with a different owner.
+     *
+     * @param ownerName The owner's name, or {@code null}
+     * @param ownerId   The owner's uuid, or {@code null}
+     * @return The next snapshot
+     */
+    CharacterSnapshot withOwner(String ownerName, UUID ownerId) {
+        CharacterSnapshot next = new CharacterSnapshot(this);
+        next.ownerName = ownerName;
+        next.ownerId = ownerId;
+        return next;
+    }
+
+    /**
+     * Copies the snapshot with a different SPECIAL.
+     *
+     * @param special The packed SPECIAL
+     * @return The next snapshot
+     */
+    CharacterSnapshot withSpecial(long special) {
+        CharacterSnapshot next = new CharacterSnapshot(this);
+        next.special = special;
+        next.rollModifiers = computeRollModifiers(special, skills, perks);
+        next.baseResistance = computeBaseResistance(special, perks);
+        return next;
+    }
+
+    /**
+     * Copies the snapshot with different skill levels.
+     *
+     * @param skills The packed skill levels
+     * @return The next snapshot
+     */
+    CharacterSnapshot withSkillLevels(long skills) {
+        CharacterSnapshot next = new CharacterSnapshot(this);
+        next.skills = skills;
+        next.rollModifiers = computeRollModifiers(special, skills, perks);
+        return next;
+    }
+
+    /**
+     * Copies the snapshot with different perks.
+     *
+     * @param perks The perk bitmask
+     * @return The next snapshot
+     */
+    CharacterSnapshot withPerks(long perks) {
+        CharacterSnapshot next = new CharacterSnapshot(this);
+        next.perks = perks;
+        next.rollModifiers = computeRollModifiers(special, skills, perks);
+        next.baseResistance = computeBaseResistance(special, perks);
+        return next;
+    }
+
+    /**
+     * Copies the snapshot with a different level.
+     *
+     * @param level The level
+     * @return The next snapshot
+     */
+    CharacterSnapshot withLevel(int level) {
+        CharacterSnapshot next = new CharacterSnapshot(this);
+        next.level = level;
+        return next;
+    }
+
+    /**
+     * Copies the snapshot with different knowledge.
+     *
+     * @param knowledge The knowledge bitset, which must not be changed afterwards
+     * @return The next snapshot
+     */
+    CharacterSnapshot withKnowledge(long[] knowledge) {
+        CharacterSnapshot next = new CharacterSnapshot(this);
+        next.knowledge = knowledge;
+        return next;
+    }
+
+    /**
+     * Copies the snapshot with a piece of information learned or forgotten.
+     *
+     * @param id    The id of the piece of information
+     * @param known If the character knows the piece of information
+     * @return The next snapshot
+     */
+    CharacterSnapshot withKnowledge(int id, boolean known) {
+        int word = id >>> 6;
+        long[] words = Arrays.copyOf(knowledge, Math.max(knowledge.length, word + 1));
+        if (known) {
+            words[word] |= 1L << id;
+        } else {
+            words[word] &= ~(1L << id);
+        }
+        return withKnowledge(words);
+    }
+
+    /**
+     * Copies the snapshot with a different faction.
+     *
+     * @param faction The faction, or {@code null}
+     * @return The next snapshot
+     */
+    CharacterSnapshot withFaction(String faction) {
+        CharacterSnapshot next = new CharacterSnapshot(this);
+        next.faction = faction;
+        return next;
+    }
+
+    /**
+     * Copies the snapshot with a different radiation level.
+     *
+     * @param radiation The radiation level
+     * @return The next snapshot
+     */
+    CharacterSnapshot withRadiation(int radiation) {
+        CharacterSnapshot next = new CharacterSnapshot(this);
+        next.radiation = radiation;
+        return next;
+    }
+
+    /**
+     * Copies the snapshot with different rad-x usage.
+     *
+     * @param lastRadX      The time the rad-x was last updated
+     * @param remainingRadX The rad-x duration left at that time
+     * @return The next snapshot
+     */
+    CharacterSnapshot withRadX(long lastRadX, long remainingRadX) {
+        CharacterSnapshot next = new CharacterSnapshot(this);
+        next.lastRadX = lastRadX;
+        next.remainingRadX = remainingRadX;
+        return next;
+    }
+
+    /**
+     * Computes the final roll modifier of every trait and skill, without the modifier of the roll itself.<br>
+     * A trait's modifier is 1.5 times its value rounded down, and a skill's modifier is its level plus the
+     * rounded up average of its affected traits. Both include the bonuses of the character's perks.
+     *
+     * @param special The packed SPECIAL
+     * @param skills  The packed skill levels
+     * @param perks   The perk bitmask
+     * @return The modifiers of the traits and then the skills by ordinal, followed by their perk bonuses in the same order
+     */
+    private static int[] computeRollModifiers(long special, long skills, long perks) {
+        Trait[] traits = Trait.values();
+        Skill[] skillValues = Skill.values();
+        List<Perk> perkList = Perk.getPerks(perks);
+        int bonuses = TRAIT_COUNT + SKILL_COUNT;
+        int[] modifiers = new int[bonuses * 2];
+        for (Trait trait : traits) {
+            int bonus = 0;
+            for (Perk perk : perkList) {
+                bonus += perk.getBonus(trait);
+            }
+            modifiers[trait.ordinal()] = Special.get(special, trait) * 3 / 2 + bonus;
+            modifiers[bonuses + trait.ordinal()] = bonus;
+        }
+        for (Skill skill : skillValues) {
+            int bonus = 0;
+            for (Perk perk : perkList) {
+                bonus += perk.getBonus(skill);
+            }
+            modifiers[TRAIT_COUNT + skill.ordinal()] = skill.getLevel(skills) + skill.getRollModifier(special) + bonus;
+            modifiers[bonuses + TRAIT_COUNT + skill.ordinal()] = bonus;
+        }
+        return modifiers;
+    }
+
+    /**
+     * Computes the radiation resistance the character gets from its endurance and perks.
+     *
+     * @param special The packed SPECIAL
+     * @param perks   The perk bitmask
+     * @return The radiation resistance
+     */
+    private static int computeBaseResistance(long special, long perks) {
+        int resistance = 2 * Special.get(special, Trait.ENDURANCE);
+        if ((perks & Perk.ANTI_RADIATION.getMask()) != 0) {
+            resistance += 25;
+        }
+        return resistance;
+    }
+
+    /**
+     * Gets the version of the snapshot.
+     *
+     * @return The version, higher than the version of any earlier snapshot of the same character
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the owner's name.
+     *
+     * @return The owner's name
+     */
+    public String getOwnerName() {
+        return ownerName;
+    }
+
+    /**
+     * Gets the owner's uuid.
+     *
+     * @return The owner's uuid
+     */
+    public UUID getOwnerId() {
+        return ownerId;
+    }
+
+    /**
+     * Gets the character's name.
+     *
+     * @return The character's name
+     */
+    public String getCharacterName() {
+        return characterName;
+    }
+
+    /**
+     * Gets the character's race.
+     *
+     * @return The character's race
+     */
+    public Race getRace() {
+        return race;
+    }
+
+    /**
+     * Gets the character's age in years.
+     *
+     * @return The character's age
+     */
+    public int getAge() {
+        return age;
+    }
+
+    /**
+     * Gets the character's height in inches.
+     *
+     * @return The character's height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the character's weight in pounds.
+     *
+     * @return The character's weight
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * Gets the character's gender.
+     *
+     * @return The character's gender
+     */
+    public Character.Gender getGender() {
+        return gender;
+    }
+
+    /**
+     * Gets the character's alignment.
+     *
+     * @return The character's alignment
+     */
+    public Character.Alignment getAlignment() {
+        return alignment;
+    }
+
+    /**
+     * Gets a copy of the character's SPECIAL.
+     *
+     * @return The character's SPECIAL
+     */
+    public Special getSpecial() {
+        return new Special(special);
+    }
+
+    /**
+     * Gets the value of one of the character's traits.
+     *
+     * @param trait The trait
+     * @return The trait's value
+     */
+    public int getTrait(Trait trait) {
+        return Special.get(special, trait);
+    }
+
+    /**
+     * Gets every value of the character's SPECIAL packed into a long.
+     *
+     * @return The packed SPECIAL, read with {@link Special#get(long, Trait)}
+     */
+    public long getPackedSpecial() {
+        return special;
+    }
+
+    /**
+     * Checks the character's level of a certain skill.
+     *
+     * @param skill The skill
+     * @return The level
+     */
+    public int skillLevel(Skill skill) {
+        return skill.getLevel(skills);
+    }
+
+    /**
+     * Gets the character's skills and their levels.
+     *
+     * @return A copy of the character's skill levels
+     */
+    public Map<Skill, Integer> getSkillLevels() {
+        Map<Skill, Integer> skillLevels = new EnumMap<>(Skill.class);
+        Skill.forEachLevel(skills, skillLevels::put);
+        return skillLevels;
+    }
+
+    /**
+     * Gets every skill level of the character packed into a long.
+     *
+     * @return The packed skill levels, read with {@link Skill#getLevel(long)}
+     */
+    public long getPackedSkillLevels() {
+        return skills;
+    }
+
+    /**
+     * Gets a formatted string containing the character's skills and their levels.
+     *
+     * @return The skill levels, in regular expression format "skill - level[, skill - level]*"
+     */
+    public String getSkillList() {
+        StringBuilder skillList = new StringBuilder();
+        Skill.forEachLevel(skills, (skill, level) -> {
+            if (skillList.length() > 0) {
+                skillList.append(", ");
+            }
+            skillList.append(skill.getName()).append(" - ").append(level);
+        });
+        return skillList.toString();
+    }
+
+    /**
+     * Gets the roll modifier of one of the character's traits, including perk bonuses.
+     *
+     * @param trait The trait
+     * @return The trait's roll modifier
+     */
+    public int getRollModifier(Trait trait) {
+        return rollModifiers[trait.ordinal()];
+    }
+
+    /**
+     * Gets the roll modifier of one of the character's skills, including perk bonuses.
+     *
+     * @param skill The skill
+     * @return The skill's roll modifier
+     */
+    public int getRollModifier(Skill skill) {
+        return rollModifiers[TRAIT_COUNT + skill.ordinal()];
+    }
+
+    /**
+     * Gets the total bonus the character's perks give to rolls of one of its traits.
+     *
+     * @param trait The trait
+     * @return The trait's perk bonus
+     */
+    public int getPerkBonus(Trait trait) {
+        return rollModifiers[TRAIT_COUNT + SKILL_COUNT + trait.ordinal()];
+    }
+
+    /**
+     * Gets the total bonus the character's perks give to rolls of one of its skills.
+     *
+     * @param skill The skill
+     * @return The skill's perk bonus
+     */
+    public int getPerkBonus(Skill skill) {
+        return rollModifiers[TRAIT_COUNT * 2 + SKILL_COUNT + skill.ordinal()];
+    }
+
+    /**
+     * Checks if the character has a certain perk.
+     *
+     * @param perk The perk
+     * @return {@code true} if the character has the perk
+     */
+    public boolean hasPerk(Perk perk) {
+        return (perks & perk.getMask()) != 0;
+    }
+
+    /**
+     * Gets the character's perks.
+     *
+     * @return A copy of the character's perks
+     */
+    public List<Perk> getPerks() {
+        return Perk.getPerks(perks);
+    }
+
+    /**
+     * Gets the character's perks as a bitmask.
+     *
+     * @return The perk bitmask, with the bits of {@link Perk#getMask()}
+     */
+    public long getPerkMask() {
+        return perks;
+    }
+
+    /**
+     * Gets the character's perk of a certain tier.
+     *
+     * @param tier The tier
+     * @return The perk, or {@code null} if the character has no perk of the tier
+     */
+    public Perk getPerk(int tier) {
+        return Perk.getPerk(perks, tier);
+    }
+
+    /**
+     * Gets a formatted string containing the character's perks.
+     *
+     * @return The perks, in regular expression format "perk[, perk]*"
+     */
+    public String getPerkList() {
+        StringBuilder perkList = new StringBuilder();
+        for (Perk perk : getPerks()) {
+            if (perkList.length() > 0) {
+                perkList.append(", ");
+            }
+            perkList.append(perk.getName());
+        }
+        return perkList.toString();
+    }
+
+    /**
+     * Gets the character's level.
+     *
+     * @return The character's level
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Checks if the character knows a certain piece of information.
+     *
+     * @param information The piece of information
+     * @return {@code true} if the character knows the piece of information
+     */
+    public boolean hasKnowledge(String information) {
+        int id = Information.findId(information);
+        return id >= 0 && hasKnowledge(id);
+    }
+
+    /**
+     * Checks if the character knows a certain piece of information.
+     *
+     * @param id The id of the piece of information, from {@link Information#getId}
+     * @return {@code true} if the character knows the piece of information
+     */
+    public boolean hasKnowledge(int id) {
+        int word = id >>> 6;
+        return word < knowledge.length && (knowledge[word] & (1L << id)) != 0;
+    }
+
+    /**
+     * Gets the lowercase names of the pieces of information the character knows.
+     *
+     * @return The pieces of information
+     */
+    public List<String> getKnowledge() {
+        List<String> information = new ArrayList<>();
+        for (int word = 0; word < knowledge.length; word++) {
+            for (long bits = knowledge[word]; bits != 0; bits &= bits - 1) {
+                information.add(Information.getKey(word * 64 + Long.numberOfTrailingZeros(bits)));
+            }
+        }
+        return information;
+    }
+
+    /**
+     * Gets the character's faction.
+     *
+     * @return The character's faction
+     */
+    public String getFaction() {
+        return faction;
+    }
+
+    /**
+     * Gets the character's radiation level.
+     *
+     * @return The character's radiation level
+     */
+    public int getRadiation() {
+        return radiation;
+    }
+
+    /**
+     * Gets the radiation resistance the character gets from its endurance and perks, without armor or rad-x.
+     *
+     * @return The radiation resistance
+     */
+    public int getBaseResistance() {
+        return baseResistance;
+    }
+
+    /**
+     * Gets the time the character's rad-x was last updated.
+     *
+     * @return The time in milliseconds
+     */
+    public long getLastRadX() {
+        return lastRadX;
+    }
+
+    /**
+     * Gets the rad-x duration the character had left when it was last updated.
+     *
+     * @return The duration in milliseconds
+     */
+    public long getRemainingRadX() {
+        return remainingRadX;
+    }
+
+    /**
+     * Saves certain groups of the snapshot's fields to a configuration section, leaving the other fields as they are.
+     *
+     * @param section The configuration section
+     * @param groups  The field groups to save
+     */
+    void save(ConfigurationSection section, Set<Character.FieldGroup> groups) {
+        if (groups.contains(Character.FieldGroup.OWNER)) {
+            section.set("ownerName", ownerName);
+            section.set("ownerId", ownerId == null ? null : ownerId.toString());
+        }
+        if (groups.contains(Character.FieldGroup.PROFILE)) {
+            section.set("name", characterName);
+            section.set("race", race.name());
+            section.set("age", age);
+            section.set("height", height);
+            section.set("weight", weight);
+            section.set("gender", gender.name());
+            section.set("alignment", alignment.name());
+        }
+        if (groups.contains(Character.FieldGroup.SPECIAL)) {
+            ConfigurationSection specialSection = section.createSection("special");
+            for (Trait trait : Trait.values()) {
+                specialSection.set(trait.getName(), Special.get(special, trait));
+            }
+        }
+        if (groups.contains(Character.FieldGroup.SKILLS)) {
+            ConfigurationSection skillLevels = section.createSection("skills");
+            Skill.forEachLevel(skills, (skill, level) -> skillLevels.set(skill.getName(), level));
+        }
+        if (groups.contains(Character.FieldGroup.PERKS)) {
+            List<String> perkNames = new ArrayList<>();
+            for (Perk perk : getPerks()) {
+                perkNames.add(perk.name());
+            }
+            section.set("perks", perkNames);
+        }
+        if (groups.contains(Character.FieldGroup.LEVEL)) {
+            section.set("level", level);
+        }
+        if (groups.contains(Character.FieldGroup.KNOWLEDGE)) {
+            section.set("knowledge", getKnowledge());
+        }
+        if (groups.contains(Character.FieldGroup.FACTION)) {
+            section.set("faction", faction);
+        }
+        if (groups.contains(Character.FieldGroup.RADIATION)) {
+            section.set("radiation", radiation);
+            section.set("lastRadX", lastRadX);
+            section.set("remainingRadX", remainingRadX);
+        }
+    }
+
+    /**
+     * Saves certain groups of the snapshot's fields as {@link CharacterCodec} encoded fields.
+     *
+     * @param fields The field writer
+     * @param groups The field groups to save
+     * @throws IOException If the fields could not be written
+     */
+    void save(CharacterCodec.FieldWriter fields, Set<Character.FieldGroup> groups) throws IOException {
+        DataOutputStream output;
+        if (groups.contains(Character.FieldGroup.OWNER) && ownerId != null) {
+            output = fields.begin();
+            output.writeLong(ownerId.getMostSignificantBits());
+            output.writeLong(ownerId.getLeastSignificantBits());
+            output.writeUTF(ownerName);
+            fields.end(CharacterCodec.OWNER);
+        }
+        if (groups.contains(Character.FieldGroup.PROFILE)) {
+            fields.begin().writeUTF(characterName);
+            fields.end(CharacterCodec.NAME);
+            CharacterCodec.writeVarInt(fields.begin(), race.ordinal());
+            fields.end(CharacterCodec.RACE);
+            CharacterCodec.writeVarInt(fields.begin(), age);
+            fields.end(CharacterCodec.AGE);
+            CharacterCodec.writeVarInt(fields.begin(), height);
+            fields.end(CharacterCodec.HEIGHT);
+            CharacterCodec.writeVarInt(fields.begin(), weight);
+            fields.end(CharacterCodec.WEIGHT);
+            CharacterCodec.writeVarInt(fields.begin(), gender.ordinal());
+            fields.end(CharacterCodec.GENDER);
+            CharacterCodec.writeVarInt(fields.begin(), alignment.ordinal());
+            fields.end(CharacterCodec.ALIGNMENT);
+        }
+        if (groups.contains(Character.FieldGroup.SPECIAL)) {
+            Trait[] traits = Trait.values();
+            output = fields.begin();
+            CharacterCodec.writeVarInt(output, traits.length);
+            for (Trait trait : traits) {
+                CharacterCodec.writeVarInt(output, Special.get(special, trait));
+            }
+            fields.end(CharacterCodec.SPECIAL);
+        }
+        if (groups.contains(Character.FieldGroup.SKILLS)) {
+            // Skill levels fit in 4 bits, two are packed into each byte, which is how they are packed in memory
+            int skillCount = Skill.values().length;
+            output = fields.begin();
+            CharacterCodec.writeVarInt(output, skillCount);
+            for (int i = 0; i < skillCount; i += 2) {
+                output.writeByte((int) (skills >>> (i * 4)) & 0xFF);
+            }
+            fields.end(CharacterCodec.SKILLS);
+        }
+        if (groups.contains(Character.FieldGroup.PERKS)) {
+            CharacterCodec.writeVarLong(fields.begin(), perks);
+            fields.end(CharacterCodec.PERKS);
+        }
+        if (groups.contains(Character.FieldGroup.LEVEL)) {
+            CharacterCodec.writeVarInt(fields.begin(), level);
+            fields.end(CharacterCodec.LEVEL);
+        }
+        if (groups.contains(Character.FieldGroup.KNOWLEDGE)) {
+            List<String> information = getKnowledge();
+            output = fields.begin();
+            CharacterCodec.writeVarInt(output, information.size());
+            for (String piece : information) {
+                output.writeUTF(piece);
+            }
+            fields.end(CharacterCodec.KNOWLEDGE);
+        }
+        if (groups.contains(Character.FieldGroup.FACTION) && faction != null) {
+            fields.begin().writeUTF(faction);
+            fields.end(CharacterCodec.FACTION);
+        }
+        if (groups.contains(Character.FieldGroup.RADIATION)) {
+            CharacterCodec.writeVarInt(fields.begin(), radiation);
+            fields.end(CharacterCodec.RADIATION);
+            output = fields.begin();
+            CharacterCodec.writeVarLong(output, lastRadX);
+            CharacterCodec.writeVarLong(output, remainingRadX);
+            fields.end(CharacterCodec.RAD_X);
+        }
+    }
+
+}
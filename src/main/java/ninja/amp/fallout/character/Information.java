@@ -21,9 +21,13 @@ package ninja.amp.fallout.character;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
- * Keeps track of pieces of information that fallout characters can learn.
+ * Keeps track of pieces of information that fallout characters can learn.<br>
+ * Every piece of information a character knows is interned to an integer id, so characters can keep their
+ * knowledge as a set of bits. Ids are assigned in the order pieces are first seen and are never reused,
+ * but they are not saved, so they may differ between server runs.
  */
 public class Information {
 
@@ -33,6 +37,8 @@ public class Information {
     public static final String POWER_ARMOR = "PowerArmor";
 
     private static final ConcurrentHashMap<String, String> informationPieces = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private static final List<String> keys = new CopyOnWriteArrayList<>();
 
     private Information() {
     }
@@ -54,6 +60,60 @@ public class Information {
      */
     public static void addInformation(String information) {
         informationPieces.putIfAbsent(information.toLowerCase(), information);
+        // The correct name is looked up without lowercasing it first
+        ids.putIfAbsent(information, getId(information));
+    }
+
+    /**
+     * Gets the id of a piece of information, interning it if it does not have one yet.
+     *
+     * @param information The piece of information
+     * @return The information piece's id
+     */
+    public static int getId(String information) {
+        int id = findId(information);
+        return id < 0 ? intern(information.toLowerCase()) : id;
+    }
+
+    /**
+     * Finds the id of a piece of information without interning it.<br>
+     * Looking up the correct name of a registered piece does not allocate.
+     *
+     * @param information The piece of information
+     * @return The information piece's id, or -1 if it has never been interned
+     */
+    public static int findId(String information) {
+        Integer id = ids.get(information);
+        if (id == null) {
+            id = ids.get(information.toLowerCase());
+        }
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Gets the lowercase name of a piece of information, as characters save it.
+     *
+     * @param id The information piece's id
+     * @return The information piece's lowercase name
+     */
+    public static String getKey(int id) {
+        return keys.get(id);
+    }
+
+    /**
+     * Assigns the next id to a piece of information.
+     *
+     * @param key The information piece's lowercase name
+     * @return The information piece's id
+     */
+    private static synchronized int intern(String key) {
+        Integer id = ids.get(key);
+        if (id == null) {
+            id = keys.size();
+            keys.add(key);
+            ids.put(key, id);
+        }
+        return id;
     }
 
     /**
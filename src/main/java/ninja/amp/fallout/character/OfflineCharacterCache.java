@@ -0,0 +1,182 @@
+/*
+ * This file is part of Fallout.
+ *
+ * Copyright (c) 2013-2017 <http://github.com/ampayne2/Fallout//>
+ *
+ * Fallout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fallout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Fallout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ninja.amp.fallout.character;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds recently read characters without online owners so they do not have to be read from storage again.<br>
+ * The cache is bounded by size, evicting the least recently used character, and by time since a character was read.
+ *
+ * @author Austin Payne
+ */
+public class OfflineCharacterCache {
+
+    private final int maxSize;
+    private final long expiry;
+    private final Map<String, CachedCharacter> characters = new LinkedHashMap<>(16, 0.75f, true);
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Creates a new offline character cache.
+     *
+     * @param maxSize The maximum amount of cached characters, or 0 to disable the cache
+     * @param expiry  The time in milliseconds a character stays cached after being read
+     */
+    public OfflineCharacterCache(int maxSize, long expiry) {
+        this.maxSize = maxSize;
+        this.expiry = expiry;
+    }
+
+    /**
+     * Gets a cached character.
+     *
+     * @param characterName The character's name
+     * @return The character, or {@code null} if the character is not cached or has expired
+     */
+    public synchronized Character get(String characterName) {
+        String key = characterName.toLowerCase();
+        CachedCharacter cached = characters.get(key);
+        if (cached != null && cached.isExpired()) {
+            characters.remove(key);
+            evictions++;
+            cached = null;
+        }
+        if (cached == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return cached.character;
+    }
+
+    /**
+     * Adds a character to the cache, evicting expired and least recently used characters if the cache is full.
+     *
+     * @param character The character
+     */
+    public synchronized void put(Character character) {
+        if (maxSize <= 0) {
+            return;
+        }
+        characters.put(character.getCharacterName().toLowerCase(), new CachedCharacter(character));
+
+        Iterator<CachedCharacter> iterator = characters.values().iterator();
+        while (iterator.hasNext()) {
+            CachedCharacter cached = iterator.next();
+            // Iteration runs from least to most recently used
+            if (characters.size() > maxSize || cached.isExpired()) {
+                iterator.remove();
+                evictions++;
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Removes a character from the cache.
+     *
+     * @param characterName The character's name
+     */
+    public synchronized void invalidate(String characterName) {
+        characters.remove(characterName.toLowerCase());
+    }
+
+    /**
+     * Removes every character from the cache.
+     */
+    public synchronized void clear() {
+        characters.clear();
+    }
+
+    /**
+     * Gets the amount of characters currently cached.
+     *
+     * @return The size of the cache
+     */
+    public synchronized int size() {
+        return characters.size();
+    }
+
+    /**
+     * Gets the amount of reads that found a cached character.
+     *
+     * @return The cache hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the amount of reads that did not find a cached character.
+     *
+     * @return The cache misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the amount of characters removed from the cache for being expired or least recently used.
+     *
+     * @return The cache evictions
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "size=" + characters.size() + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions;
+    }
+
+    /**
+     * A character and the time it was cached.
+     */
+    private class CachedCharacter {
+
+        private final Character character;
+        private final long created = System.currentTimeMillis();
+
+        /**
+         * Creates a new cached character.
+         *
+         * @param character The character
+         */
+        private CachedCharacter(Character character) {
+            this.character = character;
+        }
+
+        /**
+         * Checks if the character has been cached for too long.
+         *
+         * @return {@code true} if the character has expired
+         */
+        private boolean isExpired() {
+            return System.currentTimeMillis() - created > expiry;
+        }
+
+    }
+
+}
@@ -27,7 +27,8 @@ import java.util.Map;
 import java.util.Set;
 
 /**
- * Perks a fallout character can select, one per tier.
+ * Perks a fallout character can select, one per tier.<br>
+ * A character's perks are kept as a bitmask with one bit per perk ordinal.
  *
  * @author Austin Payne
  */
@@ -63,10 +64,14 @@ public enum Perk {
     TELEPATHY(5, "The Master's Legacy", "The work of the master lives on", "through you, gain telepathy.", "See full guide"),
     SPIRIT_FORM(5, "Undying Will", "You refuse the embrace of", "death and become a spirit.", "See full guide");
 
+    private static final Perk[] PERKS = values();
+    private static final long[] TIER_MASKS = new long[6];
     private static final Map<Integer, Set<Perk>> tiers;
     private static final List<String> perkNames;
     private final String name;
     private final String[] description;
+    private final int[] traitBonuses = new int[Trait.values().length];
+    private final int[] skillBonuses = new int[Skill.values().length];
     private int tier;
 
     Perk(int tier, String name, String... description) {
@@ -102,6 +107,71 @@ public enum Perk {
         return description;
     }
 
+    /**
+     * Gets the bonus the perk gives to rolls of a certain trait.
+     *
+     * @param trait The trait
+     * @return The perk's roll bonus for the trait
+     */
+    public int getBonus(Trait trait) {
+        return traitBonuses[trait.ordinal()];
+    }
+
+    /**
+     * Gets the bonus the perk gives to rolls of a certain skill.
+     *
+     * @param skill The skill
+     * @return The perk's roll bonus for the skill
+     */
+    public int getBonus(Skill skill) {
+        return skillBonuses[skill.ordinal()];
+    }
+
+    /**
+     * Gets the bit of the perk in a perk bitmask.
+     *
+     * @return The perk's bit
+     */
+    public long getMask() {
+        return 1L << ordinal();
+    }
+
+    /**
+     * Gets the bits of every perk of a certain tier.
+     *
+     * @param tier The tier
+     * @return The tier's perk bitmask, or 0 if there is no such tier
+     */
+    public static long getTierMask(int tier) {
+        return tier > 0 && tier < TIER_MASKS.length ? TIER_MASKS[tier] : 0;
+    }
+
+    /**
+     * Gets the perk of a certain tier in a perk bitmask.
+     *
+     * @param perks The perk bitmask
+     * @param tier  The tier
+     * @return The first perk of the tier in the bitmask, or {@code null} if it has none
+     */
+    public static Perk getPerk(long perks, int tier) {
+        long bits = perks & getTierMask(tier);
+        return bits == 0 ? null : PERKS[Long.numberOfTrailingZeros(bits)];
+    }
+
+    /**
+     * Gets the perks in a perk bitmask.
+     *
+     * @param perks The perk bitmask
+     * @return The perks, in perk order
+     */
+    public static List<Perk> getPerks(long perks) {
+        List<Perk> list = new ArrayList<>(Long.bitCount(perks));
+        for (long bits = perks & (-1L >>> (64 - PERKS.length)); bits != 0; bits &= bits - 1) {
+            list.add(PERKS[Long.numberOfTrailingZeros(bits)]);
+        }
+        return list;
+    }
+
     /**
      * Gets a perk from its name.
      *
@@ -144,8 +214,21 @@ public enum Perk {
         perkNames = new ArrayList<>();
         for (Perk perk : Perk.class.getEnumConstants()) {
             tiers.get(perk.getTier()).add(perk);
+            TIER_MASKS[perk.getTier()] |= perk.getMask();
             perkNames.add(perk.getName());
         }
+
+        // Roll bonuses that depend on the situation, such as Eagle Eye and Intense Training outside of combat
+        // or Shadow's daytime and nighttime bonuses, are left to the game master
+        INCREASED_SURVIVAL.skillBonuses[Skill.FIRST_AID.ordinal()] = 1;
+        INCREASED_SURVIVAL.skillBonuses[Skill.LOGICAL_THINKING.ordinal()] = 1;
+        INCREASED_ENDURANCE.traitBonuses[Trait.ENDURANCE.ordinal()] = 1;
+        INCREASED_AIM.skillBonuses[Skill.CONVENTIONAL_GUNS.ordinal()] = 1;
+        INCREASED_LOGIC.skillBonuses[Skill.LOGICAL_THINKING.ordinal()] = 3;
+        INCREASED_CUNNING.skillBonuses[Skill.LOCKPICKING.ordinal()] = 2;
+        INCREASED_CUNNING.skillBonuses[Skill.SPEECH.ordinal()] = 2;
+        INCREASED_HEAL.skillBonuses[Skill.FIRST_AID.ordinal()] = 2;
+        INCREASED_HEAL.skillBonuses[Skill.SURGERY.ordinal()] = 2;
     }
 
 }
@@ -20,7 +20,6 @@ package ninja.amp.fallout.character;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Races a fallout character can select.
@@ -34,6 +33,7 @@ public enum Race {
     VAULT_DWELLER("Vault Dweller", new Special(1, 1, 1, 1, 1, 1, 1), new Special(10, 10, 10, 10, 10, 10, 10)),
     DEITY("Deity", new Special(1, 1, 1, 1, 1, 1, 1), new Special(-1, -1, -1, -1, -1, -1, -1));
 
+    private static final Trait[] TRAITS = Trait.values();
     private static final List<String> raceNames;
     private final String name;
     private final Special min;
@@ -81,41 +81,45 @@ public enum Race {
      * @return {@code true} if the SPECIAL is valid
      */
     public boolean isValid(Special special) {
+        // Every trait is read from one snapshot of the SPECIAL
+        return isValid(special.getPacked());
+    }
+
+    /**
+     * Checks if a certain packed SPECIAL is valid for the race.
+     *
+     * @param traits The packed SPECIAL, as returned by {@link Special#getPacked()}
+     * @return {@code true} if the SPECIAL is valid
+     * @see Race#isValid(Special)
+     */
+    public boolean isValid(long traits) {
+        long minTraits = min.getPacked();
+        long maxTraits = max.getPacked();
         int total = 0;
-        for (Integer value : special.getTraits().values()) {
+        int atMax = 0;
+        for (Trait trait : TRAITS) {
+            int value = Special.get(traits, trait);
             total += value;
-        }
 
-        // These conditions don't apply to the deity race
-        if (this != DEITY) {
-            // Check to see if the total is 40
-            if (total > 40) {
+            // Check to see if the trait is less than the min
+            if (value < Special.get(minTraits, trait)) {
                 return false;
             }
 
-            // Check to see if any traits are greater than the max or that multiple are max
-            int maxTraits = 0;
-            for (Map.Entry<Trait, Integer> entry : special.getTraits().entrySet()) {
-                if (entry.getValue() > max.get(entry.getKey())) {
+            // These conditions don't apply to the deity race
+            if (this != DEITY) {
+                // Check to see if the trait is greater than the max or that multiple are max
+                int maxValue = Special.get(maxTraits, trait);
+                if (value > maxValue) {
+                    return false;
+                } else if (value == maxValue && ++atMax > 2) {
                     return false;
-                } else if (entry.getValue() == max.get(entry.getKey())) {
-                    if (maxTraits > 1) {
-                        return false;
-                    } else {
-                        maxTraits++;
-                    }
                 }
             }
         }
 
-        // Check to see if any traits are less than the min
-        for (Map.Entry<Trait, Integer> entry : special.getTraits().entrySet()) {
-            if (entry.getValue() < min.get(entry.getKey())) {
-                return false;
-            }
-        }
-
-        return true;
+        // Check to see if the total is 40
+        return this == DEITY || total <= 40;
     }
 
     /**
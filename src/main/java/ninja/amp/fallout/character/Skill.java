@@ -20,9 +20,11 @@ package ninja.amp.fallout.character;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.function.ObjIntConsumer;
 
 /**
- * Skills each fallout character has and may level up over time.
+ * Skills each fallout character has and may level up over time.<br>
+ * A character's skill levels are packed into a single long, 4 bits per skill ordinal, and read with {@link Skill#getLevel(long)}.
  *
  * @author Austin Payne
  */
@@ -42,6 +44,7 @@ public enum Skill {
     SPEECH("Speech", Trait.CHARISMA),
     LOGICAL_THINKING("LogicalThinking", Trait.INTELLIGENCE);
 
+    private static final Skill[] SKILLS = values();
     private static final List<String> skillNames;
     private final String name;
     private final Trait[] affected;
@@ -61,6 +64,54 @@ public enum Skill {
         return name;
     }
 
+    /**
+     * Gets the level of the skill from packed skill levels.
+     *
+     * @param levels The packed skill levels
+     * @return The skill's level
+     */
+    public int getLevel(long levels) {
+        return (int) (levels >>> (ordinal() * 4)) & 0xF;
+    }
+
+    /**
+     * Changes the level of the skill in packed skill levels.
+     *
+     * @param levels The packed skill levels
+     * @param level  The skill's new level, between 0 and 15
+     * @return The packed skill levels with the new level
+     */
+    public long withLevel(long levels, int level) {
+        int shift = ordinal() * 4;
+        return (levels & ~(0xFL << shift)) | ((level & 0xFL) << shift);
+    }
+
+    /**
+     * Gets the total of all packed skill levels.
+     *
+     * @param levels The packed skill levels
+     * @return The total level
+     */
+    public static int getTotalLevel(long levels) {
+        int total = 0;
+        for (Skill skill : SKILLS) {
+            total += skill.getLevel(levels);
+        }
+        return total;
+    }
+
+    /**
+     * Performs an action for each skill and its level in packed skill levels, in skill order.
+     *
+     * @param levels The packed skill levels
+     * @param action The action, given each skill and its level
+     */
+    public static void forEachLevel(long levels, ObjIntConsumer<Skill> action) {
+        for (Skill skill : SKILLS) {
+            action.accept(skill, skill.getLevel(levels));
+        }
+    }
+
     /**
      * Gets the roll modifier of the skill for a given SPECIAL.
      *
@@ -68,9 +119,19 @@ public enum Skill {
      * @return The skill's roll modifier for the given SPECIAL
      */
     public int getRollModifier(Special special) {
+        return getRollModifier(special.getPacked());
+    }
+
+    /**
+     * Gets the roll modifier of the skill for a given packed SPECIAL.
+     *
+     * @param special The packed SPECIAL, as returned by {@link Special#getPacked()}
+     * @return The skill's roll modifier for the given SPECIAL
+     */
+    public int getRollModifier(long special) {
         int average = 0;
         for (Trait trait : affected) {
-            average += special.get(trait);
+            average += Special.get(special, trait);
         }
         average = (average + affected.length - 1) / affected.length;
         return average;
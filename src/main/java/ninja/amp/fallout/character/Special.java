@@ -18,26 +18,41 @@
  */
 package ninja.amp.fallout.character;
 
-import java.util.HashMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A container for traits and their values.<br>
- * Referred to as a SPECIAL, an acronym for the traits contained.
+ * Referred to as a SPECIAL, an acronym for the traits contained.<br>
+ * The values are packed into a single long, one signed byte per trait ordinal, so the whole SPECIAL can be read
+ * and replaced atomically and reading a value never allocates.
  *
  * @author Austin Payne
  */
 public class Special {
 
-    private Map<Trait, Integer> traits = new HashMap<>();
+    private static final Trait[] TRAITS = Trait.values();
+
+    private final AtomicLong packed = new AtomicLong();
+    private Map<Trait, Integer> traits;
 
     /**
-     * Creates a new SPECIAL from a map of traits and values.
+     * Creates a new SPECIAL from a map of traits and values.<br>
+     * Traits missing from the map have a value of 0.
      *
      * @param traits The map of traits and values
      */
     public Special(Map<Trait, Integer> traits) {
-        this.traits.putAll(traits);
+        long value = 0;
+        for (Map.Entry<Trait, Integer> trait : traits.entrySet()) {
+            value = with(value, trait.getKey(), trait.getValue());
+        }
+        packed.set(value);
     }
 
     /**
@@ -46,7 +61,16 @@ public class Special {
      * @param special The existing SPECIAL
      */
     public Special(Special special) {
-        this(special.getTraits());
+        packed.set(special.getPacked());
+    }
+
+    /**
+     * Creates a new SPECIAL from packed values.
+     *
+     * @param packed The packed values, as returned by {@link Special#getPacked()}
+     */
+    public Special(long packed) {
+        this.packed.set(packed);
     }
 
     /**
@@ -61,13 +85,14 @@ public class Special {
      * @param luck         The luck value
      */
     public Special(int strength, int perception, int endurance, int charisma, int intelligence, int agility, int luck) {
-        traits.put(Trait.STRENGTH, strength);
-        traits.put(Trait.PERCEPTION, perception);
-        traits.put(Trait.ENDURANCE, endurance);
-        traits.put(Trait.CHARISMA, charisma);
-        traits.put(Trait.INTELLIGENCE, intelligence);
-        traits.put(Trait.AGILITY, agility);
-        traits.put(Trait.LUCK, luck);
+        long value = with(0, Trait.STRENGTH, strength);
+        value = with(value, Trait.PERCEPTION, perception);
+        value = with(value, Trait.ENDURANCE, endurance);
+        value = with(value, Trait.CHARISMA, charisma);
+        value = with(value, Trait.INTELLIGENCE, intelligence);
+        value = with(value, Trait.AGILITY, agility);
+        value = with(value, Trait.LUCK, luck);
+        packed.set(value);
     }
 
     /**
@@ -77,7 +102,7 @@ public class Special {
      * @return The trait's value
      */
     public int get(Trait trait) {
-        return traits.get(trait);
+        return get(packed.get(), trait);
     }
 
     /**
@@ -87,7 +112,10 @@ public class Special {
      * @param value The value
      */
     public void set(Trait trait, int value) {
-        traits.put(trait, value);
+        long current;
+        do {
+            current = packed.get();
+        } while (!packed.compareAndSet(current, with(current, trait, value)));
     }
 
     /**
@@ -96,17 +124,40 @@ public class Special {
      * @param special The SPECIAL whose values to copy
      */
     public void set(Special special) {
-        for (Trait trait : special.getTraits().keySet()) {
-            traits.put(trait, special.get(trait));
-        }
+        packed.set(special.getPacked());
+    }
+
+    /**
+     * Gets every value of the SPECIAL at once, packed into a long.<br>
+     * Values are read from the packed form with {@link Special#get(long, Trait)}.
+     *
+     * @return The packed SPECIAL
+     */
+    public long getPacked() {
+        return packed.get();
+    }
+
+    /**
+     * Replaces every value of the SPECIAL at once, if the SPECIAL has not changed since it was read.
+     *
+     * @param expected The packed SPECIAL that was read
+     * @param updated  The new packed SPECIAL
+     * @return {@code true} if the SPECIAL was replaced
+     */
+    public boolean compareAndSet(long expected, long updated) {
+        return packed.compareAndSet(expected, updated);
     }
 
     /**
-     * Gets the SPECIAL's traits and values.
+     * Gets the SPECIAL's traits and values.<br>
+     * The map is a read-only view of the SPECIAL, built the first time it is requested.
      *
      * @return The traits and their values
      */
     public Map<Trait, Integer> getTraits() {
+        if (traits == null) {
+            traits = new TraitView();
+        }
         return traits;
     }
 
@@ -116,22 +167,99 @@ public class Special {
      * @return The total value of the SPECIAL
      */
     public int getTotal() {
+        long value = packed.get();
         int total = 0;
-        for (Map.Entry<Trait, Integer> trait : traits.entrySet()) {
-            total += trait.getValue();
+        for (Trait trait : TRAITS) {
+            total += get(value, trait);
         }
         return total;
     }
 
+    /**
+     * Gets a trait's value from a packed SPECIAL.
+     *
+     * @param packed The packed SPECIAL
+     * @param trait  The trait
+     * @return The trait's value
+     */
+    public static int get(long packed, Trait trait) {
+        return (byte) (packed >>> (trait.ordinal() * 8));
+    }
+
+    /**
+     * Changes a trait's value in a packed SPECIAL.
+     *
+     * @param packed The packed SPECIAL
+     * @param trait  The trait
+     * @param value  The trait's new value, between -128 and 127
+     * @return The packed SPECIAL with the new value
+     */
+    public static long with(long packed, Trait trait, int value) {
+        int shift = trait.ordinal() * 8;
+        return (packed & ~(0xFFL << shift)) | ((value & 0xFFL) << shift);
+    }
+
     @Override
     public String toString() {
-        return "S:" + traits.get(Trait.STRENGTH) +
-                " P:" + traits.get(Trait.PERCEPTION) +
-                " E:" + traits.get(Trait.ENDURANCE) +
-                " C:" + traits.get(Trait.CHARISMA) +
-                " I:" + traits.get(Trait.INTELLIGENCE) +
-                " A:" + traits.get(Trait.AGILITY) +
-                " L:" + traits.get(Trait.LUCK);
+        long value = packed.get();
+        return "S:" + get(value, Trait.STRENGTH) +
+                " P:" + get(value, Trait.PERCEPTION) +
+                " E:" + get(value, Trait.ENDURANCE) +
+                " C:" + get(value, Trait.CHARISMA) +
+                " I:" + get(value, Trait.INTELLIGENCE) +
+                " A:" + get(value, Trait.AGILITY) +
+                " L:" + get(value, Trait.LUCK);
+    }
+
+    /**
+     * A read-only map view of the SPECIAL's current values.
+     */
+    private class TraitView extends AbstractMap<Trait, Integer> {
+
+        private final Set<Map.Entry<Trait, Integer>> entries = new AbstractSet<Map.Entry<Trait, Integer>>() {
+            @Override
+            public Iterator<Map.Entry<Trait, Integer>> iterator() {
+                long value = packed.get();
+                return new Iterator<Map.Entry<Trait, Integer>>() {
+                    private int index = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index < TRAITS.length;
+                    }
+
+                    @Override
+                    public Map.Entry<Trait, Integer> next() {
+                        if (index >= TRAITS.length) {
+                            throw new NoSuchElementException();
+                        }
+                        Trait trait = TRAITS[index++];
+                        return new SimpleImmutableEntry<>(trait, Special.get(value, trait));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return TRAITS.length;
+            }
+        };
+
+        @Override
+        public Set<Map.Entry<Trait, Integer>> entrySet() {
+            return entries;
+        }
+
+        @Override
+        public Integer get(Object key) {
+            return key instanceof Trait ? Special.this.get((Trait) key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof Trait;
+        }
+
     }
 
 }
@@ -0,0 +1,108 @@
+/*
+ * This file is part of Fallout.
+ *
+ * Copyright (c) 2013-2017 <http://github.com/ampayne2/Fallout//>
+ *
+ * Fallout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fallout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Fallout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ninja.amp.fallout.character.storage;
+
+import ninja.amp.fallout.character.Character;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+/**
+ * Persistent storage of characters and of which player owns which character.<br>
+ * Character names are case insensitive. Implementations must be safe to use from any thread.
+ *
+ * @author Austin Payne
+ */
+public interface CharacterStore {
+
+    /**
+     * Reads a character from the store.
+     *
+     * @param characterName The character's name
+     * @return The character
+     * @throws Exception If the character is missing or formatted incorrectly
+     */
+    Character load(String characterName) throws Exception;
+
+    /**
+     * Reads the stored data of a group of characters in one pass, without decoding it.<br>
+     * The returned decoders no longer touch the store, so they can be run in parallel on any thread.
+     *
+     * @param characterNames The names of the characters
+     * @return A decoder for each character that exists, mapped by the character's lowercase name
+     */
+    Map<String, Callable<Character>> read(Collection<String> characterNames);
+
+    /**
+     * Writes characters to the store, replacing any previously stored versions.<br>
+     * The owner of each character is updated to match the character. A character that could not be written
+     * keeps its changed fields, so they are written the next time it is saved.
+     *
+     * @param characters The characters to save
+     * @return The characters that could not be written
+     */
+    Set<Character> save(Collection<Character> characters);
+
+    /**
+     * Removes characters and their owners from the store.
+     *
+     * @param characterNames The names of the characters to delete
+     * @return The names of the characters that could not be deleted
+     */
+    Set<String> delete(Collection<String> characterNames);
+
+    /**
+     * Checks if a character exists in the store.
+     *
+     * @param characterName The character's name
+     * @return {@code true} if the character exists
+     */
+    boolean exists(String characterName);
+
+    /**
+     * Gets the names of all of the characters in the store.
+     *
+     * @return The lowercase names of the characters
+     */
+    Set<String> getCharacterNames();
+
+    /**
+     * Gets the name of the character owned by a player.
+     *
+     * @param ownerId The owner's UUID
+     * @return The character's name, or {@code null} if the player does not own a character
+     */
+    String getCharacterName(UUID ownerId);
+
+    /**
+     * Gets every player who owns a character and the name of their character.
+     *
+     * @return The names of the owned characters, mapped by their owner's UUID
+     */
+    Map<UUID, String> getOwners();
+
+    /**
+     * Releases any resources held by the store.
+     */
+    void close();
+
+}
@@ -0,0 +1,205 @@
+/*
+ * This file is part of Fallout.
+ *
+ * Copyright (c) 2013-2017 <http://github.com/ampayne2/Fallout//>
+ *
+ * Fallout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fallout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Fallout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ninja.amp.fallout.character.storage;
+
+import ninja.amp.fallout.Fallout;
+import ninja.amp.fallout.character.Character;
+import ninja.amp.fallout.config.FOConfig;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+
+/**
+ * Stores each character in its own file in the characters folder, named after the character's name in lowercase.<br>
+ * The names of the stored characters are indexed from the folder once, so checking if a character exists never reads a file.<br>
+ * Owners are kept in the player config.
+ *
+ * @author Austin Payne
+ */
+public class ShardedCharacterStore implements CharacterStore {
+
+    private static final String EXTENSION = ".yml";
+
+    private final Fallout plugin;
+    private final File folder;
+    private final Set<String> index = new HashSet<>();
+    private final YamlOwnerIndex owners;
+
+    /**
+     * Creates a new sharded character store, indexing the characters already in the characters folder.
+     *
+     * @param plugin The fallout plugin instance
+     */
+    public ShardedCharacterStore(Fallout plugin) {
+        this.plugin = plugin;
+        this.folder = new File(plugin.getDataFolder(), "characters");
+        this.owners = new YamlOwnerIndex(plugin.getConfigManager().getConfigAccessor(FOConfig.PLAYER));
+
+        if (!folder.exists() && !folder.mkdirs()) {
+            plugin.getLogger().severe("Could not create the characters folder " + folder);
+        }
+        File[] files = folder.listFiles((dir, name) -> name.endsWith(EXTENSION));
+        if (files != null) {
+            for (File file : files) {
+                index.add(file.getName().substring(0, file.getName().length() - EXTENSION.length()).toLowerCase());
+            }
+        }
+        plugin.getMessenger().debug("Indexed " + index.size() + " character files");
+    }
+
+    /**
+     * Gets the file of a character.
+     *
+     * @param characterName The character's name
+     * @return The character's file
+     */
+    private File getFile(String characterName) {
+        return new File(folder, characterName.toLowerCase() + EXTENSION);
+    }
+
+    @Override
+    public synchronized Character load(String characterName) throws Exception {
+        // Only indexed names are turned into paths, so arbitrary names can never escape the folder
+        if (!exists(characterName)) {
+            throw new Exception("Character does not exist");
+        }
+        return new Character(YamlConfiguration.loadConfiguration(getFile(characterName)));
+    }
+
+    @Override
+    public synchronized Map<String, Callable<Character>> read(Collection<String> characterNames) {
+        Map<String, Callable<Character>> decoders = new HashMap<>();
+        for (String characterName : characterNames) {
+            if (!exists(characterName)) {
+                continue;
+            }
+            try {
+                String contents = new String(Files.readAllBytes(getFile(characterName).toPath()), StandardCharsets.UTF_8);
+                decoders.put(characterName.toLowerCase(), () -> {
+                    YamlConfiguration config = new YamlConfiguration();
+                    config.loadFromString(contents);
+                    return new Character(config);
+                });
+            } catch (IOException e) {
+                decoders.put(characterName.toLowerCase(), () -> {
+                    throw new Exception("Could not read character file: " + e.getMessage());
+                });
+            }
+        }
+        return decoders;
+    }
+
+    @Override
+    public synchronized Set<Character> save(Collection<Character> characters) {
+        Set<Character> failed = new HashSet<>();
+        Map<File, String> files = new LinkedHashMap<>();
+        Map<File, Character> fileCharacters = new HashMap<>();
+        Map<File, Set<Character.FieldGroup>> fileGroups = new HashMap<>();
+        for (Character character : characters) {
+            // Each file holds a whole character, so a character is rewritten in full but only if any of its fields changed
+            Set<Character.FieldGroup> groups = character.takeDirtyGroups();
+            if (groups.isEmpty()) {
+                continue;
+            }
+            try {
+                YamlConfiguration config = new YamlConfiguration();
+                character.save(config);
+                File file = getFile(character.getCharacterName());
+                files.put(file, config.saveToString());
+                fileCharacters.put(file, character);
+                fileGroups.put(file, groups);
+            } catch (Exception e) {
+                character.restoreDirtyGroups(groups);
+                failed.add(character);
+                plugin.getLogger().log(Level.SEVERE, "Could not save character " + character.getCharacterName(), e);
+            }
+        }
+
+        // Every file in the batch is written atomically and shares one sync of the characters folder
+        Set<File> written = plugin.getConfigManager().getFileWriter().writeNow(files);
+        for (File file : files.keySet()) {
+            Character character = fileCharacters.get(file);
+            if (written.contains(file)) {
+                index.add(character.getCharacterName().toLowerCase());
+                owners.update(character);
+            } else {
+                character.restoreDirtyGroups(fileGroups.get(file));
+                failed.add(character);
+            }
+        }
+        owners.save();
+        return failed;
+    }
+
+    @Override
+    public synchronized Set<String> delete(Collection<String> characterNames) {
+        Set<String> failed = new HashSet<>();
+        for (String characterName : characterNames) {
+            File file = getFile(characterName);
+            if (file.exists() && !file.delete()) {
+                // The character stays indexed so that it is still found until the delete succeeds
+                plugin.getLogger().severe("Could not delete character file " + file);
+                failed.add(characterName);
+                continue;
+            }
+            index.remove(characterName.toLowerCase());
+            owners.remove(characterName);
+        }
+        owners.save();
+        return failed;
+    }
+
+    @Override
+    public synchronized boolean exists(String characterName) {
+        return index.contains(characterName.toLowerCase());
+    }
+
+    @Override
+    public synchronized Set<String> getCharacterNames() {
+        return new LinkedHashSet<>(index);
+    }
+
+    @Override
+    public synchronized String getCharacterName(UUID ownerId) {
+        return owners.getCharacterName(ownerId);
+    }
+
+    @Override
+    public synchronized Map<UUID, String> getOwners() {
+        return owners.getOwners();
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
@@ -0,0 +1,327 @@
+/*
+ * This file is part of Fallout.
+ *
+ * Copyright (c) 2013-2017 <http://github.com/ampayne2/Fallout//>
+ *
+ * Fallout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fallout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Fallout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ninja.amp.fallout.character.storage;
+
+import ninja.amp.fallout.Fallout;
+import ninja.amp.fallout.character.Character;
+import ninja.amp.fallout.character.CharacterCodec;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+
+/**
+ * Stores characters in an embedded SQLite database file in the plugin's data folder.<br>
+ * Characters are keyed by their lowercase name and indexed by their owner's UUID.<br>
+ * Each field of a character is stored in its own row, encoded by the {@link CharacterCodec},
+ * so saving a character only writes the fields that changed since it was last saved.
+ *
+ * @author Austin Payne
+ */
+public class SqlCharacterStore implements CharacterStore {
+
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS characters (name VARCHAR(20) PRIMARY KEY NOT NULL, owner_id CHAR(36))";
+    private static final String CREATE_FIELDS_TABLE = "CREATE TABLE IF NOT EXISTS character_fields (name VARCHAR(20) NOT NULL, tag INTEGER NOT NULL, data BLOB NOT NULL, PRIMARY KEY (name, tag))";
+    private static final String CREATE_OWNER_INDEX = "CREATE INDEX IF NOT EXISTS characters_owner_id ON characters (owner_id)";
+    private static final String SELECT_FIELDS = "SELECT tag, data FROM character_fields WHERE name = ? ORDER BY tag";
+    private static final String SELECT_EXISTS = "SELECT 1 FROM characters WHERE name = ?";
+    private static final String SELECT_NAMES = "SELECT name FROM characters";
+    private static final String SELECT_OWNERS = "SELECT owner_id, name FROM characters WHERE owner_id IS NOT NULL";
+    private static final String SELECT_BY_OWNER = "SELECT name FROM characters WHERE owner_id = ?";
+    private static final String UPSERT = "INSERT OR REPLACE INTO characters (name, owner_id) VALUES (?, ?)";
+    private static final String UPSERT_FIELD = "INSERT OR REPLACE INTO character_fields (name, tag, data) VALUES (?, ?, ?)";
+    private static final String DELETE = "DELETE FROM characters WHERE name = ?";
+    private static final String DELETE_FIELD = "DELETE FROM character_fields WHERE name = ? AND tag = ?";
+    private static final String DELETE_FIELDS = "DELETE FROM character_fields WHERE name = ?";
+    private static final int SCHEMA_VERSION = 1;
+
+    private final Fallout plugin;
+    private final Connection connection;
+
+    /**
+     * Creates a new sql character store, opening or creating the database file.
+     *
+     * @param plugin The fallout plugin instance
+     * @throws SQLException If the database could not be opened or was written with an unsupported schema version
+     */
+    public SqlCharacterStore(Fallout plugin) throws SQLException {
+        this.plugin = plugin;
+
+        try {
+            Class.forName("org.sqlite.JDBC");
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("SQLite driver is not available", e);
+        }
+        connection = DriverManager.getConnection("jdbc:sqlite:" + new File(plugin.getDataFolder(), "characters.db").getAbsolutePath());
+
+        try (Statement statement = connection.createStatement()) {
+            int version;
+            try (ResultSet result = statement.executeQuery("PRAGMA user_version")) {
+                version = result.next() ? result.getInt(1) : 0;
+            }
+            if (version == 0) {
+                // New database
+                statement.executeUpdate(CREATE_TABLE);
+                statement.executeUpdate(CREATE_FIELDS_TABLE);
+                statement.executeUpdate(CREATE_OWNER_INDEX);
+                statement.executeUpdate("PRAGMA user_version = " + SCHEMA_VERSION);
+            } else if (version != SCHEMA_VERSION) {
+                throw new SQLException("Character database has schema version " + version + ", but only version " + SCHEMA_VERSION + " is supported");
+            }
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized Character load(String characterName) throws Exception {
+        Map<Integer, byte[]> fields = readFields(characterName);
+        if (fields.isEmpty()) {
+            throw new Exception("Character does not exist");
+        }
+        return CharacterCodec.decodeFields(fields);
+    }
+
+    @Override
+    public synchronized Map<String, Callable<Character>> read(Collection<String> characterNames) {
+        Map<String, Callable<Character>> decoders = new HashMap<>();
+        try {
+            for (String characterName : characterNames) {
+                Map<Integer, byte[]> fields = readFields(characterName);
+                if (!fields.isEmpty()) {
+                    decoders.put(characterName.toLowerCase(), () -> CharacterCodec.decodeFields(fields));
+                }
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not read " + characterNames.size() + " characters", e);
+        }
+        return decoders;
+    }
+
+    /**
+     * Reads the encoded fields of a character.
+     *
+     * @param characterName The character's name
+     * @return The encoded value of each field, mapped by the field's tag
+     * @throws SQLException If the database could not be read
+     */
+    private Map<Integer, byte[]> readFields(String characterName) throws SQLException {
+        Map<Integer, byte[]> fields = new LinkedHashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_FIELDS)) {
+            statement.setString(1, characterName.toLowerCase());
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    fields.put(result.getInt(1), result.getBytes(2));
+                }
+            }
+        }
+        return fields;
+    }
+
+    @Override
+    public synchronized Set<Character> save(Collection<Character> characters) {
+        if (characters.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Map<Character, Set<Character.FieldGroup>> saved = new LinkedHashMap<>();
+        try (PreparedStatement upsert = connection.prepareStatement(UPSERT);
+             PreparedStatement upsertField = connection.prepareStatement(UPSERT_FIELD);
+             PreparedStatement deleteField = connection.prepareStatement(DELETE_FIELD)) {
+            connection.setAutoCommit(false);
+            for (Character character : characters) {
+                Set<Character.FieldGroup> groups = character.takeDirtyGroups();
+                if (groups.isEmpty()) {
+                    continue;
+                }
+                saved.put(character, groups);
+                String characterName = character.getCharacterName().toLowerCase();
+
+                // A character that has not been stored yet is written in full
+                Set<Character.FieldGroup> written = groups;
+                if (!groups.contains(Character.FieldGroup.PROFILE) && !exists(characterName)) {
+                    written = EnumSet.allOf(Character.FieldGroup.class);
+                }
+                if (written.contains(Character.FieldGroup.PROFILE) || written.contains(Character.FieldGroup.OWNER)) {
+                    UUID ownerId = character.getOwnerId();
+                    upsert.setString(1, characterName);
+                    upsert.setString(2, ownerId == null ? null : ownerId.toString());
+                    upsert.addBatch();
+                }
+
+                // Fields without a value are removed
+                Map<Integer, byte[]> fields = CharacterCodec.encodeFields(character, written);
+                for (Character.FieldGroup group : written) {
+                    for (int tag : CharacterCodec.getFieldTags(group)) {
+                        byte[] data = fields.get(tag);
+                        if (data == null) {
+                            deleteField.setString(1, characterName);
+                            deleteField.setInt(2, tag);
+                            deleteField.addBatch();
+                        } else {
+                            upsertField.setString(1, characterName);
+                            upsertField.setInt(2, tag);
+                            upsertField.setBytes(3, data);
+                            upsertField.addBatch();
+                        }
+                    }
+                }
+            }
+            upsert.executeBatch();
+            upsertField.executeBatch();
+            deleteField.executeBatch();
+            connection.commit();
+            return Collections.emptySet();
+        } catch (SQLException e) {
+            // The whole batch is rolled back, so none of its characters were written
+            rollback();
+            saved.forEach(Character::restoreDirtyGroups);
+            plugin.getLogger().log(Level.SEVERE, "Could not save " + saved.size() + " characters", e);
+            return new HashSet<>(saved.keySet());
+        } finally {
+            resetAutoCommit();
+        }
+    }
+
+    @Override
+    public synchronized Set<String> delete(Collection<String> characterNames) {
+        if (characterNames.isEmpty()) {
+            return Collections.emptySet();
+        }
+        try (PreparedStatement statement = connection.prepareStatement(DELETE); PreparedStatement deleteFields = connection.prepareStatement(DELETE_FIELDS)) {
+            connection.setAutoCommit(false);
+            for (String characterName : characterNames) {
+                statement.setString(1, characterName.toLowerCase());
+                statement.addBatch();
+                deleteFields.setString(1, characterName.toLowerCase());
+                deleteFields.addBatch();
+            }
+            statement.executeBatch();
+            deleteFields.executeBatch();
+            connection.commit();
+            return Collections.emptySet();
+        } catch (SQLException e) {
+            rollback();
+            plugin.getLogger().log(Level.SEVERE, "Could not delete " + characterNames.size() + " characters", e);
+            return new HashSet<>(characterNames);
+        } finally {
+            resetAutoCommit();
+        }
+    }
+
+    @Override
+    public synchronized boolean exists(String characterName) {
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_EXISTS)) {
+            statement.setString(1, characterName.toLowerCase());
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next();
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not check if character " + characterName + " exists", e);
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized Set<String> getCharacterNames() {
+        Set<String> names = new LinkedHashSet<>();
+        try (Statement statement = connection.createStatement(); ResultSet result = statement.executeQuery(SELECT_NAMES)) {
+            while (result.next()) {
+                names.add(result.getString(1));
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not list characters", e);
+        }
+        return names;
+    }
+
+    @Override
+    public synchronized String getCharacterName(UUID ownerId) {
+        try (PreparedStatement statement = connection.prepareStatement(SELECT_BY_OWNER)) {
+            statement.setString(1, ownerId.toString());
+            try (ResultSet result = statement.executeQuery()) {
+                return result.next() ? result.getString(1) : null;
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not find the character of " + ownerId, e);
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized Map<UUID, String> getOwners() {
+        Map<UUID, String> owners = new HashMap<>();
+        try (Statement statement = connection.createStatement(); ResultSet result = statement.executeQuery(SELECT_OWNERS)) {
+            while (result.next()) {
+                owners.put(UUID.fromString(result.getString(1)), result.getString(2));
+            }
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.SEVERE, "Could not list character owners", e);
+        }
+        return owners;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not close the character database", e);
+        }
+    }
+
+    /**
+     * Rolls back the current transaction after a failed batch.
+     */
+    private void rollback() {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not roll back the character database", e);
+        }
+    }
+
+    /**
+     * Returns the connection to auto commit mode after a batch.
+     */
+    private void resetAutoCommit() {
+        try {
+            connection.setAutoCommit(true);
+        } catch (SQLException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not reset the character database connection", e);
+        }
+    }
+
+}
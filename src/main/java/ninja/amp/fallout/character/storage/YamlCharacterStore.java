@@ -0,0 +1,241 @@
+/*
+ * This file is part of Fallout.
+ *
+ * Copyright (c) 2013-2017 <http://github.com/ampayne2/Fallout//>
+ *
+ * Fallout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fallout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Fallout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ninja.amp.fallout.character.storage;
+
+import ninja.amp.fallout.Fallout;
+import ninja.amp.fallout.character.Character;
+import ninja.amp.fallout.config.ConfigAccessor;
+import ninja.amp.fallout.config.FOConfig;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+
+/**
+ * Stores every character in the character config and their owners in the player config.
+ *
+ * @author Austin Payne
+ */
+public class YamlCharacterStore implements CharacterStore {
+
+    private final Fallout plugin;
+    private final ConfigAccessor characterConfig;
+    private final YamlOwnerIndex owners;
+
+    /**
+     * Creates a new yaml character store.
+     *
+     * @param plugin The fallout plugin instance
+     */
+    public YamlCharacterStore(Fallout plugin) {
+        this.plugin = plugin;
+        this.characterConfig = plugin.getConfigManager().getConfigAccessor(FOConfig.CHARACTER);
+        this.owners = new YamlOwnerIndex(plugin.getConfigManager().getConfigAccessor(FOConfig.PLAYER));
+    }
+
+    @Override
+    public synchronized Character load(String characterName) throws Exception {
+        synchronized (characterConfig) {
+            ConfigurationSection section = characterConfig.getConfig().getConfigurationSection(characterName.toLowerCase());
+            if (section == null) {
+                throw new Exception("Character does not exist");
+            }
+            return new Character(section);
+        }
+    }
+
+    @Override
+    public synchronized Map<String, Callable<Character>> read(Collection<String> characterNames) {
+        Map<String, Callable<Character>> decoders = new HashMap<>();
+        synchronized (characterConfig) {
+            FileConfiguration config = characterConfig.getConfig();
+            for (String characterName : characterNames) {
+                String key = characterName.toLowerCase();
+                ConfigurationSection section = config.getConfigurationSection(key);
+                if (section == null) {
+                    continue;
+                }
+                // Saves update sections in place, so they are decoded while holding the config
+                try {
+                    Character character = new Character(section);
+                    decoders.put(key, () -> character);
+                } catch (Exception e) {
+                    decoders.put(key, () -> {
+                        throw e;
+                    });
+                }
+            }
+        }
+        return decoders;
+    }
+
+    @Override
+    public synchronized Set<Character> save(Collection<Character> characters) {
+        Set<Character> failed = new HashSet<>();
+        synchronized (characterConfig) {
+            FileConfiguration config = characterConfig.getConfig();
+            boolean changed = false;
+            for (Character character : characters) {
+                Set<Character.FieldGroup> groups = character.takeDirtyGroups();
+                if (groups.isEmpty()) {
+                    continue;
+                }
+                String key = character.getCharacterName().toLowerCase();
+                try {
+                    // Only the changed fields of a stored character are written
+                    ConfigurationSection section = config.getConfigurationSection(key);
+                    if (section == null) {
+                        character.save(config.createSection(key));
+                        owners.update(character);
+                    } else {
+                        character.save(section, groups);
+                        if (groups.contains(Character.FieldGroup.OWNER)) {
+                            owners.update(character);
+                        }
+                    }
+                    changed = true;
+                } catch (Exception e) {
+                    character.restoreDirtyGroups(groups);
+                    failed.add(character);
+                    plugin.getLogger().log(Level.SEVERE, "Could not save character " + character.getCharacterName(), e);
+                }
+            }
+            if (changed) {
+                characterConfig.saveConfig();
+            }
+        }
+        owners.save();
+        return failed;
+    }
+
+    @Override
+    public synchronized Set<String> delete(Collection<String> characterNames) {
+        synchronized (characterConfig) {
+            FileConfiguration config = characterConfig.getConfig();
+            for (String characterName : characterNames) {
+                config.set(characterName.toLowerCase(), null);
+                owners.remove(characterName);
+            }
+            characterConfig.saveConfig();
+        }
+        owners.save();
+        return Collections.emptySet();
+    }
+
+    @Override
+    public synchronized boolean exists(String characterName) {
+        synchronized (characterConfig) {
+            return characterConfig.getConfig().contains(characterName.toLowerCase());
+        }
+    }
+
+    @Override
+    public synchronized Set<String> getCharacterNames() {
+        synchronized (characterConfig) {
+            return new LinkedHashSet<>(characterConfig.getConfig().getKeys(false));
+        }
+    }
+
+    @Override
+    public synchronized String getCharacterName(UUID ownerId) {
+        return owners.getCharacterName(ownerId);
+    }
+
+    @Override
+    public synchronized Map<UUID, String> getOwners() {
+        return owners.getOwners();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Moves every character in the character config into another store.<br>
+     * A copy of the character config is kept before the migrated characters are removed from it,
+     * characters that could not be read or written to the other store are left in place.
+     *
+     * @param plugin The fallout plugin instance
+     * @param store  The store to move the characters to
+     */
+    public static void migrate(Fallout plugin, CharacterStore store) {
+        ConfigAccessor characterConfig = plugin.getConfigManager().getConfigAccessor(FOConfig.CHARACTER);
+        synchronized (characterConfig) {
+            FileConfiguration config = characterConfig.getConfig();
+            Set<String> keys = config.getKeys(false);
+            if (keys.isEmpty()) {
+                return;
+            }
+
+            try {
+                Files.copy(characterConfig.getConfigFile().toPath(), characterConfig.getConfigFile().toPath().resolveSibling(characterConfig.getConfigFile().getName() + ".bak"), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Could not back up " + characterConfig.getConfigFile() + ", characters were not migrated", e);
+                return;
+            }
+
+            List<Character> characters = new ArrayList<>();
+            List<String> migrated = new ArrayList<>();
+            for (String key : keys) {
+                if (store.exists(key)) {
+                    // Characters already in the store are newer than the old config
+                    migrated.add(key);
+                    continue;
+                }
+                try {
+                    Character character = new Character(config.getConfigurationSection(key));
+                    character.markDirty();
+                    characters.add(character);
+                    migrated.add(key);
+                } catch (Exception e) {
+                    plugin.getLogger().warning("Could not migrate character " + key + ". " + e.getMessage());
+                }
+            }
+            // Characters the store could not write are left in place to be migrated again on the next startup
+            Set<Character> failed = store.save(characters);
+            for (Character character : failed) {
+                migrated.removeIf(key -> key.equalsIgnoreCase(character.getCharacterName()));
+            }
+
+            for (String key : migrated) {
+                config.set(key, null);
+            }
+            characterConfig.saveConfig();
+            plugin.getLogger().info("Migrated " + (characters.size() - failed.size()) + " characters out of " + characterConfig.getConfigFile().getName());
+            if (!failed.isEmpty()) {
+                plugin.getLogger().warning(failed.size() + " characters could not be written to the character store and were left in " + characterConfig.getConfigFile().getName());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * This file is part of Fallout.
+ *
+ * Copyright (c) 2013-2017 <http://github.com/ampayne2/Fallout//>
+ *
+ * Fallout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fallout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Fallout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ninja.amp.fallout.character.storage;
+
+import ninja.amp.fallout.character.Character;
+import ninja.amp.fallout.config.ConfigAccessor;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keeps the player config, which maps owners to the names of their characters, in sync with saved characters.<br>
+ * The previous owner of each character is remembered so that abandoned characters can be removed from the config.<br>
+ * Not thread safe, the owning store must synchronize access.
+ *
+ * @author Austin Payne
+ */
+class YamlOwnerIndex {
+
+    private final ConfigAccessor playerConfig;
+    private final Map<String, UUID> ownersByCharacter = new HashMap<>();
+    private boolean changed = false;
+
+    /**
+     * Creates a new owner index from the player config.
+     *
+     * @param playerConfig The player config
+     */
+    YamlOwnerIndex(ConfigAccessor playerConfig) {
+        this.playerConfig = playerConfig;
+
+        synchronized (playerConfig) {
+            FileConfiguration config = playerConfig.getConfig();
+            for (String key : config.getKeys(false)) {
+                try {
+                    ownersByCharacter.put(config.getString(key).toLowerCase(), UUID.fromString(key));
+                } catch (IllegalArgumentException | NullPointerException ignored) {
+                    // Not an owner mapping
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the name of the character owned by a player.
+     *
+     * @param ownerId The owner's UUID
+     * @return The character's name, or {@code null} if the player does not own a character
+     */
+    String getCharacterName(UUID ownerId) {
+        synchronized (playerConfig) {
+            return playerConfig.getConfig().getString(ownerId.toString());
+        }
+    }
+
+    /**
+     * Gets every player who owns a character and the name of their character.
+     *
+     * @return The names of the owned characters, mapped by their owner's UUID
+     */
+    Map<UUID, String> getOwners() {
+        Map<UUID, String> owners = new HashMap<>();
+        synchronized (playerConfig) {
+            FileConfiguration config = playerConfig.getConfig();
+            for (Map.Entry<String, UUID> owner : ownersByCharacter.entrySet()) {
+                String characterName = config.getString(owner.getValue().toString());
+                owners.put(owner.getValue(), characterName == null ? owner.getKey() : characterName);
+            }
+        }
+        return owners;
+    }
+
+    /**
+     * Updates the owner of a character to match the character.
+     *
+     * @param character The character
+     */
+    void update(Character character) {
+        String key = character.getCharacterName().toLowerCase();
+        UUID previousOwner = ownersByCharacter.get(key);
+        UUID owner = character.getOwnerId();
+        if (owner == null ? previousOwner == null : owner.equals(previousOwner)) {
+            return;
+        }
+
+        synchronized (playerConfig) {
+            FileConfiguration config = playerConfig.getConfig();
+            if (previousOwner != null && key.equalsIgnoreCase(config.getString(previousOwner.toString()))) {
+                config.set(previousOwner.toString(), null);
+            }
+            if (owner != null) {
+                config.set(owner.toString(), character.getCharacterName());
+                ownersByCharacter.put(key, owner);
+            } else {
+                ownersByCharacter.remove(key);
+            }
+        }
+        changed = true;
+    }
+
+    /**
+     * Removes the owner of a deleted character.
+     *
+     * @param characterName The character's name
+     */
+    void remove(String characterName) {
+        UUID previousOwner = ownersByCharacter.remove(characterName.toLowerCase());
+        if (previousOwner != null) {
+            synchronized (playerConfig) {
+                FileConfiguration config = playerConfig.getConfig();
+                if (characterName.equalsIgnoreCase(config.getString(previousOwner.toString()))) {
+                    config.set(previousOwner.toString(), null);
+                }
+            }
+            changed = true;
+        }
+    }
+
+    /**
+     * Saves the player config if any owners have changed.
+     */
+    void save() {
+        if (changed) {
+            playerConfig.saveConfig();
+            changed = false;
+        }
+    }
+
+}
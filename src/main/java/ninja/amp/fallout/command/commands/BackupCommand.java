@@ -0,0 +1,86 @@
+/*
+ * This file is part of Fallout.
+ *
+ * Copyright (c) 2013-2017 <http://github.com/ampayne2/Fallout//>
+ *
+ * Fallout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fallout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Fallout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ninja.amp.fallout.command.commands;
+
+import ninja.amp.fallout.FalloutCore;
+import ninja.amp.fallout.backup.BackupManager;
+import ninja.amp.fallout.command.Command;
+import ninja.amp.fallout.message.FOMessage;
+import ninja.amp.fallout.message.Messenger;
+import org.bukkit.command.CommandSender;
+import org.bukkit.permissions.Permission;
+import org.bukkit.permissions.PermissionDefault;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A command that takes, lists and restores backups of the characters and configs.
+ *
+ * @author Austin Payne
+ */
+public class BackupCommand extends Command {
+
+    public BackupCommand(FalloutCore fallout) {
+        super(fallout, "backup");
+        setDescription("Backs up or restores the characters and configs.");
+        setCommandUsage("/fo backup [list|restore <backup>]");
+        setPermission(new Permission("fallout.backup", PermissionDefault.OP));
+        setArgumentRange(0, 2);
+        setPlayerOnly(false);
+    }
+
+    @Override
+    public void execute(String command, CommandSender sender, List<String> args) {
+        Messenger messenger = fallout.getMessenger();
+        BackupManager backupManager = fallout.getBackupManager();
+
+        if (args.isEmpty()) {
+            backupManager.backup(sender);
+            return;
+        }
+        switch (args.get(0).toLowerCase()) {
+            case "list":
+                messenger.sendMessage(sender, FOMessage.BACKUP_LIST, String.join(", ", backupManager.getBackups()));
+                break;
+            case "restore":
+                if (args.size() == 2) {
+                    backupManager.restore(sender, args.get(1));
+                } else {
+                    messenger.sendErrorMessage(sender, FOMessage.COMMAND_USAGE, "/fo backup restore <backup>");
+                }
+                break;
+            default:
+                messenger.sendErrorMessage(sender, FOMessage.COMMAND_USAGE, getCommandUsage());
+        }
+    }
+
+    @Override
+    public List<String> tabComplete(List<String> args) {
+        switch (args.size()) {
+            case 1:
+                return tabCompletions(args.get(0), Arrays.asList("list", "restore"));
+            case 2:
+                return args.get(0).equalsIgnoreCase("restore") ? tabCompletions(args.get(1), fallout.getBackupManager().getBackups()) : EMPTY_LIST;
+            default:
+                return EMPTY_LIST;
+        }
+    }
+
+}
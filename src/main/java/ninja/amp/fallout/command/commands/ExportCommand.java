@@ -0,0 +1,50 @@
+/*
+ * This file is part of Fallout.
+ *
+ * Copyright (c) 2013-2017 <http://github.com/ampayne2/Fallout//>
+ *
+ * Fallout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fallout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Fallout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ninja.amp.fallout.command.commands;
+
+import ninja.amp.fallout.FalloutCore;
+import ninja.amp.fallout.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.permissions.Permission;
+import org.bukkit.permissions.PermissionDefault;
+
+import java.util.List;
+
+/**
+ * A command that exports every character to a file.
+ *
+ * @author Austin Payne
+ */
+public class ExportCommand extends Command {
+
+    public ExportCommand(FalloutCore fallout) {
+        super(fallout, "export");
+        setDescription("Exports every character to a file.");
+        setCommandUsage("/fo export [file]");
+        setPermission(new Permission("fallout.export", PermissionDefault.OP));
+        setArgumentRange(0, 1);
+        setPlayerOnly(false);
+    }
+
+    @Override
+    public void execute(String command, CommandSender sender, List<String> args) {
+        fallout.getTransferManager().exportCharacters(sender, args.isEmpty() ? null : args.get(0));
+    }
+
+}
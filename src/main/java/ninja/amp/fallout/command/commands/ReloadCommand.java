@@ -21,7 +21,6 @@ package ninja.amp.fallout.command.commands;
 import ninja.amp.fallout.FalloutCore;
 import ninja.amp.fallout.command.Command;
 import ninja.amp.fallout.message.FOMessage;
-import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
 import org.bukkit.permissions.Permission;
 import org.bukkit.permissions.PermissionDefault;
@@ -29,7 +28,7 @@ import org.bukkit.permissions.PermissionDefault;
 import java.util.List;
 
 /**
- * A command that reloads the plugin.
+ * A command that reloads the plugin's configs without restarting it.
  *
  * @author Austin Payne
  */
@@ -45,9 +44,18 @@ public class ReloadCommand extends Command {
 
     @Override
     public void execute(String command, CommandSender sender, List<String> args) {
-        Bukkit.getPluginManager().disablePlugin(getPlugin());
-        getPlugin().getPluginLoader().enablePlugin(getPlugin());
-        fallout.getMessenger().sendMessage(sender, FOMessage.RELOAD, getPlugin().getName());
+        long start = System.nanoTime();
+        List<String> restartRequired;
+        try {
+            restartRequired = fallout.reload();
+        } catch (Exception e) {
+            fallout.getMessenger().sendErrorMessage(sender, FOMessage.ERROR_RELOAD, getPlugin().getName(), e.getMessage());
+            return;
+        }
+        fallout.getMessenger().sendMessage(sender, FOMessage.RELOAD_TIME, getPlugin().getName(), (System.nanoTime() - start) / 1000000);
+        if (!restartRequired.isEmpty()) {
+            fallout.getMessenger().sendMessage(sender, FOMessage.RELOAD_RESTARTREQUIRED, String.join(", ", restartRequired));
+        }
     }
 
 }
@@ -19,8 +19,8 @@
 package ninja.amp.fallout.command.commands;
 
 import ninja.amp.fallout.FalloutCore;
-import ninja.amp.fallout.character.Character;
 import ninja.amp.fallout.character.CharacterManager;
+import ninja.amp.fallout.character.CharacterSnapshot;
 import ninja.amp.fallout.command.Command;
 import ninja.amp.fallout.message.FOMessage;
 import ninja.amp.fallout.message.Messenger;
@@ -54,7 +54,7 @@ public class Whois extends Command {
         CharacterManager characterManager = fallout.getCharacterManager();
 
         if (characterManager.isLoaded(name)) {
-            Character character = characterManager.getCharacterByName(name);
+            CharacterSnapshot character = characterManager.getCharacterByName(name).getSnapshot();
             messenger.sendMessage(sender, FOMessage.CHARACTER_NAME, character.getCharacterName(), character.getOwnerName());
         } else {
             messenger.sendErrorMessage(sender, FOMessage.CHARACTER_DOESNTEXIST);
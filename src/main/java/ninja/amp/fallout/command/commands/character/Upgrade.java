@@ -20,6 +20,7 @@ package ninja.amp.fallout.command.commands.character;
 
 import ninja.amp.fallout.FalloutCore;
 import ninja.amp.fallout.character.Character;
+import ninja.amp.fallout.character.CharacterSnapshot;
 import ninja.amp.fallout.character.CharacterManager;
 import ninja.amp.fallout.command.Command;
 import ninja.amp.fallout.message.FOMessage;
@@ -54,18 +55,16 @@ public class Upgrade extends Command {
         CharacterManager characterManager = fallout.getCharacterManager();
         if (characterManager.isLoaded(name)) {
             Character character = characterManager.getCharacterByName(name);
-            if (character.getLevel() > 4) {
+            CharacterSnapshot snapshot = character.getSnapshot();
+            if (snapshot.getLevel() > 4) {
                 // Character is already max level
                 messenger.sendErrorMessage(sender, FOMessage.CHARACTER_MAXLEVEL, character.getCharacterName());
+            } else if (character.compareAndUpdate(snapshot.getVersion(), Character::increaseLevel)) {
+                messenger.sendMessage(sender, FOMessage.CHARACTER_UPGRADE, character.getCharacterName(), snapshot.getLevel() + 1);
+                messenger.sendMessage(character, FOMessage.CHARACTER_UPGRADED, snapshot.getLevel() + 1);
             } else {
-                // Upgrade level
-                character.increaseLevel();
-
-                // Save character to update level information
-                characterManager.saveCharacter(character);
-
-                messenger.sendMessage(sender, FOMessage.CHARACTER_UPGRADE, character.getCharacterName(), character.getLevel());
-                messenger.sendMessage(character, FOMessage.CHARACTER_UPGRADED, character.getLevel());
+                // Character was changed since its level was read
+                messenger.sendErrorMessage(sender, FOMessage.CHARACTER_CHANGED, character.getCharacterName());
             }
         } else {
             messenger.sendErrorMessage(sender, FOMessage.CHARACTER_DOESNTEXIST);
@@ -58,16 +58,15 @@ public class Teach extends Command {
         if (characterManager.isLoaded(name)) {
             Character character = characterManager.getCharacterByName(name);
             if (Information.informationExists(information)) {
-                information = Information.getInformationPiece(information);
-                if (character.hasKnowledge(information)) {
-                    messenger.sendErrorMessage(sender, FOMessage.INFORMATION_ALREADYTAUGHT, character.getCharacterName(), information);
+                String piece = Information.getInformationPiece(information);
+                long version = character.getVersion();
+                if (character.hasKnowledge(piece)) {
+                    messenger.sendErrorMessage(sender, FOMessage.INFORMATION_ALREADYTAUGHT, character.getCharacterName(), piece);
+                } else if (character.compareAndUpdate(version, updated -> updated.addKnowledge(piece))) {
+                    messenger.sendMessage(sender, FOMessage.INFORMATION_TEACH, character.getCharacterName(), piece);
+                    messenger.sendMessage(character, FOMessage.INFORMATION_LEARN, piece);
                 } else {
-                    character.addKnowledge(information);
-
-                    characterManager.saveCharacter(character);
-
-                    messenger.sendMessage(sender, FOMessage.INFORMATION_TEACH, character.getCharacterName(), information);
-                    messenger.sendMessage(character, FOMessage.INFORMATION_LEARN, information);
+                    messenger.sendErrorMessage(sender, FOMessage.CHARACTER_CHANGED, character.getCharacterName());
                 }
             } else {
                 messenger.sendErrorMessage(sender, FOMessage.INFORMATION_DOESNTEXIST, information);
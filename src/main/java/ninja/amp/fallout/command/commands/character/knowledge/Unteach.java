@@ -58,16 +58,15 @@ public class Unteach extends Command {
         if (characterManager.isLoaded(name)) {
             Character character = characterManager.getCharacterByName(name);
             if (Information.informationExists(information)) {
-                information = Information.getInformationPiece(information);
-                if (character.hasKnowledge(information)) {
-                    character.removeKnowledge(information);
-
-                    characterManager.saveCharacter(character);
-
-                    messenger.sendMessage(sender, FOMessage.INFORMATION_UNTEACH, character.getCharacterName(), information);
-                    messenger.sendMessage(character, FOMessage.INFORMATION_FORGET, information);
+                String piece = Information.getInformationPiece(information);
+                long version = character.getVersion();
+                if (!character.hasKnowledge(piece)) {
+                    messenger.sendErrorMessage(sender, FOMessage.INFORMATION_NOTTAUGHT, character.getCharacterName(), piece);
+                } else if (character.compareAndUpdate(version, updated -> updated.removeKnowledge(piece))) {
+                    messenger.sendMessage(sender, FOMessage.INFORMATION_UNTEACH, character.getCharacterName(), piece);
+                    messenger.sendMessage(character, FOMessage.INFORMATION_FORGET, piece);
                 } else {
-                    messenger.sendErrorMessage(sender, FOMessage.INFORMATION_NOTTAUGHT, character.getCharacterName(), information);
+                    messenger.sendErrorMessage(sender, FOMessage.CHARACTER_CHANGED, character.getCharacterName());
                 }
             } else {
                 messenger.sendErrorMessage(sender, FOMessage.INFORMATION_DOESNTEXIST, information);
@@ -20,6 +20,7 @@ package ninja.amp.fallout.command.commands.character.perk;
 
 import ninja.amp.fallout.FalloutCore;
 import ninja.amp.fallout.character.Character;
+import ninja.amp.fallout.character.CharacterSnapshot;
 import ninja.amp.fallout.character.Perk;
 import ninja.amp.fallout.menu.ItemMenu;
 import ninja.amp.fallout.menu.events.ItemClickEvent;
@@ -37,6 +38,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 /**
  * An inventory menu used for selecting your character's perks.
@@ -47,6 +49,7 @@ public class PerksMenu extends ItemMenu {
 
     private FalloutCore fallout;
     private Map<Integer, EnumOption<Perk>> tiers = new HashMap<>();
+    private Map<UUID, Long> openedVersions = new HashMap<>();
 
     @SuppressWarnings("deprecation")
     public PerksMenu(FalloutCore fallout) {
@@ -105,11 +108,12 @@ public class PerksMenu extends ItemMenu {
 
     @Override
     public void open(Player player) {
-        Character character = fallout.getCharacterManager().getCharacterByOwner(player.getUniqueId());
+        CharacterSnapshot character = fallout.getCharacterManager().getCharacterByOwner(player.getUniqueId()).getSnapshot();
         for (Perk perk : character.getPerks()) {
             EnumOption<Perk> perkOption = tiers.get(perk.getTier());
             perkOption.setSelected(player, perkOption.getOption(perk));
         }
+        openedVersions.put(player.getUniqueId(), character.getVersion());
 
         super.open(player);
     }
@@ -141,6 +145,7 @@ public class PerksMenu extends ItemMenu {
         for (EnumOption<Perk> tier : tiers.values()) {
             tier.removeSelected(player);
         }
+        openedVersions.remove(player.getUniqueId());
     }
 
     /**
@@ -157,13 +162,7 @@ public class PerksMenu extends ItemMenu {
             Character character = event.getCharacter();
 
             int tier = getEnum().getTier();
-            boolean tierSelected = false;
-            for (Perk perk : character.getPerks()) {
-                if (perk.getTier() == tier) {
-                    tierSelected = true;
-                    break;
-                }
-            }
+            boolean tierSelected = (character.getPerkMask() & Perk.getTierMask(tier)) != 0;
 
             if (!tierSelected && character.getLevel() >= tier) {
                 super.onItemClick(event);
@@ -189,17 +188,20 @@ public class PerksMenu extends ItemMenu {
             Player player = event.getPlayer();
             Character character = event.getCharacter();
 
+            // Every selected perk is added at once, unless the character was changed since the menu was opened
             List<Perk> perks = getPerks(player);
-            for (Perk perk : perks) {
-                if (!character.hasPerk(perk)) {
-                    character.addPerk(perk);
-                    if (perk == Perk.ANTI_RADIATION) {
-                        character.updateRadiationResistance();
+            boolean confirmed = character.compareAndUpdate(openedVersions.get(player.getUniqueId()), updated -> {
+                for (Perk perk : perks) {
+                    if (!updated.hasPerk(perk)) {
+                        updated.addPerk(perk);
                     }
                 }
+            });
+            if (confirmed) {
+                fallout.getMessenger().sendMessage(player, FOMessage.PERKS_CONFIRM);
+            } else {
+                fallout.getMessenger().sendErrorMessage(player, FOMessage.PERKS_CHANGED);
             }
-            fallout.getCharacterManager().saveCharacter(character);
-            fallout.getMessenger().sendMessage(player, FOMessage.PERKS_CONFIRM);
 
             resetOptions(player);
 
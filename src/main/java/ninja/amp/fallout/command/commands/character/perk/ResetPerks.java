@@ -73,14 +73,18 @@ public class ResetPerks extends Command {
                 return;
             }
         }
+        long version = character.getVersion();
 
-        for (Perk perk : character.getPerks()) {
-            character.removePerk(perk);
-            if (perk == Perk.ANTI_RADIATION) {
-                character.updateRadiationResistance();
+        // Every perk is removed at once, unless the character was changed since it was read
+        boolean reset = character.compareAndUpdate(version, updated -> {
+            for (Perk perk : updated.getPerks()) {
+                updated.removePerk(perk);
             }
+        });
+        if (!reset) {
+            messenger.sendErrorMessage(player, FOMessage.CHARACTER_CHANGED, character.getCharacterName());
+            return;
         }
-        characterManager.saveCharacter(character);
         messenger.sendMessage(player, FOMessage.PERKS_RESET, character.getCharacterName());
         messenger.sendMessage(character, FOMessage.PERKS_RESETTED);
     }
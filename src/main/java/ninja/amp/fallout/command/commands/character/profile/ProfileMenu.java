@@ -20,6 +20,7 @@ package ninja.amp.fallout.command.commands.character.profile;
 
 import ninja.amp.fallout.FalloutCore;
 import ninja.amp.fallout.character.Character;
+import ninja.amp.fallout.character.CharacterSnapshot;
 import ninja.amp.fallout.character.Information;
 import ninja.amp.fallout.character.Perk;
 import ninja.amp.fallout.character.Skill;
@@ -54,7 +55,7 @@ public class ProfileMenu extends ItemMenu {
 
         setItem(1, new CharacterInfoItem("Gender", new ItemStack(Material.BREAD)) {
             @Override
-            public ItemStack getIcon(Character character) {
+            public ItemStack getIcon(CharacterSnapshot character) {
                 switch (character.getGender()) {
                     case MALE:
                         return new ItemStack(Material.RAW_FISH);
@@ -66,14 +67,14 @@ public class ProfileMenu extends ItemMenu {
             }
 
             @Override
-            public void addInfo(Character character, List<String> lore) {
+            public void addInfo(CharacterSnapshot character, List<String> lore) {
                 String s = character.getGender().name().toLowerCase();
                 lore.add(java.lang.Character.toString(s.charAt(0)).toUpperCase() + s.substring(1));
             }
         });
         setItem(2, new CharacterInfoItem("Race", new ItemStack(Material.LEATHER_HELMET)) {
             @Override
-            public ItemStack getIcon(Character character) {
+            public ItemStack getIcon(CharacterSnapshot character) {
                 switch (character.getRace()) {
                     case WASTELANDER:
                     case VAULT_DWELLER:
@@ -90,14 +91,14 @@ public class ProfileMenu extends ItemMenu {
             }
 
             @Override
-            public void addInfo(Character character, List<String> lore) {
+            public void addInfo(CharacterSnapshot character, List<String> lore) {
                 lore.add(character.getRace().getName());
             }
         });
         setItem(3, new CharacterInfoItem("Alignment", new ItemStack(Material.ENDER_STONE)) {
             @Override
             @SuppressWarnings("deprecation")
-            public ItemStack getIcon(Character character) {
+            public ItemStack getIcon(CharacterSnapshot character) {
                 switch (character.getAlignment()) {
                     case LAWFUL_GOOD:
                         return new ItemStack(Material.DIAMOND_BLOCK);
@@ -123,7 +124,7 @@ public class ProfileMenu extends ItemMenu {
             }
 
             @Override
-            public void addInfo(Character character, List<String> lore) {
+            public void addInfo(CharacterSnapshot character, List<String> lore) {
                 lore.add(character.getAlignment().getName());
             }
         });
@@ -143,7 +144,7 @@ public class ProfileMenu extends ItemMenu {
             int[] ageRanges = new int[] { 75, 60, 45, 35, 31, 27, 23, 19, 15, 6};
 
             @Override
-            public ItemStack getIcon(Character character) {
+            public ItemStack getIcon(CharacterSnapshot character) {
                 int age = character.getAge();
 
                 for (int i = 0; i < 10; ++i) {
@@ -156,19 +157,19 @@ public class ProfileMenu extends ItemMenu {
             }
 
             @Override
-            public void addInfo(Character character, List<String> lore) {
+            public void addInfo(CharacterSnapshot character, List<String> lore) {
                 lore.add(String.valueOf(character.getAge()));
             }
         });
         setItem(11, new CharacterInfoItem("Weight", new ItemStack(Material.DIAMOND_CHESTPLATE)) {
             @Override
-            public void addInfo(Character character, List<String> lore) {
+            public void addInfo(CharacterSnapshot character, List<String> lore) {
                 lore.add(character.getWeight() + " lbs.");
             }
         });
         setItem(12, new CharacterInfoItem("Height", new ItemStack(Material.DIAMOND_LEGGINGS)) {
             @Override
-            public void addInfo(Character character, List<String> lore) {
+            public void addInfo(CharacterSnapshot character, List<String> lore) {
                 lore.add(character.getHeight() + "in.");
             }
         });
@@ -179,7 +180,7 @@ public class ProfileMenu extends ItemMenu {
                 ItemStack itemStack = super.getFinalIcon(owner).clone();
                 ItemMeta meta = itemStack.getItemMeta();
 
-                int level = owner.getCharacter().getLevel();
+                int level = owner.getSnapshot().getLevel();
                 itemStack.setAmount(level > 0 ? level : 1);
                 meta.setDisplayName(meta.getDisplayName() + " " + level);
 
@@ -189,7 +190,7 @@ public class ProfileMenu extends ItemMenu {
         });
         setItem(4, new CharacterInfoItem("Faction", new ItemStack(Material.PAINTING)) {
             @Override
-            public void addInfo(Character character, List<String> lore) {
+            public void addInfo(CharacterSnapshot character, List<String> lore) {
                 if (character.getFaction() == null) {
                     lore.add("No Allegiance");
                 } else {
@@ -199,9 +200,10 @@ public class ProfileMenu extends ItemMenu {
         });
         setItem(13, new CharacterInfoItem("Knowledge", new ItemStack(Material.BOOK_AND_QUILL)) {
             @Override
-            public void addInfo(Character character, List<String> lore) {
-                for (String information : Information.getInformationPieces()) {
-                    if (character.hasKnowledge(information)) {
+            public void addInfo(CharacterSnapshot character, List<String> lore) {
+                for (String key : character.getKnowledge()) {
+                    String information = Information.getInformationPiece(key);
+                    if (information != null) {
                         lore.add(information);
                     }
                 }
@@ -268,8 +270,8 @@ public class ProfileMenu extends ItemMenu {
         @Override
         public ItemStack getFinalIcon(Owner owner) {
             List<String> lore = new ArrayList<>(getLore());
-            addInfo(owner.getCharacter(), lore);
-            return setNameAndLore(getIcon(owner.getCharacter()), getDisplayName(), lore);
+            addInfo(owner.getSnapshot(), lore);
+            return setNameAndLore(getIcon(owner.getSnapshot()), getDisplayName(), lore);
         }
 
         /**
@@ -278,7 +280,7 @@ public class ProfileMenu extends ItemMenu {
          * @param character The character
          * @return The item stack
          */
-        public ItemStack getIcon(Character character) {
+        public ItemStack getIcon(CharacterSnapshot character) {
             return getIcon().clone();
         }
 
@@ -288,7 +290,7 @@ public class ProfileMenu extends ItemMenu {
          * @param character The character
          * @param lore The item stack
          */
-        public abstract void addInfo(Character character, List<String> lore);
+        public abstract void addInfo(CharacterSnapshot character, List<String> lore);
 
     }
 
@@ -307,13 +309,7 @@ public class ProfileMenu extends ItemMenu {
 
         @Override
         public ItemStack getFinalIcon(Owner owner) {
-            Perk selected = null;
-            for (Perk perk : owner.getCharacter().getPerks()) {
-                if (perk.getTier() == tier) {
-                    selected = perk;
-                    break;
-                }
-            }
+            Perk selected = owner.getSnapshot().getPerk(tier);
             if (selected == null) {
                 return null;
             } else {
@@ -342,7 +338,7 @@ public class ProfileMenu extends ItemMenu {
         public ItemStack getFinalIcon(Owner owner) {
             ItemStack finalIcon = getIcon().clone();
 
-            int amount = owner.getCharacter().getSpecial().get(trait);
+            int amount = owner.getSnapshot().getTrait(trait);
             finalIcon.setAmount(amount > 0 ? amount : 1);
 
             return finalIcon;
@@ -367,7 +363,7 @@ public class ProfileMenu extends ItemMenu {
         public ItemStack getFinalIcon(Owner owner) {
             ItemStack finalIcon = getIcon().clone();
 
-            int amount = owner.getCharacter().skillLevel(skill);
+            int amount = owner.getSnapshot().skillLevel(skill);
             if (amount > 0) {
                 finalIcon.setAmount(amount);
             } else {
@@ -21,7 +21,6 @@ package ninja.amp.fallout.command.commands.character.skill;
 import ninja.amp.fallout.FalloutCore;
 import ninja.amp.fallout.character.Character;
 import ninja.amp.fallout.character.CharacterManager;
-import ninja.amp.fallout.character.Skill;
 import ninja.amp.fallout.command.Command;
 import ninja.amp.fallout.message.FOMessage;
 import ninja.amp.fallout.message.Messenger;
@@ -73,11 +72,12 @@ public class ResetSkills extends Command {
                 return;
             }
         }
+        long version = character.getVersion();
 
-        for (Skill skill : Skill.class.getEnumConstants()) {
-            character.setSkillLevel(skill, 0);
+        if (!character.compareAndUpdate(version, updated -> updated.setSkillLevels(0))) {
+            messenger.sendErrorMessage(player, FOMessage.CHARACTER_CHANGED, character.getCharacterName());
+            return;
         }
-        characterManager.saveCharacter(character);
         messenger.sendMessage(player, FOMessage.SKILLS_RESET, character.getCharacterName());
         messenger.sendMessage(character, FOMessage.SKILLS_RESETTED);
     }
@@ -20,6 +20,7 @@ package ninja.amp.fallout.command.commands.character.skill;
 
 import ninja.amp.fallout.FalloutCore;
 import ninja.amp.fallout.character.Character;
+import ninja.amp.fallout.character.CharacterSnapshot;
 import ninja.amp.fallout.character.Skill;
 import ninja.amp.fallout.menu.ItemMenu;
 import ninja.amp.fallout.menu.Owner;
@@ -45,7 +46,7 @@ import java.util.UUID;
 public class SkillsMenu extends ItemMenu {
 
     private FalloutCore fallout;
-    private Map<UUID, Map<Skill, Integer>> pendingSkills = new HashMap<>();
+    private Map<UUID, PendingSkills> pendingSkills = new HashMap<>();
 
     @SuppressWarnings("deprecation")
     public SkillsMenu(FalloutCore fallout) {
@@ -81,8 +82,8 @@ public class SkillsMenu extends ItemMenu {
 
     @Override
     public void open(Player player) {
-        Character character = fallout.getCharacterManager().getCharacterByOwner(player.getUniqueId());
-        pendingSkills.put(character.getOwnerId(), character.getSkillLevels());
+        CharacterSnapshot character = fallout.getCharacterManager().getCharacterByOwner(player.getUniqueId()).getSnapshot();
+        pendingSkills.put(character.getOwnerId(), new PendingSkills(character));
 
         super.open(player);
     }
@@ -91,10 +92,10 @@ public class SkillsMenu extends ItemMenu {
      * Gets the pending skill levels of a character.
      *
      * @param ownerId The uuid of the character's owner
-     * @return The character's modified skill levels
+     * @return The character's modified skill levels, packed as read by {@link Skill#getLevel(long)}
      */
-    public Map<Skill, Integer> getPendingSkills(UUID ownerId) {
-        return pendingSkills.get(ownerId);
+    public long getPendingSkills(UUID ownerId) {
+        return pendingSkills.get(ownerId).levels;
     }
 
     /**
@@ -123,8 +124,7 @@ public class SkillsMenu extends ItemMenu {
         public ItemStack getFinalIcon(Player player) {
             ItemStack finalIcon = super.getFinalIcon(player).clone();
 
-            Map<Skill, Integer> skills = getPendingSkills(player.getUniqueId());
-            int amount = skills.get(skill);
+            int amount = skill.getLevel(getPendingSkills(player.getUniqueId()));
             if (amount > 0) {
                 finalIcon.setAmount(amount);
             } else {
@@ -137,16 +137,14 @@ public class SkillsMenu extends ItemMenu {
         @Override
         public void onItemClick(ItemClickEvent event) {
             Character character = event.getCharacter();
-            Map<Skill, Integer> skills = getPendingSkills(character.getOwnerId());
+            PendingSkills skills = pendingSkills.get(character.getOwnerId());
 
             int totalPoints = (character.getLevel() + 1) * 5;
-            int allocatedPoints = 0;
-            for (int i : skills.values()) {
-                allocatedPoints += i;
-            }
+            int allocatedPoints = Skill.getTotalLevel(skills.levels);
 
-            if (totalPoints > allocatedPoints && skills.get(skill) < 5) {
-                skills.put(skill, skills.get(skill) + 1);
+            int level = skill.getLevel(skills.levels);
+            if (totalPoints > allocatedPoints && level < 5) {
+                skills.levels = skill.withLevel(skills.levels, level + 1);
             }
 
             event.setWillUpdate(true);
@@ -175,13 +173,9 @@ public class SkillsMenu extends ItemMenu {
         @Override
         public ItemStack getFinalIcon(Owner owner) {
             Character character = owner.getCharacter();
-            Map<Skill, Integer> skills = getPendingSkills(character.getOwnerId());
 
             int totalPoints = (character.getLevel() + 1) * 5;
-            int allocatedPoints = 0;
-            for (int i : skills.values()) {
-                allocatedPoints += i;
-            }
+            int allocatedPoints = Skill.getTotalLevel(getPendingSkills(character.getOwnerId()));
 
             if (totalPoints > allocatedPoints) {
                 ItemStack finalIcon = super.getFinalIcon(owner).clone();
@@ -212,12 +206,15 @@ public class SkillsMenu extends ItemMenu {
             Player player = event.getPlayer();
             UUID playerId = player.getUniqueId();
             Character character = event.getCharacter();
-            Map<Skill, Integer> skills = getPendingSkills(playerId);
-
-            for (Map.Entry<Skill, Integer> skill : skills.entrySet()) {
-                character.setSkillLevel(skill.getKey(), skill.getValue());
+            PendingSkills skills = pendingSkills.get(playerId);
+
+            // Every skill level is set at once, unless the character was changed since the menu was opened
+            if (!character.compareAndUpdate(skills.version, updated -> updated.setSkillLevels(skills.levels))) {
+                fallout.getMessenger().sendErrorMessage(player, FOMessage.SKILLS_CHANGED);
+                pendingSkills.put(playerId, new PendingSkills(character.getSnapshot()));
+                event.setWillUpdate(true);
+                return;
             }
-            fallout.getCharacterManager().saveCharacter(character);
             fallout.getMessenger().sendMessage(player, FOMessage.SKILLS_CONFIRM);
 
             resetPendingSkills(playerId);
@@ -250,4 +247,24 @@ public class SkillsMenu extends ItemMenu {
 
     }
 
+    /**
+     * The skill levels of a character being allocated in the menu, and the character's version when the menu was opened.
+     */
+    private static class PendingSkills {
+
+        private final long version;
+        private long levels;
+
+        /**
+         * Creates new pending skill levels.
+         *
+         * @param character The character's current snapshot
+         */
+        private PendingSkills(CharacterSnapshot character) {
+            this.version = character.getVersion();
+            this.levels = character.getPackedSkillLevels();
+        }
+
+    }
+
 }
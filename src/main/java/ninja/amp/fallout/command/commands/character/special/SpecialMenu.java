@@ -20,6 +20,7 @@ package ninja.amp.fallout.command.commands.character.special;
 
 import ninja.amp.fallout.FalloutCore;
 import ninja.amp.fallout.character.Character;
+import ninja.amp.fallout.character.CharacterSnapshot;
 import ninja.amp.fallout.character.Special;
 import ninja.amp.fallout.character.Trait;
 import ninja.amp.fallout.menu.ItemMenu;
@@ -46,6 +47,7 @@ public class SpecialMenu extends ItemMenu {
 
     private FalloutCore fallout;
     private Map<UUID, Special> pendingSpecials = new HashMap<>();
+    private Map<UUID, Long> openedVersions = new HashMap<>();
 
     public SpecialMenu(FalloutCore fallout) {
         super(ChatColor.AQUA + "SPECIAL Modification", Size.FIVE_LINE, fallout);
@@ -86,8 +88,9 @@ public class SpecialMenu extends ItemMenu {
 
     @Override
     public void open(Player player) {
-        Character character = fallout.getCharacterManager().getCharacterByOwner(player.getUniqueId());
+        CharacterSnapshot character = fallout.getCharacterManager().getCharacterByOwner(player.getUniqueId()).getSnapshot();
         pendingSpecials.put(character.getOwnerId(), character.getSpecial());
+        openedVersions.put(character.getOwnerId(), character.getVersion());
 
         super.open(player);
     }
@@ -109,6 +112,7 @@ public class SpecialMenu extends ItemMenu {
      */
     public void resetPendingSpecial(UUID ownerId) {
         pendingSpecials.remove(ownerId);
+        openedVersions.remove(ownerId);
     }
 
     /**
@@ -162,11 +166,9 @@ public class SpecialMenu extends ItemMenu {
         @SuppressWarnings("deprecation")
         public ItemStack getFinalIcon(Owner owner) {
             Character character = owner.getCharacter();
-            Special special = getPendingSpecial(character.getOwnerId());
+            long special = getPendingSpecial(character.getOwnerId()).getPacked();
 
-            special.set(trait, special.get(trait) + 1);
-            boolean valid = character.getRace().isValid(special);
-            special.set(trait, special.get(trait) - 1);
+            boolean valid = character.getRace().isValid(Special.with(special, trait, Special.get(special, trait) + 1));
 
             return valid ? super.getFinalIcon(owner) : disabledIcon;
         }
@@ -176,11 +178,10 @@ public class SpecialMenu extends ItemMenu {
             Character character = event.getCharacter();
             Special special = getPendingSpecial(character.getOwnerId());
 
-            special.set(trait, special.get(trait) + 1);
-            if (character.getRace().isValid(special)) {
+            long current = special.getPacked();
+            long changed = Special.with(current, trait, Special.get(current, trait) + 1);
+            if (character.getRace().isValid(changed) && special.compareAndSet(current, changed)) {
                 event.setWillUpdate(true);
-            } else {
-                special.set(trait, special.get(trait) - 1);
             }
         }
 
@@ -211,11 +212,9 @@ public class SpecialMenu extends ItemMenu {
         @SuppressWarnings("deprecation")
         public ItemStack getFinalIcon(Owner owner) {
             Character character = owner.getCharacter();
-            Special special = getPendingSpecial(character.getOwnerId());
+            long special = getPendingSpecial(character.getOwnerId()).getPacked();
 
-            special.set(trait, special.get(trait) - 1);
-            boolean valid = character.getRace().isValid(special);
-            special.set(trait, special.get(trait) + 1);
+            boolean valid = character.getRace().isValid(Special.with(special, trait, Special.get(special, trait) - 1));
 
             return valid ? super.getFinalIcon(owner) : disabledIcon;
         }
@@ -225,11 +224,10 @@ public class SpecialMenu extends ItemMenu {
             Character character = event.getCharacter();
             Special special = getPendingSpecial(character.getOwnerId());
 
-            special.set(trait, special.get(trait) - 1);
-            if (character.getRace().isValid(special)) {
+            long current = special.getPacked();
+            long changed = Special.with(current, trait, Special.get(current, trait) - 1);
+            if (character.getRace().isValid(changed) && special.compareAndSet(current, changed)) {
                 event.setWillUpdate(true);
-            } else {
-                special.set(trait, special.get(trait) + 1);
             }
         }
 
@@ -253,13 +251,14 @@ public class SpecialMenu extends ItemMenu {
             Character character = event.getCharacter();
             Special special = getPendingSpecial(playerId);
 
-            if (character.getRace().isValid(special)) {
-                character.setSpecial(special);
-                character.updateRadiationResistance();
+            if (!character.getRace().isValid(special)) {
+                fallout.getMessenger().sendErrorMessage(player, FOMessage.SPECIAL_INVALID);
+            } else if (character.compareAndUpdate(openedVersions.get(playerId), updated -> updated.setSpecial(special))) {
                 fallout.getCharacterManager().saveCharacter(character);
                 fallout.getMessenger().sendMessage(player, FOMessage.SPECIAL_SET, character.getCharacterName());
             } else {
-                fallout.getMessenger().sendErrorMessage(player, FOMessage.SPECIAL_INVALID);
+                // The character was changed since the menu was opened
+                fallout.getMessenger().sendErrorMessage(player, FOMessage.SPECIAL_CHANGED);
             }
 
             resetPendingSpecial(playerId);
@@ -20,8 +20,10 @@ package ninja.amp.fallout.command.commands.roll;
 
 import ninja.amp.fallout.Fallout;
 import ninja.amp.fallout.character.Character;
+import ninja.amp.fallout.character.CharacterSnapshot;
 import ninja.amp.fallout.character.Skill;
 import ninja.amp.fallout.character.Trait;
+import ninja.amp.fallout.config.FOSettings;
 import ninja.amp.fallout.message.FOMessage;
 import ninja.amp.fallout.message.Messenger;
 import ninja.amp.fallout.util.ArmorMaterial;
@@ -29,7 +31,6 @@ import ninja.amp.fallout.util.DamageType;
 import ninja.amp.fallout.util.FOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.bukkit.ChatColor;
-import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.entity.Player;
 
 /**
@@ -40,9 +41,7 @@ import org.bukkit.entity.Player;
 public class RollManager {
 
     private Fallout plugin;
-    private int publicDiceLimit;
-    private int privateDiceLimit;
-    private int diceSidesLimit;
+    private volatile FOSettings settings;
 
     /**
      * Creates a new roll manager.
@@ -51,11 +50,16 @@ public class RollManager {
      */
     public RollManager(Fallout plugin) {
         this.plugin = plugin;
+        this.settings = plugin.getSettings();
+    }
 
-        FileConfiguration config = plugin.getConfig();
-        publicDiceLimit = config.getInt("PublicDiceLimit", 15);
-        privateDiceLimit = config.getInt("PrivateDiceLimit", 40);
-        diceSidesLimit = config.getInt("DiceSidesLimit", 99);
+    /**
+     * Swaps in new settings, changing the dice limits.
+     *
+     * @param settings The new settings
+     */
+    public void reload(FOSettings settings) {
+        this.settings = settings;
     }
 
     /**
@@ -67,6 +71,7 @@ public class RollManager {
      */
     public void rollStandard(Player player, Character character, String value, Distance distance) {
         Messenger messenger = plugin.getMessenger();
+        CharacterSnapshot snapshot = character.getSnapshot();
 
         // Parse trait/skill name from modifier if one exists
         String rolling = value;
@@ -91,40 +96,44 @@ public class RollManager {
         // Perform the roll
         Trait trait = Trait.fromName(rolling);
         int finalModifier;
+        int perkBonus;
         if (trait == null) {
             Skill skill = Skill.fromName(rolling);
             if (skill == null) {
                 if (rolling.equalsIgnoreCase("Sniper")) {
+                    // Aimed shot, conventional gun perk bonuses apply
                     rolling = "Sniper";
-                    finalModifier = character.skillLevel(Skill.CONVENTIONAL_GUNS) + character.getSpecial().get(Trait.PERCEPTION) + modifier;
+                    perkBonus = snapshot.getPerkBonus(Skill.CONVENTIONAL_GUNS);
+                    finalModifier = snapshot.skillLevel(Skill.CONVENTIONAL_GUNS) + snapshot.getTrait(Trait.PERCEPTION) + perkBonus + modifier;
                 } else {
                     messenger.sendErrorMessage(player, FOMessage.ROLL_CANTROLL, value);
                     return;
                 }
             } else {
                 rolling = skill.getName();
-                finalModifier = skillModifier(character, skill, modifier);
+                perkBonus = snapshot.getPerkBonus(skill);
+                finalModifier = skillModifier(snapshot, skill, modifier);
             }
         } else {
             rolling = trait.getName();
-            if (trait == Trait.STRENGTH && ArmorMaterial.isWearingFullSet(player)) {
-                ArmorMaterial material = ArmorMaterial.getArmorMaterial(player.getInventory().getHelmet().getType());
-                if (material == ArmorMaterial.DIAMOND) {
-                    modifier += 2;
-                }
+            if (trait == Trait.STRENGTH && character.getArmor() == ArmorMaterial.DIAMOND) {
+                modifier += 2;
             }
-            finalModifier = specialModifier(character, trait, modifier);
+            perkBonus = snapshot.getPerkBonus(trait);
+            finalModifier = specialModifier(snapshot, trait, modifier);
         }
+        // Show the perk bonus along with the modifier given
+        modifier += perkBonus;
         int roll = FOUtils.random(1, 20);
-        int luck = character.getSpecial().get(Trait.LUCK);
+        int luck = snapshot.getTrait(Trait.LUCK);
         FOMessage result = getResult(roll, finalModifier, luck);
         String visualizer = getRollVisualizer(roll, finalModifier, luck);
         switch (distance) {
             case GLOBAL:
-                messenger.sendMessage(plugin.getServer(), FOMessage.ROLL_STANDARD_PUBLIC, character.getCharacterName(), rolling, modifier < 0 ? modifier : "+" + modifier, visualizer, result);
+                messenger.sendMessage(plugin.getServer(), FOMessage.ROLL_STANDARD_PUBLIC, snapshot.getCharacterName(), rolling, modifier < 0 ? modifier : "+" + modifier, visualizer, result);
                 break;
             case LOCAL:
-                messenger.sendMessage(player.getLocation(), FOMessage.ROLL_STANDARD_PUBLIC, character.getCharacterName(), rolling, modifier < 0 ? modifier : "+" + modifier, visualizer, result);
+                messenger.sendMessage(player.getLocation(), FOMessage.ROLL_STANDARD_PUBLIC, snapshot.getCharacterName(), rolling, modifier < 0 ? modifier : "+" + modifier, visualizer, result);
                 break;
             case PRIVATE:
                 messenger.sendMessage(player, FOMessage.ROLL_STANDARD_PRIVATE, rolling, modifier < 0 ? modifier : "+" + modifier, visualizer, result);
@@ -169,8 +178,8 @@ public class RollManager {
             return;
         }
         boolean blocked;
-        if (ArmorMaterial.isWearingFullSet(player)) {
-            ArmorMaterial material = ArmorMaterial.getArmorMaterial(player.getInventory().getHelmet().getType());
+        ArmorMaterial material = character.getArmor();
+        if (material != null) {
             int damage = FOUtils.random(1, 6) + modifier;
             int defenseValue = material.getDefenseValue(damageType);
             blocked = defenseValue > 0 && damage <= defenseValue;
@@ -229,11 +238,12 @@ public class RollManager {
             return;
         }
 
-        if ((distance == Distance.PRIVATE && amount > privateDiceLimit) || (distance != Distance.PRIVATE && amount > publicDiceLimit)) {
+        FOSettings settings = this.settings;
+        if ((distance == Distance.PRIVATE && amount > settings.getPrivateDiceLimit()) || (distance != Distance.PRIVATE && amount > settings.getPublicDiceLimit())) {
             messenger.sendErrorMessage(player, FOMessage.ROLL_DICEAMOUNT);
             return;
         }
-        if (sides > diceSidesLimit) {
+        if (sides > settings.getDiceSidesLimit()) {
             messenger.sendErrorMessage(player, FOMessage.ROLL_DICESIDES);
             return;
         }
@@ -263,28 +273,28 @@ public class RollManager {
 
     /**
      * Gets the final modifier of a SPECIAL roll.<br>
-     * {@code modifier = trait level + initial modifier}
+     * {@code modifier = trait level * 1.5 rounded down + perk bonuses + initial modifier}
      *
      * @param character The character rolling
      * @param trait     The trait being rolled
      * @param modifier  The optional initial modifier
      * @return The final modifier of the SPECIAL roll
      */
-    public int specialModifier(Character character, Trait trait, int modifier) {
-        return (int) (character.getSpecial().get(trait) * 1.5) + modifier;
+    public int specialModifier(CharacterSnapshot character, Trait trait, int modifier) {
+        return character.getRollModifier(trait) + modifier;
     }
 
     /**
      * Gets the modifier of a skill roll.<br>
-     * {@code modifier = skill level - 1 + average level of traits affected rounded up + initial modifier}
+     * {@code modifier = skill level + average level of traits affected rounded up + perk bonuses + initial modifier}
      *
      * @param character The character rolling
      * @param skill     The skill being rolled
      * @param modifier  The optional initial modifier
      * @return The final modifier of the skill roll
      */
-    public int skillModifier(Character character, Skill skill, int modifier) {
-        return character.skillLevel(skill) + skill.getRollModifier(character.getSpecial()) + modifier;
+    public int skillModifier(CharacterSnapshot character, Skill skill, int modifier) {
+        return character.getRollModifier(skill) + modifier;
     }
 
     /**
@@ -0,0 +1,211 @@
+/*
+ * This file is part of Fallout.
+ *
+ * Copyright (c) 2013-2017 <http://github.com/ampayne2/Fallout//>
+ *
+ * Fallout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fallout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Fallout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ninja.amp.fallout.config;
+
+import org.bukkit.plugin.Plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+
+/**
+ * Writes files so that a crash can never leave them partially written.<br>
+ * Contents are written to a temporary file, forced to disk and then atomically moved over the original file.<br>
+ * Writes requested within the sync window are coalesced, so each file is written once per window
+ * and the renames in a folder share a single sync of that folder.
+ *
+ * @author Austin Payne
+ */
+public class AtomicFileWriter {
+
+    private final Plugin plugin;
+    private final long window;
+    private final Object writeLock = new Object();
+    private final Map<File, PendingWrite> pending = new LinkedHashMap<>();
+    private boolean scheduled = false;
+
+    /**
+     * Creates a new atomic file writer.
+     *
+     * @param plugin the plugin whose scheduler runs the writes
+     * @param window the time in ticks writes are collected for before being written, or 0 to write immediately
+     */
+    public AtomicFileWriter(Plugin plugin, long window) {
+        this.plugin = plugin;
+        this.window = window;
+    }
+
+    /**
+     * Writes a file once the current sync window ends.<br>
+     * If the file is written again before then, only the latest contents are written.
+     *
+     * @param file      the file to write
+     * @param contents  the contents of the file
+     * @param onWritten called from the writing thread once the file has been written, may be {@code null}
+     */
+    public void write(File file, String contents, Runnable onWritten) {
+        synchronized (pending) {
+            PendingWrite write = pending.computeIfAbsent(file, f -> new PendingWrite());
+            write.contents = contents;
+            if (onWritten != null) {
+                write.callbacks.add(onWritten);
+            }
+            if (window > 0 && plugin.isEnabled()) {
+                if (!scheduled) {
+                    scheduled = true;
+                    plugin.getServer().getScheduler().runTaskLaterAsynchronously(plugin, this::flush, window);
+                }
+                return;
+            }
+        }
+        // Tasks cannot be scheduled while the plugin is disabling, write right away
+        flush();
+    }
+
+    /**
+     * Writes every pending file.<br>
+     * Files that could not be written stay pending and are retried on the next flush, unless they were written again since.
+     * Safe to call from any thread, only one flush runs at a time.
+     *
+     * @return {@code true} if every pending file was written
+     */
+    public boolean flush() {
+        synchronized (writeLock) {
+            Map<File, PendingWrite> batch;
+            synchronized (pending) {
+                scheduled = false;
+                if (pending.isEmpty()) {
+                    return true;
+                }
+                batch = new LinkedHashMap<>(pending);
+                pending.clear();
+            }
+
+            Map<File, String> contents = new LinkedHashMap<>();
+            batch.forEach((file, write) -> contents.put(file, write.contents));
+            Set<File> written = writeNow(contents);
+
+            for (Map.Entry<File, PendingWrite> write : batch.entrySet()) {
+                if (written.contains(write.getKey())) {
+                    write.getValue().written();
+                } else {
+                    synchronized (pending) {
+                        PendingWrite newer = pending.putIfAbsent(write.getKey(), write.getValue());
+                        if (newer != null) {
+                            newer.callbacks.addAll(write.getValue().callbacks);
+                        }
+                    }
+                }
+            }
+            return written.size() == batch.size();
+        }
+    }
+
+    /**
+     * Immediately and atomically writes a group of files, syncing each folder once after all of its files are moved into place.
+     *
+     * @param files the contents of each file to write
+     * @return the files that were successfully written
+     */
+    public Set<File> writeNow(Map<File, String> files) {
+        Set<File> written = new HashSet<>();
+        Set<Path> folders = new HashSet<>();
+        for (Map.Entry<File, String> file : files.entrySet()) {
+            try {
+                writeFile(file.getKey().toPath(), file.getValue());
+                written.add(file.getKey());
+                folders.add(file.getKey().getAbsoluteFile().toPath().getParent());
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "Could not save " + file.getKey(), e);
+            }
+        }
+        for (Path folder : folders) {
+            syncFolder(folder);
+        }
+        return written;
+    }
+
+    /**
+     * Writes a file to a temporary file, forces it to disk and moves it over the file.
+     *
+     * @param path     the file to write
+     * @param contents the contents of the file
+     * @throws IOException if the file could not be written
+     */
+    private static void writeFile(Path path, String contents) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(contents.getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        try {
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Forces a folder's entries to disk so that renames within it survive a crash.<br>
+     * Not every platform supports syncing a folder, in which case nothing happens.
+     *
+     * @param folder the folder to sync
+     */
+    private static void syncFolder(Path folder) {
+        try (FileChannel channel = FileChannel.open(folder, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * The latest contents of a file waiting to be written, and the callbacks of every write it replaced.
+     */
+    private static class PendingWrite {
+
+        private String contents;
+        private final List<Runnable> callbacks = new ArrayList<>();
+
+        /**
+         * Runs the callbacks of every write of the file.
+         */
+        private void written() {
+            callbacks.forEach(Runnable::run);
+        }
+
+    }
+
+}
@@ -26,10 +26,12 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 /**
- * Used to access, reload, and save a YamlConfiguration file.
+ * Used to access, reload, and save a YamlConfiguration file.<br>
+ * Reloading and saving are synchronized on the accessor, so the config may be saved from outside the main thread.
  *
  * @author Austin Payne
  */
@@ -38,7 +40,11 @@ public class ConfigAccessor {
     private final Plugin plugin;
     private final Config configType;
     private final File configFile;
+    private final AtomicFileWriter fileWriter;
+    private final AtomicInteger pendingWrites = new AtomicInteger();
     private FileConfiguration fileConfiguration;
+    private volatile long lastModified;
+    private volatile boolean stale = false;
 
     /**
      * Creates a new config accessor.
@@ -48,9 +54,22 @@ public class ConfigAccessor {
      * @param parent     the parent file
      */
     public ConfigAccessor(Plugin plugin, Config configType, File parent) {
+        this(plugin, configType, parent, new AtomicFileWriter(plugin, 0));
+    }
+
+    /**
+     * Creates a new config accessor that saves through a shared file writer.
+     *
+     * @param plugin     the plugin instance
+     * @param configType the type of the configuration file
+     * @param parent     the parent file
+     * @param fileWriter the writer used to save the config
+     */
+    public ConfigAccessor(Plugin plugin, Config configType, File parent, AtomicFileWriter fileWriter) {
         this.plugin = plugin;
         this.configType = configType;
         this.configFile = new File(parent, configType.getFileName());
+        this.fileWriter = fileWriter;
     }
 
     /**
@@ -67,8 +86,10 @@ public class ConfigAccessor {
      *
      * @return the config accessor
      */
-    public ConfigAccessor reloadConfig() {
+    public synchronized ConfigAccessor reloadConfig() {
         fileConfiguration = YamlConfiguration.loadConfiguration(configFile);
+        lastModified = configFile.lastModified();
+        stale = false;
 
         InputStream defConfigStream = plugin.getResource(configType.getFileName());
         if (defConfigStream != null) {
@@ -79,33 +100,58 @@ public class ConfigAccessor {
     }
 
     /**
-     * Gets the config.
+     * Gets the config.<br>
+     * The config is only read from disk the first time it is accessed and after it has been invalidated.
      *
      * @return the configuration file
      */
-    public FileConfiguration getConfig() {
-        if (fileConfiguration == null) {
+    public synchronized FileConfiguration getConfig() {
+        if (fileConfiguration == null || stale) {
             reloadConfig();
         }
         return fileConfiguration;
     }
 
     /**
-     * Saves the config to disk.
+     * Marks the config as out of date, causing it to be reloaded from disk the next time it is accessed.
+     */
+    public void invalidate() {
+        stale = true;
+    }
+
+    /**
+     * Checks if the configuration file has been modified on disk since it was last loaded or saved.
+     *
+     * @return {@code true} if the config was modified by something other than this accessor
+     */
+    public synchronized boolean isModifiedExternally() {
+        // Saves that have not been written yet would otherwise look like outside changes
+        return fileConfiguration != null && pendingWrites.get() == 0 && configFile.lastModified() != lastModified;
+    }
+
+    /**
+     * Saves the config to disk.<br>
+     * The config is written atomically by the accessor's file writer, which may delay the write to share a sync with other saves.
      *
      * @return the config accessor
      */
-    public ConfigAccessor saveConfig() {
+    public synchronized ConfigAccessor saveConfig() {
         if (fileConfiguration != null) {
-            try {
-                fileConfiguration.save(configFile);
-            } catch (IOException e) {
-                plugin.getLogger().log(Level.SEVERE, "Could not save config to " + configFile, e);
-            }
+            pendingWrites.incrementAndGet();
+            fileWriter.write(configFile, fileConfiguration.saveToString(), this::written);
         }
         return this;
     }
 
+    /**
+     * Records the modification time of a finished save.<br>
+     * Called from the writing thread, so it must not lock the accessor.
+     */
+    private void written() {
+        lastModified = configFile.lastModified();
+        pendingWrites.decrementAndGet();
+    }
+
     /**
      * Generates the default config if it hasn't already been generated.
      *
@@ -130,6 +176,15 @@ public class ConfigAccessor {
         return this;
     }
 
+    /**
+     * Gets the configuration file.
+     *
+     * @return the file of the config
+     */
+    public File getConfigFile() {
+        return configFile;
+    }
+
     /**
      * Gets the config type.
      *
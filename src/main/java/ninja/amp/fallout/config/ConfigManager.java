@@ -22,12 +22,16 @@ import ninja.amp.fallout.Fallout;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.plugin.Plugin;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
- * Contains custom plugin configs.
+ * Contains custom plugin configs.<br>
+ * Configs are kept in memory once loaded and are only read from disk again when explicitly reloaded
+ * or, if enabled, when the config watcher notices a change made outside of the plugin.
  *
  * @author Austin Payne
  */
@@ -35,6 +39,8 @@ public class ConfigManager {
 
     private final Fallout plugin;
     private final Map<Config, ConfigAccessor> configs = new HashMap<>();
+    private final AtomicFileWriter fileWriter;
+    private ConfigWatcher configWatcher;
 
     /**
      * Creates a new config manager.
@@ -44,11 +50,16 @@ public class ConfigManager {
     public ConfigManager(Fallout plugin) {
         this.plugin = plugin;
 
-        // Save main config
-        plugin.saveDefaultConfig();
+        // Saves made within the sync window are written together
+        fileWriter = new AtomicFileWriter(plugin, plugin.getSettings().getSaveSyncWindow());
 
         // Register custom configs
         registerCustomConfigs(EnumSet.allOf(FOConfig.class), plugin);
+
+        // Watch for configs edited by hand while the server is running
+        if (plugin.getSettings().isWatchConfigs()) {
+            configWatcher = ConfigWatcher.start(plugin, this);
+        }
     }
 
     /**
@@ -68,7 +79,7 @@ public class ConfigManager {
      * @param plugin the plugin containing the default resources for the config
      */
     public void registerCustomConfig(Config config, Plugin plugin) {
-        addConfigAccessor(new ConfigAccessor(plugin, config, this.plugin.getDataFolder()).saveDefaultConfig());
+        addConfigAccessor(new ConfigAccessor(plugin, config, this.plugin.getDataFolder(), fileWriter).saveDefaultConfig());
     }
 
     /**
@@ -87,7 +98,7 @@ public class ConfigManager {
      * @return the config accessor
      */
     public ConfigAccessor getConfigAccessor(Config configType) {
-        return configs.get(configType).reloadConfig();
+        return configs.get(configType);
     }
 
     /**
@@ -97,7 +108,52 @@ public class ConfigManager {
      * @return the configuration file
      */
     public FileConfiguration getConfig(Config configType) {
-        return configs.get(configType).reloadConfig().getConfig();
+        return configs.get(configType).getConfig();
+    }
+
+    /**
+     * Gets all of the registered config accessors.
+     *
+     * @return the config accessors
+     */
+    public Collection<ConfigAccessor> getConfigAccessors() {
+        return Collections.unmodifiableCollection(configs.values());
+    }
+
+    /**
+     * Reloads a certain configuration file from disk.
+     *
+     * @param configType the type of the configuration file
+     */
+    public void reloadConfig(Config configType) {
+        configs.get(configType).reloadConfig();
+    }
+
+    /**
+     * Reloads every configuration file from disk.
+     */
+    public void reloadConfigs() {
+        configs.values().forEach(ConfigAccessor::reloadConfig);
+    }
+
+    /**
+     * Gets the writer used to atomically save the configuration files.
+     *
+     * @return the file writer
+     */
+    public AtomicFileWriter getFileWriter() {
+        return fileWriter;
+    }
+
+    /**
+     * Stops watching the configuration files for changes and writes any saves that are still pending.
+     */
+    public void close() {
+        fileWriter.flush();
+        if (configWatcher != null) {
+            configWatcher.close();
+            configWatcher = null;
+        }
     }
 
 }
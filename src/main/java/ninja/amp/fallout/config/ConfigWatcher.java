@@ -0,0 +1,130 @@
+/*
+ * This file is part of Fallout.
+ *
+ * Copyright (c) 2013-2017 <http://github.com/ampayne2/Fallout//>
+ *
+ * Fallout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fallout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Fallout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ninja.amp.fallout.config;
+
+import ninja.amp.fallout.Fallout;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.logging.Level;
+
+/**
+ * Watches the plugin's data folder and invalidates configs that are changed outside of the plugin.<br>
+ * Invalidated configs are reloaded from disk the next time they are accessed.
+ *
+ * @author Austin Payne
+ */
+public class ConfigWatcher implements Runnable {
+
+    private final Fallout plugin;
+    private final ConfigManager configManager;
+    private final WatchService watchService;
+
+    /**
+     * Creates a new config watcher.
+     *
+     * @param plugin        the fallout plugin instance
+     * @param configManager the config manager containing the watched configs
+     * @param watchService  the watch service the data folder is registered with
+     */
+    private ConfigWatcher(Fallout plugin, ConfigManager configManager, WatchService watchService) {
+        this.plugin = plugin;
+        this.configManager = configManager;
+        this.watchService = watchService;
+    }
+
+    /**
+     * Starts watching the plugin's data folder on a background thread.
+     *
+     * @param plugin        the fallout plugin instance
+     * @param configManager the config manager containing the watched configs
+     * @return the config watcher, or {@code null} if the data folder could not be watched
+     */
+    public static ConfigWatcher start(Fallout plugin, ConfigManager configManager) {
+        try {
+            WatchService watchService = plugin.getDataFolder().toPath().getFileSystem().newWatchService();
+            plugin.getDataFolder().toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+            ConfigWatcher watcher = new ConfigWatcher(plugin, configManager, watchService);
+            Thread thread = new Thread(watcher, "Fallout Config Watcher");
+            thread.setDaemon(true);
+            thread.start();
+            return watcher;
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Could not watch the configs for changes", e);
+            return null;
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // Events were lost, check every config
+                        configManager.getConfigAccessors().forEach(this::checkConfig);
+                    } else {
+                        String fileName = ((Path) event.context()).getFileName().toString();
+                        configManager.getConfigAccessors().stream()
+                                .filter(accessor -> accessor.getConfigFile().getName().equals(fileName))
+                                .forEach(this::checkConfig);
+                    }
+                }
+                if (!key.reset()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Watcher was closed
+        }
+    }
+
+    /**
+     * Invalidates a config if its file no longer matches what was last loaded or saved by the plugin.
+     *
+     * @param accessor the config accessor to check
+     */
+    private void checkConfig(ConfigAccessor accessor) {
+        // Saves made by the plugin itself also trigger events, so only act on outside changes
+        if (accessor.isModifiedExternally()) {
+            accessor.invalidate();
+            if (plugin.getMessenger() != null) {
+                plugin.getMessenger().debug("Detected changes to " + accessor.getConfigFile().getName() + ", it will be reloaded on next access");
+            }
+        }
+    }
+
+    /**
+     * Stops watching the plugin's data folder.
+     */
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+}
@@ -0,0 +1,428 @@
+/*
+ * This file is part of Fallout.
+ *
+ * Copyright (c) 2013-2017 <http://github.com/ampayne2/Fallout//>
+ *
+ * Fallout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fallout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Fallout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ninja.amp.fallout.config;
+
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * An immutable snapshot of the settings in the main config.<br>
+ * Every setting is parsed and validated once when the snapshot is created, so an invalid value is reported
+ * right away instead of when it is first used. A new snapshot is created each time the config is reloaded
+ * and swapped in as a whole, so a reload is never seen half applied. Settings read by the character storage and
+ * config managers when the plugin is enabled only take effect after a restart.
+ *
+ * @author Austin Payne
+ */
+public final class FOSettings {
+
+    /**
+     * The character storage types that can be configured.
+     */
+    public static final List<String> CHARACTER_STORAGE_TYPES = Arrays.asList("single", "sharded", "sqlite");
+
+    private final boolean debug;
+    private final int messageRadius;
+    private final Pattern nameRequirement;
+    private final boolean nicknamePlayers;
+    private final String characterStorage;
+    private final int saveInterval;
+    private final int saveBatchSize;
+    private final int offlineCacheSize;
+    private final int offlineCacheExpiry;
+    private final int journalCompactSize;
+    private final int saveSyncWindow;
+    private final boolean watchConfigs;
+    private final int backupInterval;
+    private final int backupRetention;
+    private final ChatColor primaryColor;
+    private final ChatColor secondaryColor;
+    private final ChatColor highlightColor;
+    private final int publicDiceLimit;
+    private final int privateDiceLimit;
+    private final int diceSidesLimit;
+    private final boolean preventMobsDroppingExp;
+    private final boolean preventCraftingDiamondArmor;
+    private final boolean preventSunlightCombust;
+    private final boolean preventZombieTargetGhoul;
+
+    /**
+     * Creates a settings snapshot, reading it from the main config.<br>
+     * Missing settings are given their default values.
+     *
+     * @param config The main config
+     * @throws Exception If a setting has an invalid value
+     */
+    public FOSettings(FileConfiguration config) throws Exception {
+        debug = getBoolean(config, "Debug", false);
+        messageRadius = getInt(config, "MessageRadius", 30, 0);
+        String nameRequirement = config.getString("NameRequirement");
+        try {
+            this.nameRequirement = nameRequirement == null ? null : Pattern.compile(nameRequirement);
+        } catch (PatternSyntaxException e) {
+            throw new Exception("Invalid NameRequirement: " + e.getDescription());
+        }
+        nicknamePlayers = getBoolean(config, "NicknamePlayers", true);
+        characterStorage = config.getString("CharacterStorage", "single").toLowerCase();
+        if (!CHARACTER_STORAGE_TYPES.contains(characterStorage)) {
+            throw new Exception("Invalid CharacterStorage: must be one of " + CHARACTER_STORAGE_TYPES + ", was " + characterStorage);
+        }
+        saveInterval = getInt(config, "SaveInterval", 100, 1);
+        saveBatchSize = getInt(config, "SaveBatchSize", 50, 1);
+        offlineCacheSize = getInt(config, "OfflineCacheSize", 100, 0);
+        offlineCacheExpiry = getInt(config, "OfflineCacheExpiry", 300, 0);
+        journalCompactSize = getInt(config, "JournalCompactSize", 1024, 1);
+        saveSyncWindow = getInt(config, "SaveSyncWindow", 20, 0);
+        watchConfigs = getBoolean(config, "WatchConfigs", false);
+        backupInterval = getInt(config, "BackupInterval", 60, 0);
+        backupRetention = getInt(config, "BackupRetention", 24, 1);
+        publicDiceLimit = getInt(config, "PublicDiceLimit", 15, 1);
+        privateDiceLimit = getInt(config, "PrivateDiceLimit", 40, 1);
+        diceSidesLimit = getInt(config, "DiceSidesLimit", 99, 1);
+        preventMobsDroppingExp = getBoolean(config, "PreventMobsDroppingExp", false);
+        preventCraftingDiamondArmor = getBoolean(config, "PreventCraftingDiamondArmor", false);
+        preventSunlightCombust = getBoolean(config, "PreventSunlightCombust", false);
+        preventZombieTargetGhoul = getBoolean(config, "PreventZombieTargetGhoul", false);
+        primaryColor = getColor(config, "colors.primary", ChatColor.AQUA);
+        secondaryColor = getColor(config, "colors.secondary", ChatColor.GRAY);
+        highlightColor = getColor(config, "colors.highlights", ChatColor.DARK_GRAY);
+    }
+
+    /**
+     * Gets the settings that are only read when the plugin is enabled and differ from the settings it was enabled with.<br>
+     * Changes to these settings are not applied by a reload.
+     *
+     * @param running The settings the plugin was enabled with
+     * @return The paths of the changed settings that require a restart
+     */
+    public List<String> getRestartRequiredChanges(FOSettings running) {
+        List<String> changes = new ArrayList<>();
+        if (!characterStorage.equals(running.characterStorage)) {
+            changes.add("CharacterStorage");
+        }
+        if (saveInterval != running.saveInterval) {
+            changes.add("SaveInterval");
+        }
+        if (saveBatchSize != running.saveBatchSize) {
+            changes.add("SaveBatchSize");
+        }
+        if (offlineCacheSize != running.offlineCacheSize) {
+            changes.add("OfflineCacheSize");
+        }
+        if (offlineCacheExpiry != running.offlineCacheExpiry) {
+            changes.add("OfflineCacheExpiry");
+        }
+        if (journalCompactSize != running.journalCompactSize) {
+            changes.add("JournalCompactSize");
+        }
+        if (saveSyncWindow != running.saveSyncWindow) {
+            changes.add("SaveSyncWindow");
+        }
+        if (watchConfigs != running.watchConfigs) {
+            changes.add("WatchConfigs");
+        }
+        return changes;
+    }
+
+    /**
+     * Reads a boolean setting.
+     *
+     * @param config       The main config
+     * @param path         The path of the setting
+     * @param defaultValue The value of the setting if it is missing
+     * @return The value of the setting
+     * @throws Exception If the setting is not true or false
+     */
+    private static boolean getBoolean(FileConfiguration config, String path, boolean defaultValue) throws Exception {
+        if (!config.contains(path)) {
+            return defaultValue;
+        }
+        if (!config.isBoolean(path)) {
+            throw new Exception("Invalid " + path + ": must be true or false, was " + config.get(path));
+        }
+        return config.getBoolean(path);
+    }
+
+    /**
+     * Reads an integer setting.
+     *
+     * @param config       The main config
+     * @param path         The path of the setting
+     * @param defaultValue The value of the setting if it is missing
+     * @param min          The minimum value of the setting
+     * @return The value of the setting
+     * @throws Exception If the setting is not an integer or is less than the minimum
+     */
+    private static int getInt(FileConfiguration config, String path, int defaultValue, int min) throws Exception {
+        if (!config.contains(path)) {
+            return defaultValue;
+        }
+        if (!config.isInt(path)) {
+            throw new Exception("Invalid " + path + ": must be a whole number, was " + config.get(path));
+        }
+        int value = config.getInt(path);
+        if (value < min) {
+            throw new Exception("Invalid " + path + ": must be at least " + min + ", was " + value);
+        }
+        return value;
+    }
+
+    /**
+     * Reads a chat color setting.
+     *
+     * @param config       The main config
+     * @param path         The path of the setting
+     * @param defaultValue The value of the setting if it is missing
+     * @return The value of the setting
+     * @throws Exception If the setting is not the name of a chat color
+     */
+    private static ChatColor getColor(FileConfiguration config, String path, ChatColor defaultValue) throws Exception {
+        if (!config.contains(path)) {
+            return defaultValue;
+        }
+        try {
+            return ChatColor.valueOf(config.getString(path).toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new Exception("Invalid " + path + ": unknown color " + config.get(path));
+        }
+    }
+
+    /**
+     * Checks if debug messages should be shown in console.
+     *
+     * @return {@code true} if debugging is enabled
+     */
+    public boolean isDebug() {
+        return debug;
+    }
+
+    /**
+     * Gets how far away a local message is broadcasted.
+     *
+     * @return The message radius
+     */
+    public int getMessageRadius() {
+        return messageRadius;
+    }
+
+    /**
+     * Gets the pattern character names must match.
+     *
+     * @return The name requirement, or {@code null} if names are not restricted
+     */
+    public Pattern getNameRequirement() {
+        return nameRequirement;
+    }
+
+    /**
+     * Checks if players should be nicknamed as their character.
+     *
+     * @return {@code true} if players should be nicknamed
+     */
+    public boolean isNicknamePlayers() {
+        return nicknamePlayers;
+    }
+
+    /**
+     * Gets how characters are stored.
+     *
+     * @return One of the {@link FOSettings#CHARACTER_STORAGE_TYPES}
+     */
+    public String getCharacterStorage() {
+        return characterStorage;
+    }
+
+    /**
+     * Gets how often queued character saves are written to disk.
+     *
+     * @return The save interval in ticks
+     */
+    public int getSaveInterval() {
+        return saveInterval;
+    }
+
+    /**
+     * Gets the amount of queued character saves that triggers an early write.
+     *
+     * @return The save batch size
+     */
+    public int getSaveBatchSize() {
+        return saveBatchSize;
+    }
+
+    /**
+     * Gets the maximum amount of offline characters kept in memory.
+     *
+     * @return The offline cache size
+     */
+    public int getOfflineCacheSize() {
+        return offlineCacheSize;
+    }
+
+    /**
+     * Gets how long an offline character is kept in memory after being read.
+     *
+     * @return The offline cache expiry in seconds
+     */
+    public int getOfflineCacheExpiry() {
+        return offlineCacheExpiry;
+    }
+
+    /**
+     * Gets the size the character change journal may grow to before it is compacted.
+     *
+     * @return The journal compact size in kilobytes
+     */
+    public int getJournalCompactSize() {
+        return journalCompactSize;
+    }
+
+    /**
+     * Gets how long config saves and journal changes are collected for so they can be synced together.
+     *
+     * @return The save sync window in ticks
+     */
+    public int getSaveSyncWindow() {
+        return saveSyncWindow;
+    }
+
+    /**
+     * Checks if configs edited while the server is running should be reloaded automatically.
+     *
+     * @return {@code true} if configs should be watched
+     */
+    public boolean isWatchConfigs() {
+        return watchConfigs;
+    }
+
+    /**
+     * Gets how often a backup of the characters and configs is taken.
+     *
+     * @return The backup interval in minutes, or 0 if backups are only taken on command
+     */
+    public int getBackupInterval() {
+        return backupInterval;
+    }
+
+    /**
+     * Gets how many backups are kept before the oldest are deleted.
+     *
+     * @return The backup retention
+     */
+    public int getBackupRetention() {
+        return backupRetention;
+    }
+
+    /**
+     * Gets the primary color of messages.
+     *
+     * @return The primary color
+     */
+    public ChatColor getPrimaryColor() {
+        return primaryColor;
+    }
+
+    /**
+     * Gets the secondary color of messages.
+     *
+     * @return The secondary color
+     */
+    public ChatColor getSecondaryColor() {
+        return secondaryColor;
+    }
+
+    /**
+     * Gets the highlight color of messages.
+     *
+     * @return The highlight color
+     */
+    public ChatColor getHighlightColor() {
+        return highlightColor;
+    }
+
+    /**
+     * Gets the maximum amount of dice rolled at once in a global or local roll.
+     *
+     * @return The public dice limit
+     */
+    public int getPublicDiceLimit() {
+        return publicDiceLimit;
+    }
+
+    /**
+     * Gets the maximum amount of dice rolled at once in a private roll.
+     *
+     * @return The private dice limit
+     */
+    public int getPrivateDiceLimit() {
+        return privateDiceLimit;
+    }
+
+    /**
+     * Gets the maximum sides of a rolled die.
+     *
+     * @return The dice sides limit
+     */
+    public int getDiceSidesLimit() {
+        return diceSidesLimit;
+    }
+
+    /**
+     * Checks if mobs should be prevented from dropping exp upon death.
+     *
+     * @return {@code true} if mobs should not drop exp
+     */
+    public boolean isPreventMobsDroppingExp() {
+        return preventMobsDroppingExp;
+    }
+
+    /**
+     * Checks if players should be prevented from crafting diamond armor.
+     *
+     * @return {@code true} if diamond armor should not be craftable
+     */
+    public boolean isPreventCraftingDiamondArmor() {
+        return preventCraftingDiamondArmor;
+    }
+
+    /**
+     * Checks if mobs should be prevented from combusting in the day.
+     *
+     * @return {@code true} if mobs should not combust in sunlight
+     */
+    public boolean isPreventSunlightCombust() {
+        return preventSunlightCombust;
+    }
+
+    /**
+     * Checks if zombies should be prevented from targeting ghoul characters.
+     *
+     * @return {@code true} if zombies should ignore ghouls
+     */
+    public boolean isPreventZombieTargetGhoul() {
+        return preventZombieTargetGhoul;
+    }
+
+}
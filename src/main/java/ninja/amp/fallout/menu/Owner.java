@@ -19,6 +19,7 @@
 package ninja.amp.fallout.menu;
 
 import ninja.amp.fallout.character.Character;
+import ninja.amp.fallout.character.CharacterSnapshot;
 import org.bukkit.entity.Player;
 
 /**
@@ -30,10 +31,12 @@ public class Owner {
 
     private final Player player;
     private final Character character;
+    private final CharacterSnapshot snapshot;
 
     public Owner(Player player, Character character) {
         this.player = player;
         this.character = character;
+        this.snapshot = character == null ? null : character.getSnapshot();
     }
 
     /**
@@ -54,4 +57,14 @@ public class Owner {
         return character;
     }
 
+    /**
+     * Gets the snapshot of the character taken when the owner was created.<br>
+     * Every item of a menu applied for the owner reads the same snapshot, so the menu shows a consistent view of the character.
+     *
+     * @return The character's snapshot.
+     */
+    public CharacterSnapshot getSnapshot() {
+        return snapshot;
+    }
+
 }
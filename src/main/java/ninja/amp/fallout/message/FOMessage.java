@@ -27,6 +27,8 @@ public enum FOMessage implements Message {
     PREFIX("Prefix", "&8[&bFallout&8] &7"),
     PREFIX_ERROR("ErrorPrefix", "&8[&bFallout&8] &4"),
     RELOAD("Reload", "Reloaded %s."),
+    RELOAD_TIME("ReloadTime", "Reloaded %1$s in &b%2$s&7ms."),
+    RELOAD_RESTARTREQUIRED("ReloadRestartRequired", "Changes to &b%s&7 only take effect after a restart."),
 
     COMMAND_NOTAPLAYER("Command.NotAPlayer", "You must be a player to use this command."),
     COMMAND_NOPERMISSION("Command.NoPermission", "You do not have permission to use this command."),
@@ -37,8 +39,15 @@ public enum FOMessage implements Message {
     ERROR_BOOLEANFORMAT("Error.BooleanFormat", "Value must be true or false."),
     ERROR_MODIFIERSYNTAX("Error.ModifierSyntax", "Modifier must be be of the format +integer or -integer."),
     ERROR_NAMEFORMAT("Error.NameFormat", "Character names must be comprised of between 3 and 20 letters."),
+    ERROR_RELOAD("Error.Reload", "Failed to reload &b%1$s&4. %2$s"),
     ERROR_CHARACTERLOAD("Error.CharacterLoad", "Failed to load character &b%1$s&4. %2$s"),
     ERROR_ALLOPTIONS("Error.AllOptions", "All options must be selected."),
+    ERROR_BACKUP("Error.Backup", "Failed to back up characters. %s"),
+    ERROR_BACKUPRUNNING("Error.BackupRunning", "A backup is already being taken or restored."),
+    ERROR_BACKUPINVALID("Error.BackupInvalid", "Could not restore &b%1$s&4. %2$s"),
+    ERROR_EXPORT("Error.Export", "Failed to export characters. %s"),
+    ERROR_IMPORT("Error.Import", "Could not import &b%1$s&4. %2$s"),
+    ERROR_TRANSFERRUNNING("Error.TransferRunning", "An export or import is already running."),
 
     CHARACTER_CREATE("Character.Create", "Created a character named &b%s&7."),
     CHARACTER_DELETE("Character.Delete", "Deleted your character."),
@@ -53,20 +62,37 @@ public enum FOMessage implements Message {
     CHARACTER_NAMETAKEN("Character.NameTaken", "A character of that name already exists!"),
     CHARACTER_NOTOWNER("Character.NotOwner", "You do not have a character!"),
     CHARACTER_DOESNTEXIST("Character.DoesntExist", "A character of that name doesn't exist or isn't loaded!"),
+    CHARACTER_CHANGED("Character.Changed", "&b%s&4 was changed by someone else at the same time, please try again."),
+
+    BACKUP_STARTED("Backup.Started", "Backing up characters and configs..."),
+    BACKUP_CREATED("Backup.Created", "Backed up &b%1$s&7 characters to &b%2$s&7."),
+    BACKUP_RESTORING("Backup.Restoring", "Checking &b%s&7 before restoring it..."),
+    BACKUP_RESTORED("Backup.Restored", "Restored &b%1$s&7 characters from &b%2$s&7."),
+    BACKUP_LIST("Backup.List", "Backups: %s"),
+
+    EXPORT_STARTED("Export.Started", "Exporting characters to &b%s&7..."),
+    EXPORT_PROGRESS("Export.Progress", "Exported &b%1$s&7 of &b%2$s&7 characters..."),
+    EXPORT_DONE("Export.Done", "Exported &b%1$s&7 characters to &b%2$s&7."),
+    IMPORT_STARTED("Import.Started", "Checking &b%s&7 before importing it..."),
+    IMPORT_PROGRESS("Import.Progress", "Imported &b%1$s&7 of &b%2$s&7 characters..."),
+    IMPORT_DONE("Import.Done", "Imported &b%1$s&7 characters from &b%2$s&7, skipped &b%3$s&7 loaded characters."),
 
     RACE_ONLYLEATHER("Race.OnlyLeather", "Your race can only wear leather armor!"),
 
     SPECIAL_SET("Special.Set", "Set &b%s&7's SPECIAL."),
     SPECIAL_LIST("Special.List", "&b%1$s&7's SPECIAL is &b%2$s&7."),
     SPECIAL_INVALID("Special.Invalid", "Invalid SPECIAL for your race."),
+    SPECIAL_CHANGED("Special.Changed", "Your character was changed while you were modifying its SPECIAL, please modify it again."),
 
     SKILLS_CONFIRM("Skills.Confirm", "Confirmed Skill Allocation."),
     SKILLS_RESET("Skills.Reset", "Reset &b%s&7's Skill levels."),
     SKILLS_RESETTED("Skills.Resetted", "Your character's Skill levels were reset."),
+    SKILLS_CHANGED("Skills.Changed", "Your character was changed while you were allocating Skill levels, please allocate them again."),
 
     PERKS_CONFIRM("Perks.Confirm", "Confirmed Perk Selection."),
     PERKS_RESET("Perks.Reset", "Reset &b%s&7's Perks."),
     PERKS_RESETTED("Perks.Resetted", "Your character's Perks were reset."),
+    PERKS_CHANGED("Perks.Changed", "Your character was changed while you were selecting Perks, please select them again."),
 
     INFORMATION_LEARN("Information.Learn", "You have learned the secrets of &b%s&7."),
     INFORMATION_FORGET("Information.Forget", "You have forgotten the secrets of &b%s&7."),
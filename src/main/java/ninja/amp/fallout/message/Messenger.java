@@ -22,6 +22,7 @@ import ninja.amp.fallout.Fallout;
 import ninja.amp.fallout.character.Character;
 import ninja.amp.fallout.config.ConfigAccessor;
 import ninja.amp.fallout.config.FOConfig;
+import ninja.amp.fallout.config.FOSettings;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.Location;
@@ -32,7 +33,9 @@ import org.bukkit.entity.Player;
 
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -44,9 +47,10 @@ import java.util.logging.Logger;
 public class Messenger {
 
     private Fallout plugin;
-    private boolean debug;
+    private volatile FOSettings settings;
     private Logger log;
     private Map<Class<?>, RecipientHandler> recipientHandlers = new HashMap<>();
+    private Set<Message> messages = new LinkedHashSet<>();
 
     /**
      * Basic color scheme in the fallout plugin.
@@ -63,7 +67,7 @@ public class Messenger {
      */
     public Messenger(Fallout plugin) {
         this.plugin = plugin;
-        this.debug = plugin.getConfig().getBoolean("Debug", false);
+        this.settings = plugin.getSettings();
         this.log = plugin.getLogger();
 
         registerMessages(EnumSet.allOf(FOMessage.class));
@@ -87,12 +91,12 @@ public class Messenger {
                 Bukkit.getPlayer(((Character) recipient).getOwnerId()).sendMessage(message);
             }
         });
-        int radius = plugin.getConfig().getInt("MessageRadius", 30);
-        final int radiusSquared = radius * radius;
         registerRecipient(Location.class, new RecipientHandler() {
             @Override
             public void sendMessage(Object recipient, String message) {
                 Location location = (Location) recipient;
+                int radius = settings.getMessageRadius();
+                int radiusSquared = radius * radius;
                 for (Player player : Bukkit.getServer().getOnlinePlayers()) {
                     if (location.getWorld().equals(player.getWorld()) && location.distanceSquared(player.getLocation()) <= radiusSquared) {
                         player.sendMessage(message);
@@ -102,10 +106,29 @@ public class Messenger {
         });
 
         // Load color theme of messages from config
-        FileConfiguration config = plugin.getConfig();
-        PRIMARY_COLOR = ChatColor.valueOf(config.getString("colors.primary", "AQUA"));
-        SECONDARY_COLOR = ChatColor.valueOf(config.getString("colors.secondary", "GRAY"));
-        HIGHLIGHT_COLOR = ChatColor.valueOf(config.getString("colors.highlights", "DARK_GRAY"));
+        loadColors(settings);
+    }
+
+    /**
+     * Swaps in new settings and reloads every registered message from the message config.
+     *
+     * @param settings The new settings
+     */
+    public void reload(FOSettings settings) {
+        this.settings = settings;
+        loadColors(settings);
+        loadMessages(messages);
+    }
+
+    /**
+     * Sets the color theme of messages.
+     *
+     * @param settings The settings containing the colors
+     */
+    private static void loadColors(FOSettings settings) {
+        PRIMARY_COLOR = settings.getPrimaryColor();
+        SECONDARY_COLOR = settings.getSecondaryColor();
+        HIGHLIGHT_COLOR = settings.getHighlightColor();
     }
 
     /**
@@ -115,21 +138,35 @@ public class Messenger {
      * @return The messenger
      */
     public Messenger registerMessages(EnumSet<? extends Message> messages) {
+        this.messages.addAll(messages);
+        loadMessages(messages);
+        return this;
+    }
+
+    /**
+     * Adds any missing message defaults to the message config and loads the messages from it.
+     *
+     * @param messages The messages to load
+     */
+    private void loadMessages(Set<? extends Message> messages) {
         // Add missing messages to message config
         ConfigAccessor messageConfig = plugin.getConfigManager().getConfigAccessor(FOConfig.MESSAGE);
         FileConfiguration messageConfigFile = messageConfig.getConfig();
+        boolean added = false;
         for (Message message : messages) {
             if (!messageConfigFile.isString(message.getPath())) {
                 messageConfigFile.set(message.getPath(), message.getMessage());
+                added = true;
             }
         }
-        messageConfig.saveConfig();
+        if (added) {
+            messageConfig.saveConfig();
+        }
 
         // Load messages from message config
         for (Message message : messages) {
             message.setMessage(ChatColor.translateAlternateColorCodes('&', messageConfigFile.getString(message.getPath())));
         }
-        return this;
     }
 
     /**
@@ -205,7 +242,7 @@ public class Messenger {
      * @param e The exception to debug
      */
     public void debug(Exception e) {
-        if (debug) {
+        if (settings.isDebug()) {
             e.printStackTrace();
         }
     }
@@ -216,7 +253,7 @@ public class Messenger {
      * @param message The message to debug
      */
     public void debug(Object message) {
-        if (debug) {
+        if (settings.isDebug()) {
             log.log(Level.INFO, message.toString());
         }
     }
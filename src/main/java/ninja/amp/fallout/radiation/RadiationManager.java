@@ -18,5 +18,61 @@
  */
 package ninja.amp.fallout.radiation;
 
+import ninja.amp.fallout.Fallout;
+import ninja.amp.fallout.config.FOConfig;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Manages the fallout radiation zones.
+ *
+ * @author Austin Payne
+ */
 public class RadiationManager {
+
+    private Fallout plugin;
+    private volatile List<Zone> zones = Collections.emptyList();
+
+    /**
+     * Creates a new radiation manager.<br>
+     * Must be created after the {@link ninja.amp.fallout.config.ConfigManager} and {@link ninja.amp.fallout.message.Messenger}!
+     *
+     * @param plugin The fallout plugin instance
+     */
+    public RadiationManager(Fallout plugin) {
+        this.plugin = plugin;
+
+        reload();
+    }
+
+    /**
+     * Loads the radiation zones from the radiation config, replacing the current zones all at once.
+     */
+    public void reload() {
+        FileConfiguration config = plugin.getConfigManager().getConfig(FOConfig.RADIATION);
+        List<Zone> loaded = new ArrayList<>();
+        for (String zoneName : config.getKeys(false)) {
+            if (config.isConfigurationSection(zoneName)) {
+                try {
+                    loaded.add(new Zone(config.getConfigurationSection(zoneName)));
+                } catch (Exception e) {
+                    plugin.getMessenger().debug("Failed to load radiation zone " + zoneName + ". " + e.getMessage());
+                }
+            }
+        }
+        zones = Collections.unmodifiableList(loaded);
+    }
+
+    /**
+     * Gets the radiation zones.
+     *
+     * @return The radiation zones
+     */
+    public List<Zone> getZones() {
+        return zones;
+    }
+
 }
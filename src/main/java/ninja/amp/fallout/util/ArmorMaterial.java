@@ -20,15 +20,18 @@ package ninja.amp.fallout.util;
 
 import org.bukkit.Material;
 import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.PlayerInventory;
 
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
- * Minecraft armor materials and their corresponding fallout versions.
+ * Minecraft armor materials and their corresponding fallout versions.<br>
+ * The armor material of every piece of armor is looked up in a table built when the class is initialized.
  *
  * @author Austin Payne
  */
@@ -40,6 +43,7 @@ public enum ArmorMaterial {
     DIAMOND("Power");
 
     private static final List<String> materialNames;
+    private static final Map<Material, ArmorMaterial> pieceMaterials = new EnumMap<>(Material.class);
     private final String name;
     private final Map<DamageType, Integer> defenseValues = new HashMap<>(9);
 
@@ -73,12 +77,7 @@ public enum ArmorMaterial {
      * @return The armor material
      */
     public static ArmorMaterial getArmorMaterial(Material material) {
-        for (ArmorMaterial armorMaterial : ArmorMaterial.class.getEnumConstants()) {
-            if (material.name().contains(armorMaterial.name())) {
-                return armorMaterial;
-            }
-        }
-        return null;
+        return pieceMaterials.get(material);
     }
 
     /**
@@ -88,16 +87,32 @@ public enum ArmorMaterial {
      * @return {@code true} if the player is wearing a full set of armor of the same type
      */
     public static boolean isWearingFullSet(Player player) {
-        if (ArmorType.HELMET.canEquip(player) || ArmorType.CHESTPLATE.canEquip(player) || ArmorType.LEGGINGS.canEquip(player) || ArmorType.BOOTS.canEquip(player)) {
-            return false;
-        }
-        PlayerInventory inventory = player.getInventory();
-        ArmorMaterial material = getArmorMaterial(inventory.getHelmet().getType());
+        return getFullSet(player) != null;
+    }
 
-        return material != null &&
-                material.equals(getArmorMaterial(inventory.getChestplate().getType())) &&
-                material.equals(getArmorMaterial(inventory.getLeggings().getType())) &&
-                material.equals(getArmorMaterial(inventory.getBoots().getType()));
+    /**
+     * Gets the armor material of the full set of armor a player is wearing.
+     *
+     * @param player The player
+     * @return The armor material, or {@code null} if the player is not wearing a full set of the same material
+     */
+    public static ArmorMaterial getFullSet(Player player) {
+        PlayerInventory inventory = player.getInventory();
+        ItemStack helmet = inventory.getHelmet();
+        ItemStack chestplate = inventory.getChestplate();
+        ItemStack leggings = inventory.getLeggings();
+        ItemStack boots = inventory.getBoots();
+        if (helmet == null || chestplate == null || leggings == null || boots == null) {
+            return null;
+        }
+        ArmorMaterial material = getArmorMaterial(helmet.getType());
+        if (material != null &&
+                material == getArmorMaterial(chestplate.getType()) &&
+                material == getArmorMaterial(leggings.getType()) &&
+                material == getArmorMaterial(boots.getType())) {
+            return material;
+        }
+        return null;
     }
 
     /**
@@ -146,6 +161,18 @@ public enum ArmorMaterial {
         for (ArmorMaterial armorMaterial : armorMaterials) {
             materialNames.add(armorMaterial.getName());
         }
+
+        for (Material material : Material.values()) {
+            ArmorType armorType = ArmorType.getArmorType(material);
+            if (armorType != null) {
+                String prefix = material.name().substring(0, material.name().length() - armorType.name().length() - 1);
+                for (ArmorMaterial armorMaterial : armorMaterials) {
+                    if (prefix.equals(armorMaterial.name())) {
+                        pieceMaterials.put(material, armorMaterial);
+                    }
+                }
+            }
+        }
     }
 
 }
@@ -21,9 +21,14 @@ package ninja.amp.fallout.util;
 import org.bukkit.Material;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
+
+import java.util.EnumMap;
+import java.util.Map;
 
 /**
- * Minecraft armor types (where armor can be equipped).
+ * Minecraft armor types (where armor can be equipped).<br>
+ * The type of every armor material is looked up in a table built when the class is initialized.
  *
  * @author Austin Payne
  */
@@ -33,6 +38,8 @@ public enum ArmorType {
     LEGGINGS,
     BOOTS;
 
+    private static final Map<Material, ArmorType> armorTypes = new EnumMap<>(Material.class);
+
     /**
      * Checks if the slot of the armor type is empty.
      *
@@ -75,6 +82,29 @@ public enum ArmorType {
         }
     }
 
+    /**
+     * Sets the item stack a player has equipped in a slot.
+     *
+     * @param player    The player
+     * @param itemStack The item stack, or {@code null} to empty the slot
+     */
+    public void setEquipped(Player player, ItemStack itemStack) {
+        PlayerInventory inventory = player.getInventory();
+        switch (this) {
+            case HELMET:
+                inventory.setHelmet(itemStack);
+                break;
+            case CHESTPLATE:
+                inventory.setChestplate(itemStack);
+                break;
+            case LEGGINGS:
+                inventory.setLeggings(itemStack);
+                break;
+            case BOOTS:
+                inventory.setBoots(itemStack);
+        }
+    }
+
     /**
      * Checks if a material is a piece of armor.
      *
@@ -82,12 +112,7 @@ public enum ArmorType {
      * @return {@code true} if the material is a piece of armor
      */
     public static boolean isArmor(Material material) {
-        for (ArmorType armorType : ArmorType.class.getEnumConstants()) {
-            if (material.name().contains(armorType.name())) {
-                return true;
-            }
-        }
-        return false;
+        return armorTypes.containsKey(material);
     }
 
     /**
@@ -97,12 +122,17 @@ public enum ArmorType {
      * @return The type of the piece of armor
      */
     public static ArmorType getArmorType(Material material) {
-        for (ArmorType armorType : ArmorType.class.getEnumConstants()) {
-            if (material.name().contains(armorType.name())) {
-                return armorType;
+        return armorTypes.get(material);
+    }
+
+    static {
+        for (Material material : Material.values()) {
+            for (ArmorType armorType : ArmorType.values()) {
+                if (material.name().endsWith("_" + armorType.name())) {
+                    armorTypes.put(material, armorType);
+                }
             }
         }
-        return null;
     }
 
 }
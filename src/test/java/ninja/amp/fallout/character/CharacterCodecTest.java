@@ -0,0 +1,272 @@
+/*
+ * This file is part of Fallout.
+ *
+ * Copyright (c) 2013-2017 <http://github.com/ampayne2/Fallout//>
+ *
+ * Fallout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fallout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Fallout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ninja.amp.fallout.character;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.PlayerInventory;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link CharacterCodec}.
+ *
+ * @author Austin Payne
+ */
+public class CharacterCodecTest {
+
+    private static final int BENCHMARK_ROUNDS = 2000;
+
+    /**
+     * Creates a character with a value in every field.
+     *
+     * @param owned If the character should have an owner
+     * @return The character
+     */
+    private static Character createCharacter(boolean owned) {
+        Player player = mock(Player.class);
+        when(player.getName()).thenReturn("Tester");
+        when(player.getUniqueId()).thenReturn(UUID.fromString("6f3c4b1e-9a7d-4c2e-8f10-2d5b7a9c1e3f"));
+        when(player.getInventory()).thenReturn(mock(PlayerInventory.class));
+
+        Character character = new Character.CharacterBuilder(player)
+                .name("Vault")
+                .race(Race.VAULT_DWELLER)
+                .age(30)
+                .height(70)
+                .weight(180)
+                .gender(Character.Gender.FEMALE)
+                .alignment(Character.Alignment.NEUTRAL)
+                .build();
+        character.setSpecial(new Special(5, 6, 7, 4, 8, 3, 2));
+        character.setSkillLevel(Skill.SNEAK, 3);
+        character.setSkillLevel(Skill.LOGICAL_THINKING, 5);
+        character.addPerk(Perk.SIGHT_ADAPT);
+        character.increaseLevel();
+        character.addKnowledge(Information.POWER_ARMOR);
+        character.setFaction("Brotherhood");
+        character.addRadiation(120);
+        if (!owned) {
+            character.abandon();
+        }
+        return character;
+    }
+
+    /**
+     * Checks that two characters hold the same values.
+     *
+     * @param expected The original character
+     * @param actual   The decoded character
+     */
+    private static void assertSameCharacter(Character expected, Character actual) {
+        assertEquals(expected.getOwnerId(), actual.getOwnerId());
+        assertEquals(expected.getOwnerName(), actual.getOwnerName());
+        assertEquals(expected.getCharacterName(), actual.getCharacterName());
+        assertEquals(expected.getRace(), actual.getRace());
+        assertEquals(expected.getAge(), actual.getAge());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        assertEquals(expected.getWeight(), actual.getWeight());
+        assertEquals(expected.getGender(), actual.getGender());
+        assertEquals(expected.getAlignment(), actual.getAlignment());
+        assertEquals(expected.getPackedSpecial(), actual.getPackedSpecial());
+        assertEquals(expected.getPackedSkillLevels(), actual.getPackedSkillLevels());
+        assertEquals(expected.getPerkMask(), actual.getPerkMask());
+        assertEquals(expected.getLevel(), actual.getLevel());
+        assertEquals(expected.getKnowledge(), actual.getKnowledge());
+        assertEquals(expected.getFaction(), actual.getFaction());
+        assertEquals(expected.getRadiation(), actual.getRadiation());
+    }
+
+    @Test
+    public void roundTripKeepsEveryField() throws Exception {
+        Character character = createCharacter(true);
+        assertSameCharacter(character, CharacterCodec.decode(CharacterCodec.encode(character)));
+    }
+
+    @Test
+    public void separatelyEncodedFieldsRoundTrip() throws Exception {
+        Character character = createCharacter(true);
+        Character decoded = CharacterCodec.decodeFields(CharacterCodec.encodeFields(character, EnumSet.allOf(Character.FieldGroup.class)));
+        assertSameCharacter(character, decoded);
+    }
+
+    @Test
+    public void unknownFieldsAreSkipped() throws Exception {
+        Character character = createCharacter(true);
+        byte[] encoded = CharacterCodec.encode(character);
+
+        // A field written by a newer version, placed before the known fields
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        CharacterCodec.writeVarInt(output, CharacterCodec.VERSION);
+        CharacterCodec.writeVarInt(output, 1000);
+        CharacterCodec.writeVarInt(output, 3);
+        output.write(new byte[]{1, 2, 3});
+        output.write(encoded, 1, encoded.length - 1);
+
+        assertSameCharacter(character, CharacterCodec.decode(bytes.toByteArray()));
+    }
+
+    @Test
+    public void truncatedInputIsRejected() {
+        byte[] encoded = CharacterCodec.encode(createCharacter(true));
+        for (int length = 0; length < encoded.length; length++) {
+            byte[] truncated = Arrays.copyOf(encoded, length);
+            try {
+                CharacterCodec.decode(truncated);
+                fail("Decoded a character cut off after " + length + " of " + encoded.length + " bytes");
+            } catch (Exception expected) {
+                // Every prefix is missing at least the end tag
+            }
+        }
+    }
+
+    @Test
+    public void varIntsRoundTrip() throws IOException {
+        int[] values = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1, Integer.MIN_VALUE};
+        int[] sizes = {1, 1, 1, 2, 2, 3, 5, 5, 5};
+        for (int i = 0; i < values.length; i++) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            CharacterCodec.writeVarInt(new DataOutputStream(bytes), values[i]);
+            assertEquals("Size of " + values[i], sizes[i], bytes.size());
+            assertEquals(values[i], CharacterCodec.readVarInt(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+        }
+    }
+
+    @Test
+    public void varLongsRoundTrip() throws IOException {
+        long[] values = {0, 127, 128, Integer.MAX_VALUE, Long.MAX_VALUE, -1, Long.MIN_VALUE};
+        int[] sizes = {1, 1, 2, 5, 9, 10, 10};
+        for (int i = 0; i < values.length; i++) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            CharacterCodec.writeVarLong(new DataOutputStream(bytes), values[i]);
+            assertEquals("Size of " + values[i], sizes[i], bytes.size());
+            assertEquals(values[i], CharacterCodec.readVarLong(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+        }
+    }
+
+    @Test
+    public void overlongVarIntsAreRejected() {
+        byte[] sixBytes = {(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0};
+        assertThrows(IOException.class, () -> CharacterCodec.readVarInt(new DataInputStream(new ByteArrayInputStream(sixBytes))));
+
+        byte[] elevenBytes = new byte[11];
+        Arrays.fill(elevenBytes, 0, 10, (byte) 0x80);
+        assertThrows(IOException.class, () -> CharacterCodec.readVarLong(new DataInputStream(new ByteArrayInputStream(elevenBytes))));
+    }
+
+    @Test
+    public void invalidFieldLengthsAreRejected() throws IOException {
+        // Negative, larger than any field, and longer than the rest of the input
+        int[] lengths = {-1, CharacterCodec.MAX_FIELD_SIZE + 1, 100};
+        for (int length : lengths) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream output = new DataOutputStream(bytes);
+            CharacterCodec.writeVarInt(output, CharacterCodec.VERSION);
+            CharacterCodec.writeVarInt(output, CharacterCodec.FACTION);
+            CharacterCodec.writeVarInt(output, length);
+            output.write(new byte[]{1, 2, 3});
+            byte[] data = bytes.toByteArray();
+
+            assertThrows("Length " + length, IOException.class, () -> CharacterCodec.decode(data));
+            if (length != 100) {
+                // Without the whole input at hand only the fixed bound applies
+                assertThrows("Length " + length, IOException.class, () -> CharacterCodec.decode(new DataInputStream(new ByteArrayInputStream(data))));
+            }
+        }
+    }
+
+    @Test
+    public void codecIsSmallerThanYaml() {
+        // The yaml path cannot look up online owners outside of a server, so the character is unowned
+        Character character = createCharacter(false);
+
+        byte[] encoded = CharacterCodec.encode(character);
+        YamlConfiguration config = new YamlConfiguration();
+        character.save(config);
+        String yaml = config.saveToString();
+        assertTrue("Encoded " + encoded.length + " bytes, yaml " + yaml.length(), encoded.length < yaml.length());
+    }
+
+    @Test
+    @Ignore("Benchmark, timings depend on the machine so it is run by hand")
+    public void benchmarkCodecAgainstYaml() throws Exception {
+        Character character = createCharacter(false);
+
+        // Warm up both paths before timing them
+        timeCodec(character, BENCHMARK_ROUNDS);
+        timeYaml(character, BENCHMARK_ROUNDS);
+        long codec = timeCodec(character, BENCHMARK_ROUNDS);
+        long yaml = timeYaml(character, BENCHMARK_ROUNDS);
+        System.out.println(String.format("%d round trips: codec %dms, yaml %dms", BENCHMARK_ROUNDS, codec / 1000000, yaml / 1000000));
+    }
+
+    /**
+     * Times encoding and decoding a character with the codec.
+     *
+     * @param character The character
+     * @param rounds    The amount of round trips
+     * @return The elapsed time in nanoseconds
+     * @throws Exception If the character could not be decoded
+     */
+    private static long timeCodec(Character character, int rounds) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            CharacterCodec.decode(CharacterCodec.encode(character));
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Times saving a character to yaml text and loading it again.
+     *
+     * @param character The character
+     * @param rounds    The amount of round trips
+     * @return The elapsed time in nanoseconds
+     * @throws Exception If the character could not be loaded
+     */
+    private static long timeYaml(Character character, int rounds) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            YamlConfiguration config = new YamlConfiguration();
+            character.save(config);
+            YamlConfiguration loaded = new YamlConfiguration();
+            loaded.loadFromString(config.saveToString());
+            new Character(loaded);
+        }
+        return System.nanoTime() - start;
+    }
+
+}
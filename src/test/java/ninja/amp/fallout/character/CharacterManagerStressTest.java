@@ -0,0 +1,273 @@
+/*
+ * This file is part of Fallout.
+ *
+ * Copyright (c) 2013-2017 <http://github.com/ampayne2/Fallout//>
+ *
+ * Fallout is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * Fallout is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with Fallout.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package ninja.amp.fallout.character;
+
+import ninja.amp.fallout.Fallout;
+import ninja.amp.fallout.config.AtomicFileWriter;
+import ninja.amp.fallout.config.ConfigAccessor;
+import ninja.amp.fallout.config.ConfigManager;
+import ninja.amp.fallout.config.FOConfig;
+import ninja.amp.fallout.config.FOSettings;
+import ninja.amp.fallout.message.Messenger;
+import org.bukkit.Server;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.PlayerInventory;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Stress tests the striped character locks of the {@link CharacterManager} with parallel possessing and abandoning.
+ *
+ * @author Austin Payne
+ */
+public class CharacterManagerStressTest {
+
+    private static final int CHARACTERS = 24;
+    private static final int THREADS = 8;
+    private static final int PLAYERS_PER_THREAD = 3;
+    private static final int ROUNDS = 3000;
+
+    @Rule
+    public TemporaryFolder dataFolder = new TemporaryFolder();
+
+    private YamlConfiguration characterConfig;
+    private YamlConfiguration playerConfig;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        characterConfig = new YamlConfiguration();
+        playerConfig = new YamlConfiguration();
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Creates a player.
+     *
+     * @param name The player's name
+     * @return The player
+     */
+    private static Player createPlayer(String name) {
+        Player player = mock(Player.class);
+        when(player.getName()).thenReturn(name);
+        when(player.getUniqueId()).thenReturn(UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8)));
+        when(player.getInventory()).thenReturn(mock(PlayerInventory.class));
+        return player;
+    }
+
+    /**
+     * Creates a config accessor that holds its config in memory.
+     *
+     * @param config The config
+     * @return The config accessor
+     */
+    private static ConfigAccessor createAccessor(YamlConfiguration config) {
+        ConfigAccessor accessor = mock(ConfigAccessor.class);
+        when(accessor.getConfig()).thenReturn(config);
+        return accessor;
+    }
+
+    /**
+     * Creates a plugin that stores characters in memory and never runs scheduled tasks.
+     *
+     * @return The plugin
+     * @throws Exception If the default config is invalid
+     */
+    private Fallout createPlugin() throws Exception {
+        YamlConfiguration config = YamlConfiguration.loadConfiguration(new InputStreamReader(getClass().getResourceAsStream("/config.yml"), StandardCharsets.UTF_8));
+        config.set("CharacterStorage", "single");
+        config.set("NicknamePlayers", false);
+        config.set("JournalCompactSize", 1024 * 1024);
+        config.set("SaveBatchSize", CHARACTERS * 2);
+
+        ConfigManager configManager = mock(ConfigManager.class);
+        ConfigAccessor characterAccessor = createAccessor(characterConfig);
+        ConfigAccessor playerAccessor = createAccessor(playerConfig);
+        when(configManager.getConfigAccessor(FOConfig.CHARACTER)).thenReturn(characterAccessor);
+        when(configManager.getConfigAccessor(FOConfig.PLAYER)).thenReturn(playerAccessor);
+        AtomicFileWriter fileWriter = mock(AtomicFileWriter.class);
+        when(fileWriter.flush()).thenReturn(true);
+        when(configManager.getFileWriter()).thenReturn(fileWriter);
+
+        BukkitScheduler scheduler = mock(BukkitScheduler.class);
+        BukkitTask task = mock(BukkitTask.class);
+        when(scheduler.runTaskAsynchronously(any(Plugin.class), any(Runnable.class))).thenReturn(task);
+        when(scheduler.runTaskTimerAsynchronously(any(Plugin.class), any(Runnable.class), anyLong(), anyLong())).thenReturn(task);
+        Server server = mock(Server.class);
+        when(server.getScheduler()).thenReturn(scheduler);
+        doReturn(Collections.emptyList()).when(server).getOnlinePlayers();
+
+        Fallout plugin = mock(Fallout.class);
+        when(plugin.getSettings()).thenReturn(new FOSettings(config));
+        when(plugin.getMessenger()).thenReturn(mock(Messenger.class));
+        when(plugin.getConfigManager()).thenReturn(configManager);
+        when(plugin.getServer()).thenReturn(server);
+        when(plugin.getDataFolder()).thenReturn(dataFolder.getRoot());
+        when(plugin.getLogger()).thenReturn(Logger.getLogger("Fallout"));
+        return plugin;
+    }
+
+    /**
+     * Stores unowned characters in the character config.
+     *
+     * @return The names of the characters
+     */
+    private List<String> storeCharacters() {
+        Player creator = createPlayer("Creator");
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < CHARACTERS; i++) {
+            Character character = new Character.CharacterBuilder(creator)
+                    .name("Dweller" + i)
+                    .race(Race.VAULT_DWELLER)
+                    .age(30)
+                    .height(70)
+                    .weight(180)
+                    .gender(Character.Gender.MALE)
+                    .alignment(Character.Alignment.NEUTRAL)
+                    .build();
+            character.abandon();
+            character.save(characterConfig.createSection(character.getCharacterName().toLowerCase()));
+            names.add(character.getCharacterName());
+        }
+        return names;
+    }
+
+    @Test
+    public void parallelPossessAndAbandonKeepOwnershipConsistent() throws Exception {
+        List<String> names = storeCharacters();
+        CharacterManager manager = new CharacterManager(createPlugin());
+
+        // Each thread has its own players, but every thread competes for the same characters
+        List<Player> players = new ArrayList<>();
+        for (int i = 0; i < THREADS * PLAYERS_PER_THREAD; i++) {
+            players.add(createPlayer("Player" + i));
+        }
+        int[] possessed = new int[players.size()];
+        int[] abandoned = new int[players.size()];
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            int first = thread * PLAYERS_PER_THREAD;
+            Random random = new Random(thread);
+            futures.add(executor.submit((Callable<Void>) () -> {
+                start.await();
+                for (int round = 0; round < ROUNDS; round++) {
+                    int index = first + random.nextInt(PLAYERS_PER_THREAD);
+                    Player player = players.get(index);
+                    Character owned = manager.getCharacterByOwner(player.getUniqueId());
+                    if (owned == null) {
+                        Character character = manager.possessCharacter(player, names.get(random.nextInt(names.size())));
+                        if (character != null) {
+                            assertEquals(player.getUniqueId(), character.getOwnerId());
+                            possessed[index]++;
+                        }
+                    } else if (random.nextInt(4) == 0) {
+                        // Rejoining keeps the character owned, so no other player may possess it meanwhile
+                        manager.unloadCharacter(player);
+                        assertNull(manager.getCharacterByOwner(player.getUniqueId()));
+                        assertSame(owned, manager.loadCharacter(player));
+                    } else {
+                        assertSame(owned, manager.abandonCharacter(player));
+                        abandoned[index]++;
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(2, TimeUnit.MINUTES);
+        }
+
+        // Every character is owned by at most one player, and only by the player who last possessed it
+        Set<String> owned = new HashSet<>();
+        for (int i = 0; i < players.size(); i++) {
+            Player player = players.get(i);
+            Character character = manager.getCharacterByOwner(player.getUniqueId());
+            assertEquals(possessed[i] - abandoned[i], character == null ? 0 : 1);
+            if (character != null) {
+                assertTrue(owned.add(character.getCharacterName()));
+                assertEquals(player.getUniqueId(), character.getOwnerId());
+                assertEquals(player.getName(), character.getOwnerName());
+                assertSame(character, manager.getCharacterByName(character.getCharacterName()));
+            }
+        }
+        assertEquals(owned.size(), manager.getCharacters().size());
+        for (String name : names) {
+            assertEquals(!owned.contains(name), manager.canPossess(name));
+            if (!owned.contains(name)) {
+                assertNull(manager.getCharacterByName(name));
+            }
+        }
+
+        // The saved owners agree with the characters in memory
+        manager.flushSaves();
+        for (Player player : players) {
+            Character character = manager.getCharacterByOwner(player.getUniqueId());
+            String savedName = playerConfig.getString(player.getUniqueId().toString());
+            if (character == null) {
+                assertNull(savedName);
+            } else {
+                assertNotNull(savedName);
+                assertEquals(character.getCharacterName().toLowerCase(), savedName.toLowerCase());
+            }
+        }
+    }
+
+}